@@ -0,0 +1,125 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PnpJobPlanner;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.util.AssignmentSolver;
+import org.simpleframework.xml.Root;
+
+/**
+ * Plans each cycle by solving the assignment of nozzles to placements with
+ * {@link AssignmentSolver}, so the time taken grows with nozzles^2 * placements instead of
+ * placements^nozzles. Placements of the same part only differ in their height order, so only the
+ * lowest of each part, as many as there are nozzles, are considered, and the time taken grows
+ * with the number of parts rather than the size of the job.
+ *
+ * In order of importance the plan:
+ *
+ * 1. Uses as many nozzles as possible.
+ *
+ * 2. Needs as few nozzle tip changes as possible.
+ *
+ * 3. When a nozzle does need a tip change, loads the tip that can handle the most of the pending
+ * placements in the whole job, so that the tip stays loaded for as long a run as possible.
+ *
+ * 4. Places the lowest parts first, giving the lowest of them to the first nozzles.
+ */
+@Root
+public class AssignmentPnpJobPlanner implements PnpJobPlanner {
+    @Override
+    public List<PlannedPlacement> plan(Head head, PendingJobPlacements pendingJobPlacements,
+            NozzleTipCompatibility compatibility) {
+        List<Nozzle> nozzles = head.getNozzles();
+        int nozzleCount = nozzles.size();
+        List<JobPlacement> jobPlacements = pendingJobPlacements.getJobPlacementsByPart(nozzleCount);
+        int placementCount = jobPlacements.size();
+        Map<Part, Integer> partCounts = pendingJobPlacements.getPartCounts();
+        int pendingCount = 0;
+        for (int count : partCounts.values()) {
+            pendingCount += count;
+        }
+
+        // The costs are weighted so that each one outweighs every possible sum of those below it.
+        double heightCost = 1;
+        double nozzleTipCost = heightCost * nozzleCount * nozzleCount * placementCount + 1;
+        double nozzleTipChangeCost = nozzleTipCost * nozzleCount * pendingCount + 1;
+        double unusedNozzleCost = nozzleTipChangeCost * (nozzleCount + 1);
+
+        Map<NozzleTip, Integer> placementCounts =
+                countPlacements(nozzles, partCounts, compatibility);
+
+        // One column per placement, followed by one per nozzle for leaving a nozzle unused.
+        double[][] costs = new double[nozzleCount][placementCount + nozzleCount];
+        NozzleTip[][] nozzleTips = new NozzleTip[nozzleCount][placementCount];
+        for (int i = 0; i < nozzleCount; i++) {
+            Nozzle nozzle = nozzles.get(i);
+            NozzleTip nozzleTip = compatibility.getNozzleTip(nozzle);
+            for (int j = 0; j < placementCount; j++) {
+                Part part = jobPlacements.get(j).placement.getPart();
+                if (!compatibility.canHandle(nozzle, part)) {
+                    costs[i][j] = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+                // The placements are sorted by part height, so the index is the height rank.
+                costs[i][j] = heightCost * j * (nozzleCount - i);
+                if (nozzleTip == null || !compatibility.canHandle(nozzleTip, part)) {
+                    NozzleTip best = null;
+                    for (NozzleTip candidate : nozzle.getNozzleTips()) {
+                        if (compatibility.canHandle(candidate, part) && (best == null || placementCounts
+                                .get(candidate) > placementCounts.get(best))) {
+                            best = candidate;
+                        }
+                    }
+                    nozzleTips[i][j] = best;
+                    costs[i][j] += nozzleTipChangeCost
+                            + nozzleTipCost * (pendingCount - placementCounts.get(best));
+                }
+            }
+            for (int j = placementCount; j < placementCount + nozzleCount; j++) {
+                costs[i][j] = unusedNozzleCost;
+            }
+        }
+
+        int[] assignment = AssignmentSolver.solve(costs);
+
+        List<PlannedPlacement> plannedPlacements = new ArrayList<>();
+        for (int i = 0; i < nozzleCount; i++) {
+            if (assignment[i] < placementCount) {
+                PlannedPlacement plannedPlacement =
+                        new PlannedPlacement(nozzles.get(i), jobPlacements.get(assignment[i]));
+                plannedPlacement.nozzleTip = nozzleTips[i][assignment[i]];
+                plannedPlacements.add(plannedPlacement);
+            }
+        }
+        return plannedPlacements;
+    }
+
+    /**
+     * Counts the pending placements each of the nozzles' tips can handle.
+     */
+    private static Map<NozzleTip, Integer> countPlacements(List<Nozzle> nozzles,
+            Map<Part, Integer> partCounts, NozzleTipCompatibility compatibility) {
+        Map<NozzleTip, Integer> counts = new HashMap<>();
+        for (Nozzle nozzle : nozzles) {
+            for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                int count = 0;
+                for (Map.Entry<Part, Integer> entry : partCounts.entrySet()) {
+                    if (compatibility.canHandle(nozzleTip, entry.getKey())) {
+                        count += entry.getValue();
+                    }
+                }
+                counts.put(nozzleTip, count);
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,377 @@
+package org.openpnp.machine.reference;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.KeyPoint;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.openpnp.machine.reference.driver.NullDriver;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
+import org.openpnp.machine.reference.vision.ReferenceFiducialLocator;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Camera;
+import org.openpnp.spi.FiducialLocator;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PartAlignment;
+import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
+import org.openpnp.util.SimulationClock;
+import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Lets a job processor run its real steps on the machine without moving anything, to estimate
+ * how long the job would take. While it is open the machine's driver is replaced by a NullDriver
+ * that times each move with the head's MotionTimeModel, and SimulationClock waits take no real
+ * time, so a SimulationClock.Stopwatch reads how long the steps would have taken on the machine.
+ *
+ * Only what needs the real machine is stood in for. Vision finds every part and fiducial where it
+ * is expected, after the camera's settle time and visionSeconds of processing, and vacuum sensing
+ * reads the level the nozzle's tip expects. Picks, places and actuations take no time beyond their
+ * dwells. Nozzle tip calibration is turned off, as it is a vision step too, and nozzle tips are
+ * changed without moving or resetting their calibration. Closing puts all of it back.
+ */
+class DryRun implements AutoCloseable {
+    private final ReferenceMachine machine;
+    private final ReferenceDriver driver;
+    private final DryRunDriver dryRunDriver;
+    private final double timeScale;
+    private final long visionMillis;
+    private final Map<ReferenceNozzle, ReferenceNozzleTip> nozzleTips = new HashMap<>();
+    private final Map<ReferenceNozzle, Part> parts = new HashMap<>();
+    private final Map<ReferenceNozzleTip.Calibration, Boolean> calibrations = new HashMap<>();
+    private final Map<PartAlignment, PartAlignment> partAlignments = new HashMap<>();
+    private final FiducialLocator fiducialLocator;
+    private final SimulationClock.Stopwatch stopwatch;
+
+    /**
+     * @param visionSeconds How long processing an image takes.
+     * @throws Exception If the machine is enabled, since its driver can't be replaced then.
+     */
+    DryRun(double visionSeconds) throws Exception {
+        if (!(Configuration.get().getMachine() instanceof ReferenceMachine)) {
+            throw new Exception("Only jobs for a ReferenceMachine can be estimated.");
+        }
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        if (machine.isEnabled()) {
+            throw new Exception("Disable the machine to estimate a job.");
+        }
+        visionMillis = Math.round(visionSeconds * 1000);
+
+        if (machine.getFiducialLocator() instanceof ReferenceFiducialLocator) {
+            fiducialLocator = new DryRunFiducialLocator(
+                    (ReferenceFiducialLocator) machine.getFiducialLocator());
+        }
+        else {
+            fiducialLocator = new DryRunFiducialLocator(new ReferenceFiducialLocator());
+        }
+        dryRunDriver = new DryRunDriver();
+        dryRunDriver.setUseMotionTimeModel(true);
+        dryRunDriver.setSimulationTimeScale(0);
+        for (Head head : machine.getHeads()) {
+            dryRunDriver.startAt(machine.getDriver(), head);
+        }
+
+        for (Head head : machine.getHeads()) {
+            for (Nozzle nozzle : head.getNozzles()) {
+                if (!(nozzle instanceof ReferenceNozzle)) {
+                    continue;
+                }
+                nozzleTips.put((ReferenceNozzle) nozzle, ((ReferenceNozzle) nozzle).nozzleTip);
+                parts.put((ReferenceNozzle) nozzle, nozzle.getPart());
+                for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                    if (nozzleTip instanceof ReferenceNozzleTip) {
+                        ReferenceNozzleTip.Calibration calibration =
+                                ((ReferenceNozzleTip) nozzleTip).getCalibration();
+                        calibrations.put(calibration, calibration.isEnabled());
+                        calibration.setEnabled(false);
+                    }
+                }
+            }
+        }
+        timeScale = SimulationClock.getTimeScale();
+        driver = machine.replaceDriver(dryRunDriver);
+        dryRunDriver.setEnabled(true);
+        stopwatch = new SimulationClock.Stopwatch();
+    }
+
+    /**
+     * Returns the seconds the machine would have taken since the dry run was opened.
+     */
+    double getSeconds() {
+        return stopwatch.getMachineSeconds();
+    }
+
+    FiducialLocator getFiducialLocator() {
+        return fiducialLocator;
+    }
+
+    /**
+     * Returns the stand-in for a ReferenceBottomVision, or null for other kinds of PartAlignment,
+     * which the dry run leaves out.
+     */
+    PartAlignment getPartAlignment(PartAlignment partAlignment) {
+        if (!(partAlignment instanceof ReferenceBottomVision)) {
+            return null;
+        }
+        return partAlignments.computeIfAbsent(partAlignment,
+                p -> new DryRunBottomVision((ReferenceBottomVision) p));
+    }
+
+    /**
+     * Has the nozzle hold the tip until the dry run is closed.
+     */
+    void setNozzleTip(Nozzle nozzle, NozzleTip nozzleTip) {
+        if (nozzle instanceof ReferenceNozzle && nozzleTip instanceof ReferenceNozzleTip) {
+            ((ReferenceNozzle) nozzle).nozzleTip = (ReferenceNozzleTip) nozzleTip;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            dryRunDriver.setEnabled(false);
+        }
+        catch (Exception e) {
+            // Disabling only waits for the moves in flight. A move that failed has failed the job.
+            Logger.warn(e);
+        }
+        machine.replaceDriver(driver);
+        SimulationClock.setTimeScale(timeScale);
+        for (Map.Entry<ReferenceNozzle, ReferenceNozzleTip> entry : nozzleTips.entrySet()) {
+            entry.getKey().nozzleTip = entry.getValue();
+        }
+        for (Map.Entry<ReferenceNozzle, Part> entry : parts.entrySet()) {
+            entry.getKey().setPart(entry.getValue());
+        }
+        for (Map.Entry<ReferenceNozzleTip.Calibration, Boolean> entry : calibrations
+                .entrySet()) {
+            entry.getKey().setEnabled(entry.getValue());
+        }
+        for (Head head : machine.getHeads()) {
+            machine.fireMachineHeadActivity(head);
+        }
+        dryRunDriver.close();
+    }
+
+    private void settle(Camera camera) throws Exception {
+        machine.getDriver().waitForMotionComplete();
+        SimulationClock.sleep(camera.getSettleTimeMs());
+    }
+
+    /**
+     * A NullDriver that only takes the time a real machine would: moves take the time the head's
+     * MotionTimeModel gives, without stepping the head along the way, and picks, places and
+     * actuations take none.
+     */
+    private static class DryRunDriver extends NullDriver {
+        /**
+         * Starts the head where the driver has it.
+         */
+        void startAt(ReferenceDriver driver, Head head) {
+            try {
+                Nozzle nozzle = head.getDefaultNozzle();
+                if (!(nozzle instanceof ReferenceHeadMountable)) {
+                    return;
+                }
+                ReferenceHeadMountable hm = (ReferenceHeadMountable) nozzle;
+                setHeadLocation(head, driver.getLocation(hm).subtract(hm.getHeadOffsets())
+                        .convertToUnits(getHeadLocation(head).getUnits()));
+            }
+            catch (Exception e) {
+                Logger.debug(e, "Starting the dry run of {} from 0, 0.", head.getName());
+            }
+        }
+
+        @Override
+        protected void simulateMovement(ReferenceHeadMountable hm, Location location,
+                Location hl, long durationMillis) throws Exception {
+            SimulationClock.sleep(durationMillis);
+        }
+
+        @Override
+        public void pick(ReferenceNozzle nozzle) throws Exception {
+            waitForMotionComplete();
+        }
+
+        @Override
+        public void place(ReferenceNozzle nozzle) throws Exception {
+            waitForMotionComplete();
+        }
+
+        @Override
+        public void actuate(ReferenceActuator actuator, double value) throws Exception {
+            waitForMotionComplete();
+        }
+
+        @Override
+        public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
+            waitForMotionComplete();
+        }
+
+        /**
+         * Reads a nozzle's vacuum sense actuator as the level its tip expects, with or without a
+         * part on it.
+         */
+        @Override
+        public String actuatorRead(ReferenceActuator actuator) throws Exception {
+            waitForMotionComplete();
+            for (Head head : Configuration.get().getMachine().getHeads()) {
+                for (Nozzle nozzle : head.getNozzles()) {
+                    if (!(nozzle instanceof ReferenceNozzle)) {
+                        continue;
+                    }
+                    ReferenceNozzle referenceNozzle = (ReferenceNozzle) nozzle;
+                    ReferenceNozzleTip nozzleTip = referenceNozzle.getNozzleTip();
+                    if (nozzleTip != null && actuator.getName()
+                            .equals(referenceNozzle.getVacuumSenseActuatorName())) {
+                        return String.valueOf(nozzle.getPart() != null
+                                ? nozzleTip.getVacuumLevelPartOn()
+                                : nozzleTip.getVacuumLevelPartOff());
+                    }
+                }
+            }
+            return super.actuatorRead(actuator);
+        }
+    }
+
+    /**
+     * A ReferenceBottomVision with the settings of another, that finds each part centred on its
+     * nozzle. An image processed for findOffsetsAsync() is processed straight away, but its result
+     * is only ready visionSeconds after it was captured, so that waiting for it takes only the
+     * time the moves in between didn't.
+     */
+    private class DryRunBottomVision extends ReferenceBottomVision {
+        private boolean submitting;
+
+        DryRunBottomVision(ReferenceBottomVision bottomVision) {
+            setEnabled(bottomVision.isEnabled());
+            setPreRotate(bottomVision.isPreRotate());
+            setPreRotateSingleCapture(bottomVision.isPreRotateSingleCapture());
+            setPreRotateMaxSingleCaptureAngle(bottomVision.getPreRotateMaxSingleCaptureAngle());
+            setMultiNozzle(bottomVision.isMultiNozzle());
+            setRotateWhileTravelling(bottomVision.isRotateWhileTravelling());
+            setPipeline(bottomVision.getPipeline());
+            partSettingsByPartId = bottomVision.getPartSettingsByPartId();
+        }
+
+        @Override
+        protected BufferedImage capture(Camera camera, boolean settleFirst) throws Exception {
+            if (settleFirst) {
+                settle(camera);
+            }
+            return new BufferedImage(camera.getWidth(), camera.getHeight(),
+                    BufferedImage.TYPE_BYTE_GRAY);
+        }
+
+        @Override
+        protected RotatedRect processPipelineAndGetResult(CvPipeline pipeline, Camera camera,
+                Part part, Nozzle nozzle) throws Exception {
+            pipeline.setProperty("camera", camera);
+            pipeline.setProperty("nozzle", nozzle);
+            BufferedImage image =
+                    (BufferedImage) pipeline.getProperty(ImageCapture.CAPTURED_IMAGE_PROPERTY);
+            if (image == null) {
+                image = capture(camera, true);
+            }
+            if (!submitting) {
+                SimulationClock.sleep(visionMillis);
+            }
+            return new RotatedRect(new Point(image.getWidth() / 2., image.getHeight() / 2.),
+                    new Size(1, 1), 0);
+        }
+
+        @Override
+        protected Future<PartAlignmentOffset> submit(Callable<PartAlignmentOffset> task) {
+            long readyTime = SimulationClock.currentTimeMillis() + visionMillis;
+            CompletableFuture<PartAlignmentOffset> result = new CompletableFuture<>();
+            submitting = true;
+            try {
+                result.complete(task.call());
+            }
+            catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            finally {
+                submitting = false;
+            }
+            return new ReadyFuture<>(result, readyTime);
+        }
+    }
+
+    /**
+     * A ReferenceFiducialLocator with the settings of another, that finds each fiducial in the
+     * middle of the camera's view.
+     */
+    private class DryRunFiducialLocator extends ReferenceFiducialLocator {
+        DryRunFiducialLocator(ReferenceFiducialLocator fiducialLocator) {
+            setEnabledAveraging(fiducialLocator.isEnabledAveraging());
+            setRepeatFiducialRecognition(fiducialLocator.getRepeatFiducialRecognition());
+            setPipeline(fiducialLocator.getPipeline());
+            partSettingsByPartId = fiducialLocator.getPartSettingsByPartId();
+        }
+
+        @Override
+        protected List<KeyPoint> process(CvPipeline pipeline) throws Exception {
+            Camera camera = (Camera) pipeline.getProperty("camera");
+            settle(camera);
+            SimulationClock.sleep(visionMillis);
+            return Collections.singletonList(
+                    new KeyPoint(camera.getWidth() / 2f, camera.getHeight() / 2f, 1));
+        }
+    }
+
+    /**
+     * A result that can only be had from readyTime on, in SimulationClock time.
+     */
+    private static class ReadyFuture<T> implements Future<T> {
+        private final Future<T> result;
+        private final long readyTime;
+
+        ReadyFuture(Future<T> result, long readyTime) {
+            this.result = result;
+            this.readyTime = readyTime;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return SimulationClock.currentTimeMillis() >= readyTime;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            SimulationClock.sleep(readyTime - SimulationClock.currentTimeMillis());
+            return result.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+            return get();
+        }
+    }
+}
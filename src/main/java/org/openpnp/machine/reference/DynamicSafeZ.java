@@ -0,0 +1,173 @@
+package org.openpnp.machine.reference;
+
+import java.awt.geom.Rectangle2D;
+
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Footprint;
+import org.openpnp.model.Job;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.Utils2D;
+
+/**
+ * Works out how high a nozzle has to be to travel between two locations, so that it can travel
+ * lower than its Safe Z when nothing in its way needs it that high. The part on the nozzle has to
+ * clear, by the clearance, everything within the corridor along the travel: the parts already
+ * placed on the boards of the running job and the feeders. The boards themselves are always in
+ * the way.
+ *
+ * The corridor is widened by half the diagonal of the footprint of the part on the nozzle, and
+ * for each placed part by half the diagonal of its own footprint, so that the parts can't touch
+ * whichever way they are turned. A part without a footprint only has the corridor.
+ *
+ * A feeder stands feederHeight above its pick location, for its body, tape guides or pins, and
+ * reaches feederReach around it, so it is in the way if the corridor passes within feederReach
+ * of its pick location.
+ *
+ * A retract, which travels nowhere, also has to clear where the nozzle is, which is the part it
+ * just placed or picked. A travel never goes lower than where it starts or ends, and never higher
+ * than Safe Z.
+ *
+ * Only the running job says what is on the boards, so unless a step of a job is being run, see
+ * ReferencePnpJobProcessor.getRunningJob(), and if a feeder can't say where its part is, the
+ * travel goes all the way up to Safe Z.
+ */
+public class DynamicSafeZ {
+    private static final LengthUnit UNITS = LengthUnit.Millimeters;
+
+    /**
+     * Returns the Z, in the units of from, to travel at.
+     *
+     * @param nozzle
+     * @param from Where the nozzle starts.
+     * @param to Where the nozzle ends up, with X and Y filled in. Z may be NaN.
+     * @param safeZ
+     * @param clearance
+     * @param corridorWidth
+     * @param feederHeight
+     * @param feederReach
+     * @return
+     */
+    public static double getTravelZ(Nozzle nozzle, Location from, Location to, Length safeZ,
+            Length clearance, Length corridorWidth, Length feederHeight, Length feederReach) {
+        double maxZ = safeZ.convertToUnits(from.getUnits()).getValue();
+        Machine machine = nozzle.getHead().getMachine();
+        Job job = ReferencePnpJobProcessor.getRunningJob();
+        if (job == null) {
+            return maxZ;
+        }
+
+        Location start = from.convertToUnits(UNITS);
+        Location end = to.convertToUnits(UNITS);
+        double halfWidth = corridorWidth.convertToUnits(UNITS).getValue() / 2
+                + getHalfDiagonal(nozzle.getPart());
+        double top = Double.NEGATIVE_INFINITY;
+        if (start.getX() == end.getX() && start.getY() == end.getY()) {
+            top = start.getZ();
+        }
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            if (!boardLocation.isEnabled()) {
+                continue;
+            }
+            top = Math.max(top, boardLocation.getLocation().convertToUnits(UNITS).getZ());
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                if (placement.getType() != Placement.Type.Place
+                        || placement.getSide() != boardLocation.getSide()
+                        || placement.getPart() == null
+                        || !boardLocation.getPlaced(placement.getId())) {
+                    continue;
+                }
+                Location location = Utils2D
+                        .calculateFiducialCompensatedBoardPlacementLocation(boardLocation,
+                                placement.getLocation())
+                        .convertToUnits(UNITS);
+                if (isInCorridor(location, start, end,
+                        halfWidth + getHalfDiagonal(placement.getPart()))) {
+                    top = Math.max(top, location.getZ() + getHeight(placement.getPart()));
+                }
+            }
+        }
+        for (Feeder feeder : machine.getFeeders()) {
+            if (!feeder.isEnabled()) {
+                continue;
+            }
+            Location location;
+            try {
+                location = feeder.getPickLocation();
+            }
+            catch (Exception e) {
+                return maxZ;
+            }
+            if (location == null) {
+                return maxZ;
+            }
+            location = location.convertToUnits(UNITS);
+            if (isInCorridor(location, start, end,
+                    halfWidth + feederReach.convertToUnits(UNITS).getValue())) {
+                top = Math.max(top,
+                        location.getZ() + feederHeight.convertToUnits(UNITS).getValue());
+            }
+        }
+
+        double z = top + clearance.convertToUnits(UNITS).getValue();
+        if (nozzle.getPart() != null) {
+            z += getHeight(nozzle.getPart());
+        }
+        z = Math.max(z, start.getZ());
+        if (!Double.isNaN(end.getZ())) {
+            z = Math.max(z, end.getZ());
+        }
+        z = new Length(z, UNITS).convertToUnits(from.getUnits()).getValue();
+        return Math.min(z, maxZ);
+    }
+
+    private static double getHeight(Part part) {
+        return part.getHeight().convertToUnits(UNITS).getValue();
+    }
+
+    /**
+     * Returns how far the part's footprint reaches from its centre, or 0 if there is no part or it
+     * has no footprint.
+     */
+    private static double getHalfDiagonal(Part part) {
+        if (part == null || part.getPackage() == null
+                || part.getPackage().getFootprint() == null) {
+            return 0;
+        }
+        Footprint footprint = part.getPackage().getFootprint();
+        Rectangle2D bounds = footprint.getShape().getBounds2D();
+        if (bounds.isEmpty()) {
+            return 0;
+        }
+        double x = Math.max(Math.abs(bounds.getMinX()), Math.abs(bounds.getMaxX()));
+        double y = Math.max(Math.abs(bounds.getMinY()), Math.abs(bounds.getMaxY()));
+        return new Length(Math.hypot(x, y), footprint.getUnits()).convertToUnits(UNITS)
+                .getValue();
+    }
+
+    /**
+     * Returns true if the location is within halfWidth, in X and Y, of the line from start to
+     * end.
+     */
+    private static boolean isInCorridor(Location location, Location start, Location end,
+            double halfWidth) {
+        double dx = end.getX() - start.getX();
+        double dy = end.getY() - start.getY();
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((location.getX() - start.getX()) * dx + (location.getY() - start.getY()) * dy)
+                    / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double x = start.getX() + t * dx - location.getX();
+        double y = start.getY() + t * dy - location.getY();
+        return x * x + y * y <= halfWidth * halfWidth;
+    }
+}
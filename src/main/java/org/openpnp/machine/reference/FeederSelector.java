@@ -0,0 +1,207 @@
+package org.openpnp.machine.reference;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.AbstractModelObject;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Machine;
+
+/**
+ * Chooses which of the feeders holding a part to feed it from. The machine's feeders are indexed
+ * by part id so that a choice only looks at the feeders holding the part, rather than at every
+ * feeder on the machine.
+ *
+ * The index is rebuilt when a feeder is added to or removed from the machine, or a feeder's part
+ * changes. Whether a feeder is enabled is checked on every choice, so feeders being disabled
+ * after a failed feed, or enabled again, is seen straight away.
+ *
+ * The selector listens to the machine and its feeders for these changes, so call dispose() when
+ * it is no longer used.
+ */
+public class FeederSelector implements PropertyChangeListener {
+    public enum Strategy {
+        /**
+         * The first enabled feeder in the machine's list of feeders.
+         */
+        First,
+        /**
+         * The enabled feeder the nozzle can get to soonest, by the head's MotionTimeModel. The
+         * feeder with the pick location nearest to the nozzle when that isn't known.
+         */
+        Nearest,
+        /**
+         * The enabled feeder that was fed from least recently, so that the feeders holding a part
+         * take turns and run out at about the same time.
+         */
+        RoundRobin
+    }
+
+    private final Machine machine;
+    private Map<String, List<Feeder>> feedersByPartId;
+    /**
+     * The feeders listened to for part changes.
+     */
+    private final List<AbstractModelObject> listenedFeeders = new ArrayList<>();
+    private final Map<Feeder, Long> lastFed = new HashMap<>();
+    private long feedCount;
+
+    public FeederSelector(Machine machine) {
+        this.machine = machine;
+        if (machine instanceof AbstractModelObject) {
+            ((AbstractModelObject) machine).addPropertyChangeListener("feeders", this);
+        }
+    }
+
+    public Machine getMachine() {
+        return machine;
+    }
+
+    /**
+     * Returns the feeder to feed the part from.
+     *
+     * @param part
+     * @param strategy
+     * @param location Where the nozzle will be coming from. Only used by Strategy.Nearest, and
+     *        may be null otherwise.
+     * @return
+     * @throws Exception If there is no enabled feeder holding the part.
+     */
+    public Feeder select(Part part, Strategy strategy, Location location) throws Exception {
+        return select(part, strategy, null, location);
+    }
+
+    /**
+     * Returns the feeder to feed the part from.
+     *
+     * @param part
+     * @param strategy
+     * @param hm The nozzle that will pick the part. Strategy.Nearest scores the feeders by the
+     *        time it takes to move there, see ReferenceHead.getMoveToLocationAtSafeZTime(), when
+     *        this is a ReferenceHeadMountable on a ReferenceHead, and by distance otherwise. May
+     *        be null.
+     * @param location Where the nozzle will be coming from. Only used by Strategy.Nearest, and
+     *        may be null otherwise.
+     * @return
+     * @throws Exception If there is no enabled feeder holding the part.
+     */
+    public Feeder select(Part part, Strategy strategy, HeadMountable hm, Location location)
+            throws Exception {
+        Feeder feeder = select(getFeeders(part), part, strategy, hm, location);
+        if (feeder == null) {
+            // Some feeders, such as slot feeders, can change part without telling anyone, so
+            // make sure the index is current before giving up.
+            invalidate();
+            feeder = select(getFeeders(part), part, strategy, hm, location);
+        }
+        if (feeder == null) {
+            throw new Exception("No compatible, enabled feeder found for part " + part.getId());
+        }
+        return feeder;
+    }
+
+    /**
+     * Records that a part was fed from the feeder, for Strategy.RoundRobin.
+     *
+     * @param feeder
+     */
+    public synchronized void fed(Feeder feeder) {
+        lastFed.put(feeder, ++feedCount);
+    }
+
+    public synchronized void invalidate() {
+        feedersByPartId = null;
+    }
+
+    /**
+     * Stops listening to the machine and its feeders.
+     */
+    public synchronized void dispose() {
+        if (machine instanceof AbstractModelObject) {
+            ((AbstractModelObject) machine).removePropertyChangeListener("feeders", this);
+        }
+        removeFeederListeners();
+        feedersByPartId = null;
+    }
+
+    private void removeFeederListeners() {
+        for (AbstractModelObject feeder : listenedFeeders) {
+            feeder.removePropertyChangeListener("part", this);
+        }
+        listenedFeeders.clear();
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        invalidate();
+    }
+
+    private Feeder select(List<Feeder> feeders, Part part, Strategy strategy, HeadMountable hm,
+            Location location) {
+        Feeder best = null;
+        double bestScore = 0;
+        for (Feeder feeder : feeders) {
+            if (feeder.getPart() != part || !feeder.isEnabled()) {
+                continue;
+            }
+            if (strategy == Strategy.First) {
+                return feeder;
+            }
+            double score = score(feeder, strategy, hm, location);
+            if (best == null || score < bestScore) {
+                best = feeder;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private synchronized double score(Feeder feeder, Strategy strategy, HeadMountable hm,
+            Location location) {
+        if (strategy == Strategy.RoundRobin) {
+            return lastFed.getOrDefault(feeder, 0L);
+        }
+        if (location == null) {
+            return 0;
+        }
+        try {
+            if (hm instanceof ReferenceHeadMountable && hm.getHead() instanceof ReferenceHead) {
+                return ((ReferenceHead) hm.getHead()).getMoveToLocationAtSafeZTime(
+                        (ReferenceHeadMountable) hm, location, feeder.getPickLocation(),
+                        machine.getSpeed());
+            }
+            return location.getLinearDistanceTo(feeder.getPickLocation());
+        }
+        catch (Exception e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private synchronized List<Feeder> getFeeders(Part part) {
+        if (feedersByPartId == null) {
+            feedersByPartId = new HashMap<>();
+            // Removed first so that rebuilding doesn't add the listeners again, or keep listening
+            // to feeders that were removed from the machine.
+            removeFeederListeners();
+            for (Feeder feeder : machine.getFeeders()) {
+                if (feeder instanceof AbstractModelObject) {
+                    ((AbstractModelObject) feeder).addPropertyChangeListener("part", this);
+                    listenedFeeders.add((AbstractModelObject) feeder);
+                }
+                if (feeder.getPart() != null) {
+                    feedersByPartId.computeIfAbsent(feeder.getPart().getId(), k -> new ArrayList<>())
+                            .add(feeder);
+                }
+            }
+        }
+        List<Feeder> feeders = feedersByPartId.get(part.getId());
+        return feeders == null ? new ArrayList<>() : feeders;
+    }
+}
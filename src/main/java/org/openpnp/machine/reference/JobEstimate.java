@@ -0,0 +1,93 @@
+package org.openpnp.machine.reference;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Part;
+
+/**
+ * How long a job would take on the machine, as estimated by a dry run of it. See
+ * ReferencePnpJobProcessor.estimate() and ReferencePasteDispenseJobProcessor.estimate().
+ *
+ * The total includes everything the job does. The time of each board and part only includes the
+ * steps done for it, so preparing the machine and parking at the end are only in the total.
+ */
+public class JobEstimate {
+    private double totalSeconds;
+    private int count;
+    private final Map<BoardLocation, Double> boardSeconds = new LinkedHashMap<>();
+    private final Map<String, Double> partSeconds = new TreeMap<>();
+    private final Map<String, Integer> partCounts = new TreeMap<>();
+
+    /**
+     * Adds seconds spent on the board, and on the part if it isn't null.
+     */
+    void add(BoardLocation boardLocation, Part part, double seconds) {
+        boardSeconds.merge(boardLocation, seconds, Double::sum);
+        if (part != null) {
+            partSeconds.merge(part.getId(), seconds, Double::sum);
+        }
+    }
+
+    /**
+     * Counts a placement of the part, or a dispense if it is null.
+     */
+    void done(Part part) {
+        count++;
+        if (part != null) {
+            partCounts.merge(part.getId(), 1, Integer::sum);
+        }
+    }
+
+    void setTotalSeconds(double totalSeconds) {
+        this.totalSeconds = totalSeconds;
+    }
+
+    public double getTotalSeconds() {
+        return totalSeconds;
+    }
+
+    /**
+     * Returns the number of placements, or of dispenses for a paste job.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getComponentsPerHour() {
+        if (totalSeconds <= 0) {
+            return 0;
+        }
+        return count * 3600 / totalSeconds;
+    }
+
+    /**
+     * Returns the seconds spent on each enabled board, in job order.
+     */
+    public Map<BoardLocation, Double> getBoardSeconds() {
+        return Collections.unmodifiableMap(boardSeconds);
+    }
+
+    /**
+     * Returns the seconds spent on all the placements of each part, by part id.
+     */
+    public Map<String, Double> getPartSeconds() {
+        return Collections.unmodifiableMap(partSeconds);
+    }
+
+    /**
+     * Returns the number of placements of each part, by part id.
+     */
+    public Map<String, Integer> getPartCounts() {
+        return Collections.unmodifiableMap(partCounts);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d in %.1f sec (%.0f CPH)", count, totalSeconds,
+                getComponentsPerHour());
+    }
+}
@@ -0,0 +1,324 @@
+package org.openpnp.machine.reference;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openpnp.model.Part;
+import org.openpnp.spi.Feeder;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Times the steps of a pick and place job, so that it can be seen whether the time goes to
+ * motion, vision or feeders. Each step is timed, and also broken down by part and, for feeding,
+ * by feeder. The times are aggregated into histograms, and can be written out as a CSV or JSON
+ * summary when the job is finished.
+ *
+ * A sample is one action on one placement: a nozzle tip change, a feed, a pick or a place, or a
+ * fiducial check of one board. Alignments are waited for together, so an Align sample is the
+ * time the job processor spent aligning the parts of a cycle, and the per part samples are the
+ * time from the start of the cycle's alignment to having the part's offsets. Those overlap, and
+ * don't add up to the Align total.
+ */
+public class JobTelemetry {
+    public enum Step {
+        FiducialCheck,
+        ChangeNozzleTip,
+        Feed,
+        Pick,
+        Align,
+        Place
+    }
+
+    /**
+     * The upper bounds, in milliseconds, of the histogram buckets. Durations at or over the last
+     * bound go in one more bucket.
+     */
+    private static final long[] BUCKET_BOUNDS =
+            {10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    /**
+     * Counts, totals and a histogram of the durations of one kind of sample.
+     */
+    public static class Histogram {
+        private long count;
+        private long totalNanos;
+        private long minNanos = Long.MAX_VALUE;
+        private long maxNanos;
+        private final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+            long millis = nanos / 1000000;
+            int i = 0;
+            while (i < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[i]) {
+                i++;
+            }
+            buckets[i]++;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getTotalSeconds() {
+            return totalNanos / 1e9;
+        }
+
+        public synchronized double getMeanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public synchronized double getMinMillis() {
+            return count == 0 ? 0 : minNanos / 1e6;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Returns the number of samples in each bucket. See getBucketLabels().
+         */
+        public synchronized long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("totalSeconds", getTotalSeconds());
+            map.put("meanMillis", getMeanMillis());
+            map.put("minMillis", getMinMillis());
+            map.put("maxMillis", getMaxMillis());
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            List<String> labels = getBucketLabels();
+            for (int i = 0; i < buckets.length; i++) {
+                histogram.put(labels.get(i), buckets[i]);
+            }
+            map.put("histogram", histogram);
+            return map;
+        }
+    }
+
+    private final Map<Step, Histogram> steps = new EnumMap<>(Step.class);
+    private final Map<Step, Map<String, Histogram>> parts = new EnumMap<>(Step.class);
+    private final Map<String, Histogram> feeders = new TreeMap<>();
+    private long startTime;
+    private long finishTime;
+    private int placedCount;
+
+    /**
+     * Forgets the samples of any previous job and starts the clock for the components per hour.
+     */
+    public synchronized void start() {
+        steps.clear();
+        parts.clear();
+        feeders.clear();
+        placedCount = 0;
+        startTime = System.nanoTime();
+        finishTime = 0;
+    }
+
+    /**
+     * Stops the clock for the components per hour.
+     */
+    public synchronized void finish() {
+        finishTime = System.nanoTime();
+    }
+
+    /**
+     * Records a sample of the step that started at startTime, as given by System.nanoTime(),
+     * and ends now.
+     */
+    public synchronized void record(Step step, long startTime) {
+        getHistogram(step).record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Records a sample of the step for the part, as well as for the step itself.
+     */
+    public synchronized void record(Step step, Part part, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        getHistogram(step).record(nanos);
+        addPartSample(step, part, nanos);
+    }
+
+    /**
+     * Records a sample for the part alone. See the Align step.
+     */
+    public synchronized void recordPart(Step step, Part part, long startTime) {
+        addPartSample(step, part, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Records a feed from the feeder, for the Feed step, the part and the feeder.
+     */
+    public synchronized void recordFeed(Feeder feeder, Part part, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        getHistogram(Step.Feed).record(nanos);
+        addPartSample(Step.Feed, part, nanos);
+        feeders.computeIfAbsent(feeder.getName(), name -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Counts a placed part for the components per hour.
+     */
+    public synchronized void placed() {
+        placedCount++;
+    }
+
+    public synchronized int getPlacedCount() {
+        return placedCount;
+    }
+
+    public synchronized double getElapsedSeconds() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return ((finishTime == 0 ? System.nanoTime() : finishTime) - startTime) / 1e9;
+    }
+
+    /**
+     * Returns the parts placed per hour so far, or over the whole job once it has finished.
+     */
+    public synchronized double getComponentsPerHour() {
+        double elapsedSeconds = getElapsedSeconds();
+        return elapsedSeconds == 0 ? 0 : placedCount / (elapsedSeconds / 3600.0);
+    }
+
+    public synchronized Histogram getHistogram(Step step) {
+        return steps.computeIfAbsent(step, s -> new Histogram());
+    }
+
+    /**
+     * Returns the histograms of the step by part id.
+     */
+    public synchronized Map<String, Histogram> getPartHistograms(Step step) {
+        return Collections.unmodifiableMap(
+                new TreeMap<>(parts.getOrDefault(step, Collections.emptyMap())));
+    }
+
+    /**
+     * Returns the histograms of the Feed step by feeder name.
+     */
+    public synchronized Map<String, Histogram> getFeederHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(feeders));
+    }
+
+    /**
+     * Returns labels for the buckets of the histograms, such as "<10ms" and ">=10000ms".
+     */
+    public static List<String> getBucketLabels() {
+        List<String> labels = new ArrayList<>();
+        for (long bound : BUCKET_BOUNDS) {
+            labels.add("<" + bound + "ms");
+        }
+        labels.add(">=" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "ms");
+        return labels;
+    }
+
+    /**
+     * Writes one line per histogram: the whole steps, then the steps by part, then the feeds by
+     * feeder.
+     */
+    public synchronized void writeCsv(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.print("Kind,Step,Name,Count,Total [s],Mean [ms],Min [ms],Max [ms]");
+        for (String label : getBucketLabels()) {
+            out.print("," + label);
+        }
+        out.println();
+        for (Map.Entry<Step, Histogram> e : steps.entrySet()) {
+            writeCsv(out, "Step", e.getKey(), "", e.getValue());
+        }
+        for (Map.Entry<Step, Map<String, Histogram>> e : parts.entrySet()) {
+            for (Map.Entry<String, Histogram> part : e.getValue().entrySet()) {
+                writeCsv(out, "Part", e.getKey(), part.getKey(), part.getValue());
+            }
+        }
+        for (Map.Entry<String, Histogram> e : feeders.entrySet()) {
+            writeCsv(out, "Feeder", Step.Feed, e.getKey(), e.getValue());
+        }
+        out.flush();
+    }
+
+    public synchronized void writeJson(Writer writer) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("placedCount", placedCount);
+        summary.put("elapsedSeconds", getElapsedSeconds());
+        summary.put("componentsPerHour", getComponentsPerHour());
+        Map<String, Object> stepMaps = new LinkedHashMap<>();
+        for (Map.Entry<Step, Histogram> e : steps.entrySet()) {
+            stepMaps.put(e.getKey().name(), e.getValue().toMap());
+        }
+        summary.put("steps", stepMaps);
+        Map<String, Object> partMaps = new LinkedHashMap<>();
+        for (Map.Entry<Step, Map<String, Histogram>> e : parts.entrySet()) {
+            partMaps.put(e.getKey().name(), toMaps(e.getValue()));
+        }
+        summary.put("parts", partMaps);
+        summary.put("feeders", toMaps(feeders));
+        new GsonBuilder().setPrettyPrinting().create().toJson(summary, writer);
+    }
+
+    /**
+     * Writes the CSV and JSON summaries to name.csv and name.json in the directory, creating it
+     * if needed.
+     */
+    public void export(File directory, String name) throws IOException {
+        directory.mkdirs();
+        try (Writer writer = new FileWriter(new File(directory, name + ".csv"))) {
+            writeCsv(writer);
+        }
+        try (Writer writer = new FileWriter(new File(directory, name + ".json"))) {
+            writeJson(writer);
+        }
+    }
+
+    private void addPartSample(Step step, Part part, long nanos) {
+        parts.computeIfAbsent(step, s -> new TreeMap<>())
+             .computeIfAbsent(part.getId(), id -> new Histogram())
+             .record(nanos);
+    }
+
+    private static void writeCsv(PrintWriter out, String kind, Step step, String name,
+            Histogram histogram) {
+        out.printf(Locale.ROOT, "%s,%s,%s,%d,%.3f,%.1f,%.1f,%.1f", kind, step, csvEscape(name),
+                histogram.getCount(), histogram.getTotalSeconds(), histogram.getMeanMillis(),
+                histogram.getMinMillis(), histogram.getMaxMillis());
+        for (long bucket : histogram.getBuckets()) {
+            out.print("," + bucket);
+        }
+        out.println();
+    }
+
+    private static String csvEscape(String s) {
+        if (s.contains(",") || s.contains("\"")) {
+            return "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+        return s;
+    }
+
+    private static Map<String, Object> toMaps(Map<String, Histogram> histograms) {
+        Map<String, Object> maps = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            maps.put(e.getKey(), e.getValue().toMap());
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,36 @@
+package org.openpnp.machine.reference;
+
+import org.openpnp.model.Location;
+
+/**
+ * One move in a sequence of moves given to ReferenceDriver.moveToSegments(). The location and
+ * speed are what would otherwise be passed to ReferenceDriver.moveTo() for the HeadMountable.
+ */
+public class MotionSegment {
+    private final ReferenceHeadMountable headMountable;
+    private final Location location;
+    private final double speed;
+
+    public MotionSegment(ReferenceHeadMountable headMountable, Location location, double speed) {
+        this.headMountable = headMountable;
+        this.location = location;
+        this.speed = speed;
+    }
+
+    public ReferenceHeadMountable getHeadMountable() {
+        return headMountable;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public String toString() {
+        return headMountable.getName() + " " + location + " " + speed;
+    }
+}
@@ -0,0 +1,241 @@
+package org.openpnp.machine.reference;
+
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+
+/**
+ * Estimates how long moves take, from the feed rate, acceleration and jerk limits of each axis.
+ * Each move starts and ends at rest, accelerating up to its feed rate and back down again in a
+ * trapezoidal velocity profile, or an S-curve one if the axes have a jerk limit. X, Y and Z move
+ * together along a straight line, limited by whichever axis reaches its limits first, and the
+ * rotation moves alongside them.
+ *
+ * This gives a cost for moves that can be compared in time rather than distance, for planning
+ * and for simulating a machine.
+ */
+public class MotionTimeModel {
+    public enum Axis {
+        X,
+        Y,
+        Z,
+        Rotation
+    }
+
+    /**
+     * The limits of one axis. Linear axes are in millimeters and the rotation axis in degrees. A
+     * limit of 0 means there is none.
+     */
+    public static class AxisKinematics {
+        /**
+         * Per minute, at a speed of 1.
+         */
+        @Attribute(required = false)
+        private double maxFeedRate;
+
+        /**
+         * Per second squared.
+         */
+        @Attribute(required = false)
+        private double acceleration;
+
+        /**
+         * Per second cubed.
+         */
+        @Attribute(required = false)
+        private double jerk;
+
+        public AxisKinematics() {
+
+        }
+
+        public AxisKinematics(double maxFeedRate, double acceleration, double jerk) {
+            this.maxFeedRate = maxFeedRate;
+            this.acceleration = acceleration;
+            this.jerk = jerk;
+        }
+
+        public double getMaxFeedRate() {
+            return maxFeedRate;
+        }
+
+        public void setMaxFeedRate(double maxFeedRate) {
+            this.maxFeedRate = maxFeedRate;
+        }
+
+        public double getAcceleration() {
+            return acceleration;
+        }
+
+        public void setAcceleration(double acceleration) {
+            this.acceleration = acceleration;
+        }
+
+        public double getJerk() {
+            return jerk;
+        }
+
+        public void setJerk(double jerk) {
+            this.jerk = jerk;
+        }
+
+        /**
+         * Returns the seconds it takes to move the distance from rest to rest, at the speed
+         * factor, which scales the feed rate.
+         */
+        public double getMoveTime(double distance, double speed) {
+            distance = Math.abs(distance);
+            if (distance == 0) {
+                return 0;
+            }
+            double velocity = maxFeedRate * speed / 60.0;
+            if (velocity <= 0) {
+                velocity = Double.POSITIVE_INFINITY;
+            }
+            if (!Double.isInfinite(velocity)
+                    && velocity * getRampTime(velocity) <= distance) {
+                // Reaches the feed rate and cruises at it between the ramps.
+                double rampTime = getRampTime(velocity);
+                return 2 * rampTime + (distance - velocity * rampTime) / velocity;
+            }
+            if (acceleration <= 0 && jerk <= 0) {
+                return 0;
+            }
+            // Turns around before reaching the feed rate. The distance covered by ramping up to a
+            // peak velocity and straight back down grows with the peak, so search for the peak
+            // that covers the distance.
+            double low = 0;
+            double high = Double.isInfinite(velocity) ? 1 : velocity;
+            while (high * getRampTime(high) < distance) {
+                high *= 2;
+            }
+            for (int i = 0; i < 64; i++) {
+                double peak = (low + high) / 2;
+                if (peak * getRampTime(peak) < distance) {
+                    low = peak;
+                }
+                else {
+                    high = peak;
+                }
+            }
+            return 2 * getRampTime(high);
+        }
+
+        /**
+         * Returns the seconds it takes to go from rest to the velocity. The average velocity
+         * over the ramp is half the velocity, for both profiles.
+         */
+        private double getRampTime(double velocity) {
+            if (jerk <= 0) {
+                return acceleration <= 0 ? 0 : velocity / acceleration;
+            }
+            if (acceleration <= 0 || velocity < acceleration * acceleration / jerk) {
+                // Jerks up to a lower acceleration and straight back down.
+                return 2 * Math.sqrt(velocity / jerk);
+            }
+            return velocity / acceleration + acceleration / jerk;
+        }
+    }
+
+    @Element(required = false)
+    private AxisKinematics x = new AxisKinematics(30000, 3000, 0);
+
+    @Element(required = false)
+    private AxisKinematics y = new AxisKinematics(30000, 3000, 0);
+
+    @Element(required = false)
+    private AxisKinematics z = new AxisKinematics(10000, 1000, 0);
+
+    @Element(required = false)
+    private AxisKinematics rotation = new AxisKinematics(36000, 10000, 0);
+
+    public AxisKinematics getKinematics(Axis axis) {
+        switch (axis) {
+            case X:
+                return x;
+            case Y:
+                return y;
+            case Z:
+                return z;
+            default:
+                return rotation;
+        }
+    }
+
+    public void setKinematics(Axis axis, AxisKinematics kinematics) {
+        switch (axis) {
+            case X:
+                x = kinematics;
+                break;
+            case Y:
+                y = kinematics;
+                break;
+            case Z:
+                z = kinematics;
+                break;
+            default:
+                rotation = kinematics;
+                break;
+        }
+    }
+
+    /**
+     * Returns the seconds it takes to move in a straight line from one location to the other, at
+     * the speed factor. An axis that is NaN in either location does not move.
+     */
+    public double getMoveTime(Location from, Location to, double speed) {
+        from = from.convertToUnits(LengthUnit.Millimeters);
+        to = to.convertToUnits(LengthUnit.Millimeters);
+        double dx = getDistance(from.getX(), to.getX());
+        double dy = getDistance(from.getY(), to.getY());
+        double dz = getDistance(from.getZ(), to.getZ());
+        double dc = getDistance(from.getRotation(), to.getRotation());
+
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double linearTime = 0;
+        if (length > 0) {
+            // The limits along the line are those that keep every axis within its own limits,
+            // each axis moving by its share of the line.
+            double[] shares = {dx / length, dy / length, dz / length};
+            AxisKinematics[] axes = {x, y, z};
+            AxisKinematics path = new AxisKinematics();
+            path.maxFeedRate = Double.POSITIVE_INFINITY;
+            path.acceleration = Double.POSITIVE_INFINITY;
+            path.jerk = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < axes.length; i++) {
+                if (shares[i] == 0) {
+                    continue;
+                }
+                path.maxFeedRate =
+                        Math.min(path.maxFeedRate, limit(axes[i].maxFeedRate) / shares[i]);
+                path.acceleration =
+                        Math.min(path.acceleration, limit(axes[i].acceleration) / shares[i]);
+                path.jerk = Math.min(path.jerk, limit(axes[i].jerk) / shares[i]);
+            }
+            path.maxFeedRate = unlimit(path.maxFeedRate);
+            path.acceleration = unlimit(path.acceleration);
+            path.jerk = unlimit(path.jerk);
+            linearTime = path.getMoveTime(length, speed);
+        }
+        return Math.max(linearTime, rotation.getMoveTime(dc, speed));
+    }
+
+    private static double getDistance(double from, double to) {
+        if (Double.isNaN(from) || Double.isNaN(to)) {
+            return 0;
+        }
+        return Math.abs(to - from);
+    }
+
+    /**
+     * Turns "no limit" into an infinite one, for taking the minimum of limits.
+     */
+    private static double limit(double value) {
+        return value <= 0 ? Double.POSITIVE_INFINITY : value;
+    }
+
+    private static double unlimit(double value) {
+        return Double.isInfinite(value) ? 0 : value;
+    }
+}
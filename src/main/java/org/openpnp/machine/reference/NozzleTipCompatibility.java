@@ -0,0 +1,222 @@
+package org.openpnp.machine.reference;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openpnp.model.AbstractModelObject;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+
+/**
+ * Caches which of a head's nozzles and nozzle tips can handle which parts, so that planning can
+ * ask for each nozzle and pending placement in every cycle without walking the nozzle tips and
+ * their compatible packages each time. The answers for a part are worked out the first time it is
+ * asked about and kept until the configuration they depend on changes: a nozzle's tips, a nozzle
+ * tip's compatible packages, or a part's package.
+ *
+ * Call dispose() when done with it, to stop listening for those changes.
+ */
+public class NozzleTipCompatibility implements PropertyChangeListener {
+    /**
+     * The answers for one part.
+     */
+    private static class Entry {
+        /**
+         * Whether each nozzle tip, by index, can handle the part.
+         */
+        final boolean[] nozzleTips;
+        /**
+         * The first tip of each nozzle, by index, that can handle the part, or null if none can.
+         */
+        final NozzleTip[] firstNozzleTips;
+
+        Entry(int nozzleTipCount, int nozzleCount) {
+            nozzleTips = new boolean[nozzleTipCount];
+            firstNozzleTips = new NozzleTip[nozzleCount];
+        }
+    }
+
+    private final Head head;
+    private final Set<Object> watched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Map<Nozzle, Integer> nozzleIndexes;
+    private Map<NozzleTip, Integer> nozzleTipIndexes;
+    private Map<Part, Entry> entries;
+    private final Map<Nozzle, NozzleTip> loadedNozzleTips = new IdentityHashMap<>();
+
+    public NozzleTipCompatibility(Head head) {
+        this.head = head;
+    }
+
+    public Head getHead() {
+        return head;
+    }
+
+    /**
+     * Returns true if any of the nozzle's tips can handle the part. The same as
+     * AbstractPnpJobProcessor.nozzleCanHandle().
+     */
+    public boolean canHandle(Nozzle nozzle, Part part) {
+        return getFirstNozzleTip(nozzle, part) != null;
+    }
+
+    /**
+     * The same as NozzleTip.canHandle().
+     */
+    public synchronized boolean canHandle(NozzleTip nozzleTip, Part part) {
+        Entry entry = getEntry(part);
+        Integer index = nozzleTipIndexes.get(nozzleTip);
+        if (index == null) {
+            // Not one of the head's tips.
+            return nozzleTip.canHandle(part);
+        }
+        return entry.nozzleTips[index];
+    }
+
+    /**
+     * Returns the first of the nozzle's tips that can handle the part. The same as
+     * AbstractPnpJobProcessor.findNozzleTip(Nozzle, Part).
+     *
+     * @throws Exception If none of the nozzle's tips can handle the part.
+     */
+    public NozzleTip findNozzleTip(Nozzle nozzle, Part part) throws Exception {
+        NozzleTip nozzleTip = getFirstNozzleTip(nozzle, part);
+        if (nozzleTip == null) {
+            throw new Exception("No compatible nozzle tip on nozzle " + nozzle.getName()
+                    + " found for part " + part.getId());
+        }
+        return nozzleTip;
+    }
+
+    /**
+     * Returns the first nozzle tip, on any of the head's nozzles, that can handle the part. The
+     * same as AbstractPnpJobProcessor.findNozzleTip(Head, Part).
+     *
+     * @throws Exception If no tip on any nozzle can handle the part.
+     */
+    public synchronized NozzleTip findNozzleTip(Part part) throws Exception {
+        for (NozzleTip nozzleTip : getEntry(part).firstNozzleTips) {
+            if (nozzleTip != null) {
+                return nozzleTip;
+            }
+        }
+        throw new Exception(
+                "No compatible nozzle tip on any nozzle found for part " + part.getId());
+    }
+
+    /**
+     * Returns the tip loaded on the nozzle, or the one given to setNozzleTip() for it.
+     */
+    public synchronized NozzleTip getNozzleTip(Nozzle nozzle) {
+        if (loadedNozzleTips.containsKey(nozzle)) {
+            return loadedNozzleTips.get(nozzle);
+        }
+        return nozzle.getNozzleTip();
+    }
+
+    /**
+     * Has getNozzleTip() answer with the tip, rather than the one loaded on the nozzle, so that a
+     * job can be planned as if the tip had been changed without changing it on the machine.
+     */
+    public synchronized void setNozzleTip(Nozzle nozzle, NozzleTip nozzleTip) {
+        loadedNozzleTips.put(nozzle, nozzleTip);
+    }
+
+    /**
+     * Forgets every answer, so that they are worked out again from the configuration.
+     */
+    public synchronized void invalidate() {
+        entries = null;
+    }
+
+    /**
+     * Stops listening for configuration changes.
+     */
+    public synchronized void dispose() {
+        for (Object o : watched) {
+            ((AbstractModelObject) o).removePropertyChangeListener(this);
+        }
+        watched.clear();
+        entries = null;
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        switch (evt.getPropertyName()) {
+            case "nozzleTips":
+            case "compatiblePackages":
+            case "allowIncompatiblePackages":
+            case "package":
+                invalidate();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized NozzleTip getFirstNozzleTip(Nozzle nozzle, Part part) {
+        Entry entry = getEntry(part);
+        Integer index = nozzleIndexes.get(nozzle);
+        if (index == null) {
+            // Not one of the head's nozzles.
+            for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                if (nozzleTip.canHandle(part)) {
+                    return nozzleTip;
+                }
+            }
+            return null;
+        }
+        return entry.firstNozzleTips[index];
+    }
+
+    private Entry getEntry(Part part) {
+        if (entries == null) {
+            index();
+        }
+        Entry entry = entries.get(part);
+        if (entry == null) {
+            entry = new Entry(nozzleTipIndexes.size(), nozzleIndexes.size());
+            for (Map.Entry<NozzleTip, Integer> e : nozzleTipIndexes.entrySet()) {
+                entry.nozzleTips[e.getValue()] = e.getKey().canHandle(part);
+            }
+            for (Map.Entry<Nozzle, Integer> e : nozzleIndexes.entrySet()) {
+                for (NozzleTip nozzleTip : e.getKey().getNozzleTips()) {
+                    if (entry.nozzleTips[nozzleTipIndexes.get(nozzleTip)]) {
+                        entry.firstNozzleTips[e.getValue()] = nozzleTip;
+                        break;
+                    }
+                }
+            }
+            entries.put(part, entry);
+            watch(part);
+        }
+        return entry;
+    }
+
+    private void index() {
+        nozzleIndexes = new IdentityHashMap<>();
+        nozzleTipIndexes = new IdentityHashMap<>();
+        for (Nozzle nozzle : head.getNozzles()) {
+            nozzleIndexes.put(nozzle, nozzleIndexes.size());
+            watch(nozzle);
+            for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                if (!nozzleTipIndexes.containsKey(nozzleTip)) {
+                    nozzleTipIndexes.put(nozzleTip, nozzleTipIndexes.size());
+                    watch(nozzleTip);
+                }
+            }
+        }
+        entries = new IdentityHashMap<>();
+    }
+
+    private void watch(Object o) {
+        if (o instanceof AbstractModelObject && watched.add(o)) {
+            ((AbstractModelObject) o).addPropertyChangeListener(this);
+        }
+    }
+}
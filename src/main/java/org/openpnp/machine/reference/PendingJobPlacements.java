@@ -0,0 +1,161 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openpnp.model.Part;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
+
+/**
+ * The pending placements of a job, in the order they are planned in: by part height, and in job
+ * order among placements of the same height. The order is worked out once, and placements are
+ * taken out as they stop being pending, so each cycle gets the pending placements and checks for
+ * the end of the job without going through every placement of the job and sorting them again.
+ *
+ * The pending placements are also kept in a bucket per part. Placements of the same part are
+ * interchangeable to the planner but for their height order, so a cycle only needs the lowest few
+ * of each part, see getJobPlacementsByPart(), and planning costs the number of parts rather than
+ * the number of placements.
+ *
+ * Statuses should be changed with setStatus(). A placement whose status was set directly is
+ * taken out the next time it is come across.
+ */
+public class PendingJobPlacements {
+    private final List<JobPlacement> ordered;
+    private final Map<JobPlacement, Integer> indexes = new IdentityHashMap<>();
+    private final TreeSet<Integer> pending = new TreeSet<>();
+    private final Map<Part, TreeSet<Integer>> pendingByPart = new HashMap<>();
+
+    public PendingJobPlacements(List<JobPlacement> jobPlacements) {
+        ordered = new ArrayList<>(jobPlacements);
+        ordered.sort(Comparator.comparing(JobPlacement::getPartHeight));
+        for (int i = 0; i < ordered.size(); i++) {
+            JobPlacement jobPlacement = ordered.get(i);
+            indexes.put(jobPlacement, i);
+            if (jobPlacement.status == Status.Pending) {
+                add(i);
+            }
+        }
+    }
+
+    /**
+     * Sets the placement's status, adding it to or taking it out of the pending placements.
+     */
+    public synchronized void setStatus(JobPlacement jobPlacement, Status status) {
+        jobPlacement.status = status;
+        Integer index = indexes.get(jobPlacement);
+        if (index == null) {
+            return;
+        }
+        if (status == Status.Pending) {
+            add(index);
+        }
+        else {
+            remove(index);
+        }
+    }
+
+    /**
+     * Returns the pending placements, sorted by part height.
+     */
+    public List<JobPlacement> getJobPlacements() {
+        return getJobPlacements(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first limit pending placements, sorted by part height.
+     */
+    public synchronized List<JobPlacement> getJobPlacements(int limit) {
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        Iterator<Integer> i = pending.iterator();
+        while (i.hasNext() && jobPlacements.size() < limit) {
+            int index = i.next();
+            JobPlacement jobPlacement = ordered.get(index);
+            if (jobPlacement.status != Status.Pending) {
+                i.remove();
+                removeFromPart(index);
+                continue;
+            }
+            jobPlacements.add(jobPlacement);
+        }
+        return jobPlacements;
+    }
+
+    /**
+     * Returns the first limit pending placements of each part, sorted by part height.
+     */
+    public synchronized List<JobPlacement> getJobPlacementsByPart(int limit) {
+        List<Integer> found = new ArrayList<>();
+        Iterator<TreeSet<Integer>> buckets = pendingByPart.values().iterator();
+        while (buckets.hasNext()) {
+            TreeSet<Integer> bucket = buckets.next();
+            int count = 0;
+            Iterator<Integer> i = bucket.iterator();
+            while (i.hasNext() && count < limit) {
+                int index = i.next();
+                if (ordered.get(index).status != Status.Pending) {
+                    i.remove();
+                    pending.remove(index);
+                    continue;
+                }
+                found.add(index);
+                count++;
+            }
+            if (bucket.isEmpty()) {
+                buckets.remove();
+            }
+        }
+        Collections.sort(found);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int index : found) {
+            jobPlacements.add(ordered.get(index));
+        }
+        return jobPlacements;
+    }
+
+    /**
+     * Returns how many placements of each part are pending. Placements whose status was set
+     * directly are counted until they are come across.
+     */
+    public synchronized Map<Part, Integer> getPartCounts() {
+        Map<Part, Integer> counts = new HashMap<>();
+        for (Map.Entry<Part, TreeSet<Integer>> entry : pendingByPart.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    public boolean isEmpty() {
+        return getJobPlacements(1).isEmpty();
+    }
+
+    private void add(int index) {
+        pending.add(index);
+        Part part = ordered.get(index).placement.getPart();
+        pendingByPart.computeIfAbsent(part, p -> new TreeSet<>()).add(index);
+    }
+
+    private void remove(int index) {
+        pending.remove(index);
+        removeFromPart(index);
+    }
+
+    private void removeFromPart(int index) {
+        Part part = ordered.get(index).placement.getPart();
+        TreeSet<Integer> bucket = pendingByPart.get(part);
+        if (bucket != null) {
+            bucket.remove(index);
+            if (bucket.isEmpty()) {
+                pendingByPart.remove(part);
+            }
+        }
+    }
+}
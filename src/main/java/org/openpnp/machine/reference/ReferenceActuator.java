@@ -107,14 +107,25 @@ public class ReferenceActuator extends AbstractActuator implements ReferenceHead
         getMachine().fireMachineHeadActivity(head);
     }
 
+    @Override
+    public MotionSegment getMoveToSegment(Location location, double speed) {
+        return new MotionSegment(this, location, getHead().getMaxPartSpeed() * speed);
+    }
+
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
+        MotionSegment segment = getMoveToSafeZSegment(speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        getMachine().fireMachineHeadActivity(head);
+    }
+
+    @Override
+    public MotionSegment getMoveToSafeZSegment(double speed) {
         Length safeZ = this.safeZ.convertToUnits(getLocation().getUnits());
         Location l = new Location(getLocation().getUnits(), Double.NaN, Double.NaN,
                 safeZ.getValue(), Double.NaN);
-        getDriver().moveTo(this, l, getHead().getMaxPartSpeed() * speed);
-        getMachine().fireMachineHeadActivity(head);
+        return new MotionSegment(this, l, getHead().getMaxPartSpeed() * speed);
     }
 
     @Override
@@ -119,7 +119,22 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     
     public ReferenceCamera() {
     }
-    
+
+    /**
+     * Waits for the machine to get where it was sent before letting it settle, as the driver may
+     * still be streaming the moves that take it there.
+     */
+    @Override
+    public BufferedImage settleAndCapture() {
+        try {
+            getDriver().waitForMotionComplete();
+        }
+        catch (Exception e) {
+            Logger.warn(e);
+        }
+        return super.settleAndCapture();
+    }
+
     @Override
     public BufferedImage capture() {
         try {
@@ -211,14 +226,25 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
         getMachine().fireMachineHeadActivity(head);
     }
 
+    @Override
+    public MotionSegment getMoveToSegment(Location location, double speed) {
+        return new MotionSegment(this, location, getHead().getMaxPartSpeed() * speed);
+    }
+
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
+        MotionSegment segment = getMoveToSafeZSegment(speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        getMachine().fireMachineHeadActivity(head);
+    }
+
+    @Override
+    public MotionSegment getMoveToSafeZSegment(double speed) {
         Length safeZ = this.safeZ.convertToUnits(getLocation().getUnits());
         Location l = new Location(getLocation().getUnits(), Double.NaN, Double.NaN,
                 safeZ.getValue(), Double.NaN);
-        getDriver().moveTo(this, l, getHead().getMaxPartSpeed() * speed);
-        getMachine().fireMachineHeadActivity(head);
+        return new MotionSegment(this, l, getHead().getMaxPartSpeed() * speed);
     }
 
     public double getRotation() {
@@ -20,6 +20,8 @@
 package org.openpnp.machine.reference;
 
 import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.openpnp.model.Location;
 import org.openpnp.spi.PropertySheetHolder;
@@ -60,6 +62,75 @@ public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder
      */
     public void moveTo(ReferenceHeadMountable hm, Location location, double speed) throws Exception;
 
+    /**
+     * Performs the moves one after the other, as if moveTo() had been called for each of them in
+     * turn. A driver that can should send them to the controller back to back and wait only for
+     * the last one to complete, so that the machine does not stop and wait between them. This is
+     * used for sequences such as moving to Safe Z, travelling and descending.
+     * 
+     * The default implementation calls moveTo() for each segment.
+     * 
+     * @param segments
+     * @throws Exception
+     */
+    public default void moveToSegments(List<MotionSegment> segments) throws Exception {
+        for (MotionSegment segment : segments) {
+            moveTo(segment.getHeadMountable(), segment.getLocation(), segment.getSpeed());
+        }
+    }
+
+    /**
+     * Starts moving the specified HeadMountable to the given location and returns without waiting
+     * for the move to complete, so that the caller can do other work while the machine moves. The
+     * returned future completes when the move has completed, or exceptionally if it failed.
+     * 
+     * Moves started this way are performed in order, and any other call to the driver waits for
+     * them to complete before it does anything, so the machine behaves exactly as if moveTo() had
+     * been called. Use waitForMotionComplete() where the caller itself needs the machine to have
+     * arrived.
+     * 
+     * The default implementation calls moveTo() and returns a completed future.
+     * 
+     * @param hm
+     * @param location
+     * @param speed
+     * @return
+     */
+    public default CompletableFuture<Void> moveToAsync(ReferenceHeadMountable hm,
+            Location location, double speed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            moveTo(hm, location, speed);
+            future.complete(null);
+        }
+        catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Blocks until every move started with moveToAsync() has completed. If one of them failed its
+     * error is thrown.
+     * 
+     * @throws Exception
+     */
+    public default void waitForMotionComplete() throws Exception {
+    }
+
+    /**
+     * Blocks until every move started with moveToAsync() has been sent on, so that getLocation()
+     * returns where they end. Unlike waitForMotionComplete() this need not wait for the machine
+     * to get there, so a driver that streams its moves can keep streaming.
+     * 
+     * The default implementation calls waitForMotionComplete().
+     * 
+     * @throws Exception
+     */
+    public default void waitForMovesSent() throws Exception {
+        waitForMotionComplete();
+    }
+
     /**
      * Returns a clone of the HeadMountable's current location. It's important that the returned
      * object is a clone, since the caller may modify the returned Location.
@@ -20,6 +20,7 @@
 package org.openpnp.machine.reference;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.Action;
 
@@ -31,24 +32,26 @@ import org.openpnp.machine.reference.psh.CamerasPropertySheetHolder;
 import org.openpnp.machine.reference.psh.NozzlesPropertySheetHolder;
 import org.openpnp.machine.reference.wizards.ReferenceHeadConfigurationWizard;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Location;
+import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.AbstractHead;
 import org.openpnp.spi.base.SimplePropertySheetHolder;
 import org.pmw.tinylog.Logger;
+import org.simpleframework.xml.Element;
 
 public class ReferenceHead extends AbstractHead {
-
+    @Element(required = false)
+    protected MotionTimeModel motionTimeModel = new MotionTimeModel();
 
     protected ReferenceMachine machine;
-    protected ReferenceDriver driver;
 
     public ReferenceHead() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
             public void configurationLoaded(Configuration configuration) throws Exception {
                 machine = (ReferenceMachine) configuration.getMachine();
-                driver = machine.getDriver();
             }
         });
     }
@@ -56,7 +59,7 @@ public class ReferenceHead extends AbstractHead {
     @Override
     public void home() throws Exception {
         Logger.debug("{}.home()", getName());
-        driver.home(this);
+        getDriver().home(this);
         machine.fireMachineHeadActivity(this);
     }
 
@@ -93,11 +96,158 @@ public class ReferenceHead extends AbstractHead {
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
-        super.moveToSafeZ(speed);
+        List<MotionSegment> segments = getMoveToSafeZSegments(speed);
+        if (segments == null) {
+            super.moveToSafeZ(speed);
+            return;
+        }
+        getDriver().moveToSegments(segments);
+        machine.fireMachineHeadActivity(this);
+    }
+
+    /**
+     * Moves every HeadMountable on the head to Safe Z, then moves headMountable to the location
+     * in X, Y and C, then in Z. The moves are given to the driver together, so that it can
+     * perform them without stopping in between. HeadMountables that know they can travel lower
+     * than Safe Z, such as nozzles with dynamic Safe Z, only go up as high as the travel needs.
+     * HeadMountables that aren't ReferenceHeadMountables are moved one move at a time.
+     * 
+     * @param headMountable
+     * @param location
+     * @param speed
+     * @throws Exception
+     */
+    @Override
+    public void moveToLocationAtSafeZ(HeadMountable headMountable, Location location,
+            double speed) throws Exception {
+        Logger.debug("{}.moveToLocationAtSafeZ({}, {}, {})", getName(), headMountable.getName(),
+                location, speed);
+        if (!(headMountable instanceof ReferenceHeadMountable)
+                || getMoveToSafeZSegments(speed) == null) {
+            super.moveToSafeZ(speed);
+            headMountable.moveTo(location.derive(null, null, Double.NaN, null), speed);
+            headMountable.moveTo(location, speed);
+            return;
+        }
+        ReferenceHeadMountable hm = (ReferenceHeadMountable) headMountable;
+
+        // The moves after the first start where the ones before them end, not where hm is now, so
+        // any axes left out of the location are filled in here. Z stays at Safe Z.
+        getDriver().waitForMovesSent();
+        Location currentLocation = hm.getLocation().convertToUnits(location.getUnits());
+        if (Double.isNaN(location.getX())) {
+            location = location.derive(currentLocation.getX(), null, null, null);
+        }
+        if (Double.isNaN(location.getY())) {
+            location = location.derive(null, currentLocation.getY(), null, null);
+        }
+        if (Double.isNaN(location.getRotation())) {
+            location = location.derive(null, null, null, currentLocation.getRotation());
+        }
+        List<MotionSegment> segments =
+                getMoveToSafeZSegments(hm, currentLocation, location, speed);
+        double safeZ = hm.getMoveToSafeZSegment(currentLocation, location, speed).getLocation()
+                .convertToUnits(location.getUnits()).getZ();
+        if (Double.isNaN(location.getZ())) {
+            location = location.derive(null, null, safeZ, null);
+        }
+        segments.add(hm.getMoveToSegment(location.derive(null, null, safeZ, null), speed));
+        segments.add(hm.getMoveToSegment(location, speed));
+        getDriver().moveToSegments(segments);
+        machine.fireMachineHeadActivity(this);
+    }
+
+    public MotionTimeModel getMotionTimeModel() {
+        return motionTimeModel;
+    }
+
+    public void setMotionTimeModel(MotionTimeModel motionTimeModel) {
+        this.motionTimeModel = motionTimeModel;
+    }
+
+    /**
+     * Returns the estimated seconds that moving the head in a straight line from one location to
+     * the other takes. See MotionTimeModel.getMoveTime().
+     */
+    public double getMoveTime(Location from, Location to, double speed) {
+        return motionTimeModel.getMoveTime(from, to, speed);
+    }
+
+    /**
+     * Returns the estimated seconds that moveToLocationAtSafeZ() takes to move hm from one
+     * location to the other: up to Safe Z, across in X, Y and C, and down to the location's Z.
+     * 
+     * @param hm
+     * @param from Where hm starts. Null for its current location.
+     * @param location
+     * @param speed
+     * @throws Exception
+     */
+    public double getMoveToLocationAtSafeZTime(ReferenceHeadMountable hm, Location from,
+            Location location, double speed) throws Exception {
+        if (from == null) {
+            from = hm.getLocation();
+        }
+        location = location.convertToUnits(from.getUnits());
+        double safeZ = hm.getMoveToSafeZSegment(from, location, speed).getLocation()
+                .convertToUnits(from.getUnits()).getZ();
+        Location up = from.derive(null, null, safeZ, null);
+        Location across = location.derive(null, null, safeZ, null);
+        return getMoveTime(from, up, speed) + getMoveTime(up, across, speed)
+                + getMoveTime(across, location, speed);
+    }
+
+    /**
+     * Returns the moves that take every HeadMountable on the head to Safe Z, or null if there is
+     * one that is not a ReferenceHeadMountable.
+     */
+    private List<MotionSegment> getMoveToSafeZSegments(double speed) throws Exception {
+        List<MotionSegment> segments = new ArrayList<>();
+        for (HeadMountable hm : getHeadMountables()) {
+            if (!(hm instanceof ReferenceHeadMountable)) {
+                return null;
+            }
+            segments.add(((ReferenceHeadMountable) hm).getMoveToSafeZSegment(speed));
+        }
+        return segments;
+    }
+
+    private List<HeadMountable> getHeadMountables() {
+        List<HeadMountable> hms = new ArrayList<>();
+        hms.addAll(getNozzles());
+        hms.addAll(getCameras());
+        hms.addAll(getActuators());
+        hms.addAll(getPasteDispensers());
+        return hms;
+    }
+
+    /**
+     * Returns the moves that take every HeadMountable on the head up before hm travels from one
+     * location to the other, each of them travelling alongside it.
+     */
+    private List<MotionSegment> getMoveToSafeZSegments(ReferenceHeadMountable hm, Location from,
+            Location to, double speed) throws Exception {
+        List<MotionSegment> segments = new ArrayList<>();
+        for (HeadMountable other : getHeadMountables()) {
+            ReferenceHeadMountable rhm = (ReferenceHeadMountable) other;
+            if (rhm == hm) {
+                segments.add(rhm.getMoveToSafeZSegment(from, to, speed));
+                continue;
+            }
+            Location otherFrom = rhm.getLocation().convertToUnits(from.getUnits());
+            Location otherTo = otherFrom.add(to.subtract(from)).derive(null, null, Double.NaN,
+                    null);
+            segments.add(rhm.getMoveToSafeZSegment(otherFrom, otherTo, speed));
+        }
+        return segments;
     }
 
     @Override
     public String toString() {
         return getName();
     }
+
+    ReferenceDriver getDriver() {
+        return machine.getDriver();
+    }
 }
@@ -7,4 +7,24 @@ public interface ReferenceHeadMountable extends HeadMountable {
     public Location getHeadOffsets();
 
     public void setHeadOffsets(Location headOffsets);
+
+    /**
+     * Returns the move that moveTo(location, speed) would give to the driver, so that it can be
+     * combined with other moves in ReferenceDriver.moveToSegments().
+     */
+    public MotionSegment getMoveToSegment(Location location, double speed) throws Exception;
+
+    /**
+     * Returns the move that moveToSafeZ(speed) would give to the driver.
+     */
+    public MotionSegment getMoveToSafeZSegment(double speed) throws Exception;
+
+    /**
+     * Returns the move that takes hm up before it travels from one location to the other. That
+     * is the move to Safe Z, unless hm knows it can travel lower.
+     */
+    public default MotionSegment getMoveToSafeZSegment(Location from, Location to, double speed)
+            throws Exception {
+        return getMoveToSafeZSegment(speed);
+    }
 }
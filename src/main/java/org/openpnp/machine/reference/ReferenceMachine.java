@@ -113,6 +113,16 @@ public class ReferenceMachine extends AbstractMachine {
         this.driver = driver;
     }
 
+    /**
+     * Puts another driver in place without disabling or closing the machine, returning the one it
+     * replaced. See DryRun.
+     */
+    ReferenceDriver replaceDriver(ReferenceDriver driver) {
+        ReferenceDriver replaced = this.driver;
+        this.driver = driver;
+        return replaced;
+    }
+
     public ReferenceMachine()
     {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
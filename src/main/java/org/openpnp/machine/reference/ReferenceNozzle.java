@@ -2,6 +2,7 @@ package org.openpnp.machine.reference;
 
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -24,6 +25,7 @@ import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.AbstractNozzle;
 import org.openpnp.util.MovableUtils;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -47,6 +49,28 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
     @Element(required = false)
     protected Length safeZ = new Length(0, LengthUnit.Millimeters);
 
+    /**
+     * Travel and retract only as high as the parts and feeders in the way need, rather than all
+     * the way to Safe Z. See DynamicSafeZ.
+     */
+    @Attribute(required = false)
+    protected boolean dynamicSafeZ = false;
+
+    @Element(required = false)
+    protected Length dynamicSafeZClearance = new Length(2, LengthUnit.Millimeters);
+
+    @Element(required = false)
+    protected Length dynamicSafeZCorridor = new Length(10, LengthUnit.Millimeters);
+
+    /**
+     * How high the feeders stand above their pick locations, and how far they reach around them.
+     */
+    @Element(required = false)
+    protected Length dynamicSafeZFeederHeight = new Length(10, LengthUnit.Millimeters);
+
+    @Element(required = false)
+    protected Length dynamicSafeZFeederReach = new Length(15, LengthUnit.Millimeters);
+
     @Element(required = false)
     protected String vacuumSenseActuatorName;
 
@@ -126,6 +150,13 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         return nozzleTip;
     }
 
+    /**
+     * Puts back the part the nozzle held before a DryRun.
+     */
+    void setPart(Part part) {
+        this.part = part;
+    }
+
     @Override
     public void pick(Part part) throws Exception {
         Logger.debug("{}.pick()", getName());
@@ -140,7 +171,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         getMachine().fireMachineHeadActivity(head);
         
         // Dwell Time
-        Thread.sleep(this.getPickDwellMilliseconds() + nozzleTip.getPickDwellMilliseconds());
+        SimulationClock.sleep(this.getPickDwellMilliseconds() + nozzleTip.getPickDwellMilliseconds());
 
         Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
         if (actuator != null) {
@@ -174,7 +205,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         getMachine().fireMachineHeadActivity(head);
         
         // Dwell Time
-        Thread.sleep(this.getPlaceDwellMilliseconds() + nozzleTip.getPlaceDwellMilliseconds());
+        SimulationClock.sleep(this.getPlaceDwellMilliseconds() + nozzleTip.getPlaceDwellMilliseconds());
 
         Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
         if (actuator != null) {
@@ -199,6 +230,48 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
 
     @Override
     public void moveTo(Location location, double speed) throws Exception {
+        MotionSegment segment = getMoveToSegment(location, speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        getMachine().fireMachineHeadActivity(head);
+    }
+
+    @Override
+    public MotionSegment getMoveToSegment(Location location, double speed) throws Exception {
+        return new MotionSegment(this, toMoveLocation(location, speed),
+                getHead().getMaxPartSpeed() * speed);
+    }
+
+    /**
+     * Starts the move and returns without waiting for it to complete. The missing axes of the
+     * location are taken from the nozzle's current location, so this first waits for any move
+     * that is already queued to be sent.
+     */
+    @Override
+    public CompletableFuture<Void> moveToAsync(Location location, double speed) {
+        MotionSegment segment;
+        try {
+            getDriver().waitForMovesSent();
+            segment = getMoveToSegment(location, speed);
+        }
+        catch (Exception e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return getDriver().moveToAsync(this, segment.getLocation(), segment.getSpeed())
+                .thenRun(() -> getMachine().fireMachineHeadActivity(head));
+    }
+
+    @Override
+    public void waitForMotionComplete() throws Exception {
+        getDriver().waitForMotionComplete();
+    }
+
+    /**
+     * Converts the location to the one the driver should move to, filling in NaN axes and
+     * applying the rotation limit and nozzle tip calibration.
+     */
+    private Location toMoveLocation(Location location, double speed) throws Exception {
         // Shortcut Double.NaN. Sending Double.NaN in a Location is an old API that should no
         // longer be used. It will be removed eventually:
         // https://github.com/openpnp/openpnp/issues/255
@@ -239,18 +312,68 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
                     nozzleTip.getCalibration().getCalibratedOffset(location.getRotation()));
             Logger.debug("{}.moveTo({}, {}) (corrected)", getName(), location, speed);
         }
-        getDriver().moveTo(this, location, getHead().getMaxPartSpeed() * speed);
-        getMachine().fireMachineHeadActivity(head);
+        return location;
     }
 
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
+        MotionSegment segment = getMoveToSafeZSegment(speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        getMachine().fireMachineHeadActivity(head);
+    }
+
+    /**
+     * Retracts the nozzle after a pick or place. With dynamicSafeZ set, and while a job is
+     * running, it only goes as high as what is around it needs, and the next move to a location
+     * at Safe Z takes it as high as the travel needs. Otherwise it is the same as moveToSafeZ().
+     * Code that moves the nozzle sideways by other means than a move at Safe Z must use
+     * moveToSafeZ() instead.
+     */
+    public void retract(double speed) throws Exception {
+        Logger.debug("{}.retract({})", getName(), speed);
+        Location location = getLocation();
+        MotionSegment segment = getMoveToSafeZSegment(location, location, speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        getMachine().fireMachineHeadActivity(head);
+    }
+
+    @Override
+    public MotionSegment getMoveToSafeZSegment(double speed) {
         Length safeZ = this.safeZ.convertToUnits(getLocation().getUnits());
         Location l = new Location(getLocation().getUnits(), Double.NaN, Double.NaN,
                 safeZ.getValue(), Double.NaN);
-        getDriver().moveTo(this, l, getHead().getMaxPartSpeed() * speed);
-        getMachine().fireMachineHeadActivity(head);
+        return new MotionSegment(this, l, getHead().getMaxPartSpeed() * speed);
+    }
+
+    @Override
+    public MotionSegment getMoveToSafeZSegment(Location from, Location to, double speed) {
+        if (!dynamicSafeZ) {
+            return getMoveToSafeZSegment(speed);
+        }
+        double z = DynamicSafeZ.getTravelZ(this, from, to, safeZ, dynamicSafeZClearance,
+                dynamicSafeZCorridor, dynamicSafeZFeederHeight, dynamicSafeZFeederReach);
+        Location l = new Location(from.getUnits(), Double.NaN, Double.NaN, z, Double.NaN);
+        return new MotionSegment(this, l, getHead().getMaxPartSpeed() * speed);
+    }
+
+    @Override
+    public CompletableFuture<Void> moveToSafeZAsync(double speed) {
+        Logger.debug("{}.moveToSafeZAsync({})", getName(), speed);
+        MotionSegment segment = getMoveToSafeZSegment(speed);
+        return getDriver().moveToAsync(this, segment.getLocation(), segment.getSpeed())
+                .thenRun(() -> getMachine().fireMachineHeadActivity(head));
+    }
+
+    /**
+     * The same as moveToSafeZAsync() for retract().
+     */
+    public CompletableFuture<Void> retractAsync(double speed) {
+        Logger.debug("{}.retractAsync({})", getName(), speed);
+        Location location = getLocation();
+        MotionSegment segment = getMoveToSafeZSegment(location, location, speed);
+        return getDriver().moveToAsync(this, segment.getLocation(), segment.getSpeed())
+                .thenRun(() -> getMachine().fireMachineHeadActivity(head));
     }
 
     @Override
@@ -410,6 +533,46 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         this.safeZ = safeZ;
     }
 
+    public boolean isDynamicSafeZ() {
+        return dynamicSafeZ;
+    }
+
+    public void setDynamicSafeZ(boolean dynamicSafeZ) {
+        this.dynamicSafeZ = dynamicSafeZ;
+    }
+
+    public Length getDynamicSafeZClearance() {
+        return dynamicSafeZClearance;
+    }
+
+    public void setDynamicSafeZClearance(Length dynamicSafeZClearance) {
+        this.dynamicSafeZClearance = dynamicSafeZClearance;
+    }
+
+    public Length getDynamicSafeZCorridor() {
+        return dynamicSafeZCorridor;
+    }
+
+    public void setDynamicSafeZCorridor(Length dynamicSafeZCorridor) {
+        this.dynamicSafeZCorridor = dynamicSafeZCorridor;
+    }
+
+    public Length getDynamicSafeZFeederHeight() {
+        return dynamicSafeZFeederHeight;
+    }
+
+    public void setDynamicSafeZFeederHeight(Length dynamicSafeZFeederHeight) {
+        this.dynamicSafeZFeederHeight = dynamicSafeZFeederHeight;
+    }
+
+    public Length getDynamicSafeZFeederReach() {
+        return dynamicSafeZFeederReach;
+    }
+
+    public void setDynamicSafeZFeederReach(Length dynamicSafeZFeederReach) {
+        this.dynamicSafeZFeederReach = dynamicSafeZFeederReach;
+    }
+
     @Override
     public void moveTo(Location location) throws Exception {
         moveTo(location, getHead().getMachine().getSpeed());
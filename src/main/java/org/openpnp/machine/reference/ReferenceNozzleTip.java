@@ -157,12 +157,14 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
     }
 
     public void setCompatiblePackages(Set<org.openpnp.model.Package> compatiblePackages) {
+        Object oldValue = getCompatiblePackages();
         this.compatiblePackages.clear();
         this.compatiblePackages.addAll(compatiblePackages);
         compatiblePackageIds.clear();
         for (org.openpnp.model.Package pkg : compatiblePackages) {
             compatiblePackageIds.add(pkg.getId());
         }
+        firePropertyChange("compatiblePackages", oldValue, getCompatiblePackages());
     }
 
     @Override
@@ -200,7 +202,9 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
     }
 
     public void setAllowIncompatiblePackages(boolean allowIncompatiblePackages) {
+        Object oldValue = this.allowIncompatiblePackages;
         this.allowIncompatiblePackages = allowIncompatiblePackages;
+        firePropertyChange("allowIncompatiblePackages", oldValue, allowIncompatiblePackages);
     }
     
     public int getPickDwellMilliseconds() {
@@ -0,0 +1,95 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Job;
+import org.openpnp.spi.FiducialLocator;
+import org.openpnp.spi.Signaler;
+import org.openpnp.spi.base.AbstractJobProcessor;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Runs a paste dispense job on a DryRun of the machine, to estimate how long it would take, as
+ * ReferencePnpJobDryRun does for pick and place jobs. Each fiducial capture takes the camera's
+ * settle time and visionSeconds. The machine must be disabled. Nothing is moved or dispensed.
+ */
+public class ReferencePasteDispenseJobDryRun extends ReferencePasteDispenseJobProcessor {
+    private double visionSeconds = 0.2;
+
+    private DryRun dryRun;
+
+    private JobEstimate estimate;
+
+    /**
+     * Runs the job and returns the estimate.
+     *
+     * @throws Exception If the machine is enabled, or the job would fail on the machine.
+     */
+    @Override
+    public synchronized JobEstimate estimate(Job job) throws Exception {
+        estimate = new JobEstimate();
+        try (DryRun dryRun = new DryRun(visionSeconds)) {
+            this.dryRun = dryRun;
+            initialize(job);
+            while (next()) {
+            }
+            estimate.setTotalSeconds(dryRun.getSeconds());
+        }
+        finally {
+            this.dryRun = null;
+        }
+        Logger.info("Estimated paste job: {}", estimate);
+        return estimate;
+    }
+
+    @Override
+    protected void doFiducialCheck() throws Exception {
+        List<BoardLocation> boardLocations = new ArrayList<>();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            if (boardLocation.isEnabled() && boardLocation.isCheckFiducials()) {
+                boardLocations.add(boardLocation);
+            }
+        }
+        double startSeconds = dryRun.getSeconds();
+        super.doFiducialCheck();
+        double seconds = dryRun.getSeconds() - startSeconds;
+        for (BoardLocation boardLocation : boardLocations) {
+            estimate.add(boardLocation, null, seconds / boardLocations.size());
+        }
+    }
+
+    /**
+     * Dispenses the job, sharing the time evenly between the dispenses.
+     */
+    @Override
+    protected void doDispense() throws Exception {
+        List<JobDispense> dispenses = new ArrayList<>(jobDispenses);
+        double startSeconds = dryRun.getSeconds();
+        super.doDispense();
+        double seconds = dryRun.getSeconds() - startSeconds;
+        for (JobDispense jobDispense : dispenses) {
+            estimate.add(jobDispense.boardLocation, null, seconds / dispenses.size());
+            estimate.done(null);
+        }
+    }
+
+    @Override
+    protected FiducialLocator getFiducialLocator() {
+        return dryRun.getFiducialLocator();
+    }
+
+    @Override
+    protected void fireJobState(List<Signaler> signalers, AbstractJobProcessor.State state) {
+        // A dry run is not the machine running a job.
+    }
+
+    public double getVisionSeconds() {
+        return visionSeconds;
+    }
+
+    public void setVisionSeconds(double visionSeconds) {
+        this.visionSeconds = visionSeconds;
+    }
+}
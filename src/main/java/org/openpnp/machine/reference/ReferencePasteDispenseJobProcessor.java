@@ -251,7 +251,15 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
         // Everything looks good, so prepare the machine.
 
         fireTextStatus("Preparing machine.");
+        prepareMachine();
+    }
 
+    /**
+     * Safe-Z the machine.
+     *
+     * @throws Exception
+     */
+    protected void prepareMachine() throws Exception {
         // Safe Z the machine
         head.moveToSafeZ();
     }
@@ -259,7 +267,7 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
     protected void doFiducialCheck() throws Exception {
         fireTextStatus("Performing fiducial checks.");
 
-        FiducialLocator locator = Configuration.get().getMachine().getFiducialLocator();
+        FiducialLocator locator = getFiducialLocator();
         for (BoardLocation boardLocation : job.getBoardLocations()) {
             if (!boardLocation.isEnabled()) {
                 continue;
@@ -273,6 +281,10 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
         }
     }
 
+    protected FiducialLocator getFiducialLocator() {
+        return machine.getFiducialLocator();
+    }
+
     protected void doDispense() throws Exception {
         for(JobDispense jobDispense : jobDispenses) {
             /* if (jobDispense.stepComplete) {
@@ -317,6 +329,19 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
 
     }
 
+    /**
+     * Estimates how long the job would take on the machine, by running it through a
+     * ReferencePasteDispenseJobDryRun. The machine must be disabled. Nothing on the machine or in
+     * the job is changed.
+     *
+     * @param job
+     * @return
+     * @throws Exception If the machine is enabled, or the job would fail on the machine.
+     */
+    public JobEstimate estimate(Job job) throws Exception {
+        return new ReferencePasteDispenseJobDryRun().estimate(job);
+    }
+
     protected void doReset() throws Exception {
         this.job = null;
     }
@@ -12,6 +12,7 @@ import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.AbstractPasteDispenser;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Element;
 
@@ -26,14 +27,12 @@ public class ReferencePasteDispenser extends AbstractPasteDispenser
     protected Length safeZ = new Length(0, LengthUnit.Millimeters);
 
     protected ReferenceMachine machine;
-    protected ReferenceDriver driver;
 
     public ReferencePasteDispenser() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
             public void configurationLoaded(Configuration configuration) throws Exception {
                 machine = (ReferenceMachine) configuration.getMachine();
-                driver = machine.getDriver();
             }
         });
     }
@@ -52,31 +51,42 @@ public class ReferencePasteDispenser extends AbstractPasteDispenser
     public void dispense(Location startLocation, Location endLocation,
             long dispenseTimeMilliseconds) throws Exception {
         Logger.debug("{}.dispense()", getName());
-        Thread.sleep(dispenseTimeMilliseconds);
-        driver.dispense(this, startLocation, endLocation, dispenseTimeMilliseconds);
+        SimulationClock.sleep(dispenseTimeMilliseconds);
+        getDriver().dispense(this, startLocation, endLocation, dispenseTimeMilliseconds);
         machine.fireMachineHeadActivity(head);
     }
 
     @Override
     public void moveTo(Location location, double speed) throws Exception {
         Logger.debug("{}.moveTo({}, {})", getName(), location, speed);
-        driver.moveTo(this, location, speed);
+        getDriver().moveTo(this, location, speed);
         machine.fireMachineHeadActivity(head);
     }
 
     @Override
     public void moveToSafeZ(double speed) throws Exception {
         Logger.debug("{}.moveToSafeZ({})", getName(), speed);
+        MotionSegment segment = getMoveToSafeZSegment(speed);
+        getDriver().moveTo(this, segment.getLocation(), segment.getSpeed());
+        machine.fireMachineHeadActivity(head);
+    }
+
+    @Override
+    public MotionSegment getMoveToSegment(Location location, double speed) {
+        return new MotionSegment(this, location, speed);
+    }
+
+    @Override
+    public MotionSegment getMoveToSafeZSegment(double speed) {
         Length safeZ = this.safeZ.convertToUnits(getLocation().getUnits());
         Location l = new Location(getLocation().getUnits(), Double.NaN, Double.NaN,
                 safeZ.getValue(), Double.NaN);
-        driver.moveTo(this, l, speed);
-        machine.fireMachineHeadActivity(head);
+        return new MotionSegment(this, l, speed);
     }
 
     @Override
     public Location getLocation() {
-        return driver.getLocation(this);
+        return getDriver().getLocation(this);
     }
 
     @Override
@@ -126,4 +136,8 @@ public class ReferencePasteDispenser extends AbstractPasteDispenser
     public void moveToSafeZ() throws Exception {
         moveToSafeZ(getHead().getMachine().getSpeed());
     }
+
+    ReferenceDriver getDriver() {
+        return machine.getDriver();
+    }
 }
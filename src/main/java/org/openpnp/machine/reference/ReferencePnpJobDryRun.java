@@ -0,0 +1,260 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Job;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.FiducialLocator;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PartAlignment;
+import org.openpnp.spi.Signaler;
+import org.openpnp.spi.base.AbstractJobProcessor;
+import org.openpnp.util.SimulationClock;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Runs a pick and place job on a DryRun of the machine, to estimate how long it would take. It is
+ * the ReferencePnpJobProcessor it is made from, with the same settings, going through the same
+ * steps, so the estimate includes everything the job does, such as dynamic Safe Z and aligning
+ * while the next nozzle moves. Only the steps that need the real machine are stood in for:
+ *
+ * Feeds take the mean time the processor measured for the feeder in its last job, or feedSeconds
+ * if it hasn't used the feeder. Each vision capture takes visionSeconds to process and each nozzle
+ * tip change nozzleTipChangeSeconds. Feeders don't prepare their next feeds and scripts are not
+ * run.
+ *
+ * The machine must be disabled. Nothing is moved, fed, picked or placed, and the job's placed
+ * flags and fiducial overrides are left as they were.
+ */
+public class ReferencePnpJobDryRun extends ReferencePnpJobProcessor {
+    private final JobTelemetry measured;
+
+    private double feedSeconds = 0.5;
+
+    private double visionSeconds = 0.2;
+
+    private double nozzleTipChangeSeconds = 10;
+
+    private DryRun dryRun;
+
+    private JobEstimate estimate;
+
+    private double individualFiducialCheckSeconds;
+
+    public ReferencePnpJobDryRun(ReferencePnpJobProcessor processor) {
+        parkWhenComplete = processor.parkWhenComplete;
+        optimizeTravel = processor.optimizeTravel;
+        feederSelection = processor.feederSelection;
+        planner = processor.planner;
+        measured = processor.getTelemetry();
+    }
+
+    /**
+     * Runs the job and returns the estimate.
+     *
+     * @throws Exception If the machine is enabled, or the job would fail on the machine.
+     */
+    @Override
+    public synchronized JobEstimate estimate(Job job) throws Exception {
+        Map<BoardLocation, List<String>> unplaced = new HashMap<>();
+        Map<BoardLocation, Location> fiducialOverrides = new HashMap<>();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            List<String> placementIds = new ArrayList<>();
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                if (!boardLocation.getPlaced(placement.getId())) {
+                    placementIds.add(placement.getId());
+                }
+            }
+            unplaced.put(boardLocation, placementIds);
+            fiducialOverrides.put(boardLocation, boardLocation.getLocationFiducialOverrides());
+        }
+        estimate = new JobEstimate();
+        try (DryRun dryRun = new DryRun(visionSeconds)) {
+            this.dryRun = dryRun;
+            try {
+                initialize(job);
+                while (next()) {
+                }
+                estimate.setTotalSeconds(dryRun.getSeconds());
+            }
+            finally {
+                getFeederSelector().dispose();
+                if (compatibility != null) {
+                    compatibility.dispose();
+                }
+            }
+        }
+        finally {
+            this.dryRun = null;
+            for (BoardLocation boardLocation : job.getBoardLocations()) {
+                for (String placementId : unplaced.get(boardLocation)) {
+                    if (boardLocation.getPlaced(placementId)) {
+                        boardLocation.setPlaced(placementId, false);
+                    }
+                }
+                boardLocation.setLocationFiducialOverrides(fiducialOverrides.get(boardLocation));
+            }
+        }
+        Logger.info("Estimated job: {}", estimate);
+        return estimate;
+    }
+
+    @Override
+    protected void doFiducialCheck() throws Exception {
+        List<BoardLocation> boardLocations = new ArrayList<>();
+        if (job.isUsingPanel() && job.getPanels().get(0).isCheckFiducials()) {
+            boardLocations.add(job.getBoardLocations().get(0));
+        }
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            if (boardLocation.isEnabled() && boardLocation.isCheckFiducials()) {
+                boardLocations.add(boardLocation);
+            }
+        }
+        double startSeconds = dryRun.getSeconds();
+        super.doFiducialCheck();
+        double seconds = dryRun.getSeconds() - startSeconds;
+        for (BoardLocation boardLocation : boardLocations) {
+            estimate.add(boardLocation, null, seconds / boardLocations.size());
+        }
+    }
+
+    @Override
+    protected void doIndividualFiducialCheck(BoardLocation boardLocation) throws Exception {
+        double startSeconds = dryRun.getSeconds();
+        super.doIndividualFiducialCheck(boardLocation);
+        double seconds = dryRun.getSeconds() - startSeconds;
+        estimate.add(boardLocation, null, seconds);
+        individualFiducialCheckSeconds += seconds;
+    }
+
+    @Override
+    protected void doChangeNozzleTip() throws Exception {
+        List<PlannedPlacement> cycle = new ArrayList<>(plannedPlacements);
+        double startSeconds = dryRun.getSeconds();
+        super.doChangeNozzleTip();
+        addToCycle(cycle, dryRun.getSeconds() - startSeconds);
+    }
+
+    @Override
+    protected void doFeedAndPick() throws Exception {
+        List<PlannedPlacement> cycle = new ArrayList<>(plannedPlacements);
+        double startSeconds = dryRun.getSeconds();
+        super.doFeedAndPick();
+        addToCycle(cycle, dryRun.getSeconds() - startSeconds);
+    }
+
+    @Override
+    protected void doAlign() throws Exception {
+        List<PlannedPlacement> cycle = new ArrayList<>(plannedPlacements);
+        double startSeconds = dryRun.getSeconds();
+        super.doAlign();
+        addToCycle(cycle, dryRun.getSeconds() - startSeconds);
+    }
+
+    /**
+     * Places the cycle's parts. The time of the individual fiducial checks goes to their boards,
+     * see doIndividualFiducialCheck().
+     */
+    @Override
+    protected void doPlace() throws Exception {
+        List<PlannedPlacement> cycle = new ArrayList<>(plannedPlacements);
+        double startSeconds = dryRun.getSeconds() - individualFiducialCheckSeconds;
+        super.doPlace();
+        addToCycle(cycle,
+                dryRun.getSeconds() - individualFiducialCheckSeconds - startSeconds);
+        for (PlannedPlacement plannedPlacement : cycle) {
+            estimate.done(plannedPlacement.jobPlacement.placement.getPart());
+        }
+    }
+
+    /**
+     * Shares the seconds a step took for the cycle evenly between its placements.
+     */
+    private void addToCycle(List<PlannedPlacement> cycle, double seconds) {
+        for (PlannedPlacement plannedPlacement : cycle) {
+            JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+            estimate.add(jobPlacement.boardLocation, jobPlacement.placement.getPart(),
+                    seconds / cycle.size());
+        }
+    }
+
+    @Override
+    protected void prepareNextFeeds() {
+        // Preparing only takes time on the machine when it can't overlap with the feed.
+    }
+
+    @Override
+    protected void feed(Feeder feeder, Nozzle nozzle) throws Exception {
+        JobTelemetry.Histogram feeds = measured.getFeederHistograms().get(feeder.getName());
+        if (feeds != null && feeds.getCount() > 0) {
+            SimulationClock.sleep(Math.round(feeds.getMeanMillis()));
+        }
+        else {
+            SimulationClock.sleep(Math.round(feedSeconds * 1000));
+        }
+    }
+
+    @Override
+    protected void changeNozzleTip(Nozzle nozzle, NozzleTip nozzleTip) throws Exception {
+        dryRun.setNozzleTip(nozzle, nozzleTip);
+        SimulationClock.sleep(Math.round(nozzleTipChangeSeconds * 1000));
+    }
+
+    @Override
+    protected FiducialLocator getFiducialLocator() {
+        return dryRun.getFiducialLocator();
+    }
+
+    @Override
+    protected PartAlignment getPartAlignment(Part part) throws Exception {
+        return dryRun.getPartAlignment(super.getPartAlignment(part));
+    }
+
+    @Override
+    protected void saveJob() throws Exception {
+        // The job is put back as it was, so there is nothing to save.
+    }
+
+    @Override
+    protected void onScriptEvent(String event, Map<String, Object> params) throws Exception {
+        // A dry run is not the machine running a job.
+    }
+
+    @Override
+    protected void fireJobState(List<Signaler> signalers,
+            AbstractJobProcessor.State state) {
+        // A dry run is not the machine running a job.
+    }
+
+    public double getFeedSeconds() {
+        return feedSeconds;
+    }
+
+    public void setFeedSeconds(double feedSeconds) {
+        this.feedSeconds = feedSeconds;
+    }
+
+    public double getVisionSeconds() {
+        return visionSeconds;
+    }
+
+    public void setVisionSeconds(double visionSeconds) {
+        this.visionSeconds = visionSeconds;
+    }
+
+    public double getNozzleTipChangeSeconds() {
+        return nozzleTipChangeSeconds;
+    }
+
+    public void setNozzleTipChangeSeconds(double nozzleTipChangeSeconds) {
+        this.nozzleTipChangeSeconds = nozzleTipChangeSeconds;
+    }
+}
@@ -21,15 +21,19 @@ package org.openpnp.machine.reference;
 
 import java.io.File;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.wizards.ReferencePnpJobProcessorConfigurationWizard;
@@ -51,13 +55,15 @@ import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
 import org.openpnp.spi.base.AbstractPnpJobProcessor;
-import org.openpnp.util.Collect;
 import org.openpnp.util.FiniteStateMachine;
 import org.openpnp.util.MovableUtils;
+import org.openpnp.util.SimulationClock;
+import org.openpnp.util.PlacementSequencer;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 
 @Root
@@ -90,7 +96,16 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         public final JobPlacement jobPlacement;
         public final Nozzle nozzle;
         public Feeder feeder;
+        /**
+         * The NozzleTip to load if the nozzle's current one can't handle the part, or null to
+         * load the first one that can.
+         */
+        public NozzleTip nozzleTip;
         public PartAlignment.PartAlignmentOffset alignmentOffsets;
+        /**
+         * The alignment that has been started but whose offsets have not been collected yet.
+         */
+        public Future<PartAlignment.PartAlignmentOffset> pendingAlignmentOffsets;
         public boolean fed;
         public boolean stepComplete;
 
@@ -105,11 +120,45 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }
     }
 
+    /**
+     * Decides which placements the nozzles perform in each cycle of the job.
+     */
+    public interface PnpJobPlanner {
+        /**
+         * Returns the placements for the next cycle, in nozzle order, with at most one per
+         * nozzle. Nozzles that have nothing to do in the cycle are left out.
+         * 
+         * @param head
+         * @param pendingJobPlacements The pending placements. The planner must not change their
+         *        statuses.
+         * @param compatibility Which of the head's nozzles and tips can handle which parts.
+         * @return
+         */
+        List<PlannedPlacement> plan(Head head, PendingJobPlacements pendingJobPlacements,
+                NozzleTipCompatibility compatibility);
+    }
+
 
 
     @Attribute(required = false)
     protected boolean parkWhenComplete = false;
 
+    @Attribute(required = false)
+    protected boolean optimizeTravel = false;
+
+    @Attribute(required = false)
+    protected FeederSelector.Strategy feederSelection = FeederSelector.Strategy.First;
+
+    /**
+     * Write the job's step timings to the telemetry directory of the configuration when it
+     * finishes.
+     */
+    @Attribute(required = false)
+    protected boolean exportTelemetry = false;
+
+    @Element(required = false)
+    protected PnpJobPlanner planner = new AssignmentPnpJobPlanner();
+
     private FiniteStateMachine<State, Message> fsm = new FiniteStateMachine<>(State.Uninitialized);
 
     protected Job job;
@@ -120,11 +169,22 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
     protected List<JobPlacement> jobPlacements = new ArrayList<>();
 
+    protected PendingJobPlacements pendingJobPlacements;
+
     protected List<PlannedPlacement> plannedPlacements = new ArrayList<>();
 
+    private FeederSelector feederSelector;
+
+    protected NozzleTipCompatibility compatibility;
+
+    protected final JobTelemetry telemetry = new JobTelemetry();
+
     long startTime;
+    SimulationClock.Stopwatch stopwatch;
     int totalPartsPlaced;
 
+    private static volatile Job runningJob;
+
     public ReferencePnpJobProcessor() {
         fsm.add(State.Uninitialized, Message.Initialize, State.PreFlight, this::doInitialize);
 
@@ -181,12 +241,16 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
     public synchronized boolean next() throws Exception {
 
+        setRunningJob(job);
         try{
             fsm.send(Message.Next);
         } catch (Exception e) {
             this.fireJobState(this.machine.getSignalers(), AbstractJobProcessor.State.ERROR);
             throw(e);
         }
+        finally {
+            setRunningJob(null);
+        }
 
 
         if (fsm.getState() == State.Stopped) {
@@ -267,18 +331,25 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
      * Populate the jobPlacements list with all the placements that we'll perform for the entire
      * job.
      * 
-     * Safe-Z the machine, discard any currently picked parts.
+     * Then prepare the machine, see prepareMachine().
      * 
      * @throws Exception
      */
     protected void doPreFlight() throws Exception {
         startTime = System.currentTimeMillis();
+        stopwatch = new SimulationClock.Stopwatch();
         totalPartsPlaced = 0;
+        telemetry.start();
         
         // Create some shortcuts for things that won't change during the run
         this.machine = Configuration.get().getMachine();
         this.head = this.machine.getDefaultHead();
         this.jobPlacements.clear();
+        this.pendingJobPlacements = null;
+        if (compatibility != null) {
+            compatibility.dispose();
+        }
+        compatibility = new NozzleTipCompatibility(head);
         
 
         fireTextStatus("Checking job for setup errors.");
@@ -335,18 +406,32 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 }
 
                 // Make sure there is at least one compatible nozzle tip available
-                findNozzleTip(head, placement.getPart());
+                compatibility.findNozzleTip(placement.getPart());
 
                 // Make sure there is at least one compatible and enabled feeder available
-                findFeeder(machine, placement.getPart());
+                getFeederSelector().select(placement.getPart(), FeederSelector.Strategy.First,
+                        null);
 
                 jobPlacements.add(jobPlacement);
             }
         }
 
+        if (optimizeTravel) {
+            sequenceJobPlacements();
+        }
+        pendingJobPlacements = new PendingJobPlacements(jobPlacements);
+
         // Everything looks good, so prepare the machine.
         fireTextStatus("Preparing machine.");
+        prepareMachine();
+    }
 
+    /**
+     * Safe-Z the machine, discard any currently picked parts and run the Job.Starting script.
+     * 
+     * @throws Exception
+     */
+    protected void prepareMachine() throws Exception {
         // Safe Z the machine
         head.moveToSafeZ();
         // Discard any currently picked parts
@@ -355,21 +440,152 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         HashMap<String, Object> params = new HashMap<>();
         params.put("job", job);
         params.put("jobProcessor", this);
-        Configuration.get().getScripting().on("Job.Starting", params);
+        onScriptEvent("Job.Starting", params);
+    }
+
+    /**
+     * Orders the job placements to shorten the time spent travelling between the feeders and the
+     * boards, using PlacementSequencer. Parts are still placed lowest first, so only placements of the same part
+     * height are reordered among themselves. The estimated travel before and after is logged.
+     * 
+     * @throws Exception
+     */
+    protected void sequenceJobPlacements() throws Exception {
+        fireTextStatus("Sequencing placements.");
+
+        List<JobPlacement> sorted = jobPlacements.stream()
+                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
+                .collect(Collectors.toList());
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        List<Location> pickLocations = new ArrayList<>();
+        List<Location> placeLocations = new ArrayList<>();
+        HashMap<Feeder, Location> pickLocationsByFeeder = new HashMap<>();
+        try {
+            for (JobPlacement jobPlacement : sorted) {
+                Location placeLocation = Utils2D.calculateFiducialCompensatedBoardPlacementLocation(
+                        jobPlacement.boardLocation, jobPlacement.placement.getLocation());
+                // Where several feeders hold the part, assume the one nearest the board location
+                // is used.
+                Feeder feeder = getFeederSelector().select(jobPlacement.placement.getPart(),
+                        feederSelection, head.getDefaultNozzle(), placeLocation);
+                Location pickLocation = pickLocationsByFeeder.get(feeder);
+                if (pickLocation == null) {
+                    pickLocation = feeder.getPickLocation();
+                    pickLocationsByFeeder.put(feeder, pickLocation);
+                }
+                pickLocations.add(pickLocation);
+                placeLocations.add(placeLocation);
+            }
+        }
+        catch (Exception e) {
+            // Not being able to sequence is no reason to stop the job.
+            Logger.warn(e, "Unable to sequence placements, placing them in job order.");
+            return;
+        }
+
+        // Sequence each run of placements with the same part height, starting each run where the
+        // one before it ended.
+        Location start = head.getDefaultNozzle().getLocation();
+        int[] order = new int[sorted.size()];
+        int first = 0;
+        while (first < sorted.size()) {
+            double height = sorted.get(first).getPartHeight();
+            int last = first + 1;
+            while (last < sorted.size() && sorted.get(last).getPartHeight() == height) {
+                last++;
+            }
+            int[] runOrder = createPlacementSequencer(start, pickLocations.subList(first, last),
+                    placeLocations.subList(first, last)).sequence();
+            for (int i = 0; i < runOrder.length; i++) {
+                order[first + i] = first + runOrder[i];
+            }
+            start = placeLocations.get(order[last - 1]);
+            first = last;
+        }
+
+        PlacementSequencer sequencer = createPlacementSequencer(
+                head.getDefaultNozzle().getLocation(), pickLocations, placeLocations);
+        int[] jobOrder = new int[order.length];
+        for (int i = 0; i < jobOrder.length; i++) {
+            jobOrder[i] = i;
+        }
+        String format = head instanceof ReferenceHead ? "%.1f s" : "%.0f mm";
+        double jobOrderTravel = sequencer.getTravel(jobOrder);
+        double travel = sequencer.getTravel(order);
+        if (travel >= jobOrderTravel) {
+            // Each run is sequenced on its own, so together they can travel further.
+            Logger.info("Sequencing {} placements doesn't shorten the estimated travel of {}, "
+                    + "placing them in job order.", order.length,
+                    String.format(format, jobOrderTravel));
+            order = jobOrder;
+        }
+        else {
+            Logger.info("Sequenced {} placements, estimated travel {} before, {} after.",
+                    order.length, String.format(format, jobOrderTravel),
+                    String.format(format, travel));
+        }
+
+        jobPlacements.clear();
+        for (int i : order) {
+            jobPlacements.add(sorted.get(i));
+        }
+    }
+
+    /**
+     * Returns a PlacementSequencer that costs the travel by the time it takes, using the head's
+     * MotionTimeModel, or by distance when the head isn't a ReferenceHead. Only the travel across
+     * is costed, since every order moves up to and down from Safe Z the same number of times.
+     */
+    private PlacementSequencer createPlacementSequencer(Location start,
+            List<Location> pickLocations, List<Location> placeLocations) {
+        if (!(head instanceof ReferenceHead)) {
+            return new PlacementSequencer(start, pickLocations, placeLocations);
+        }
+        ReferenceHead referenceHead = (ReferenceHead) head;
+        double speed = head.getMachine().getSpeed();
+        return new PlacementSequencer(start, pickLocations, placeLocations,
+                (from, to) -> referenceHead.getMoveTime(from.derive(null, null, 0.0, 0.0),
+                        to.derive(null, null, 0.0, 0.0), speed));
+    }
+
+    /**
+     * Has the feeders of the placements the next cycle will most likely plan start preparing their
+     * parts, so that they can advance while this cycle aligns and places. See
+     * Feeder.prepareFeed(). A failure is only logged, since the feed will be tried again in full
+     * when the part is needed.
+     */
+    protected void prepareNextFeeds() {
+        List<JobPlacement> next =
+                pendingJobPlacements.getJobPlacements(head.getNozzles().size());
+        for (int i = 0; i < next.size(); i++) {
+            Part part = next.get(i).placement.getPart();
+            Nozzle nozzle = head.getNozzles().get(i);
+            try {
+                selectFeeder(nozzle, part).prepareFeed(nozzle);
+            }
+            catch (Exception e) {
+                Logger.warn(e, "Unable to prepare feed of {}.", part.getId());
+            }
+        }
     }
 
     protected void doFiducialCheck() throws Exception {
         fireTextStatus("Performing fiducial checks.");
 
-        FiducialLocator locator = Configuration.get().getMachine().getFiducialLocator();
+        FiducialLocator locator = getFiducialLocator();
         
         if (job.isUsingPanel() && job.getPanels().get(0).isCheckFiducials()){
         	Panel p = job.getPanels().get(0);
         	
         	BoardLocation boardLocation = job.getBoardLocations().get(0);
         	
+        	long checkStartTime = System.nanoTime();
         	Location location = locator.locateBoard(boardLocation, p.isCheckFiducials());
         	boardLocation.setLocationFiducialOverrides(location);
+        	telemetry.record(JobTelemetry.Step.FiducialCheck, checkStartTime);
         	Logger.debug("Panel Fiducial check for {}", boardLocation);
         }
         
@@ -380,8 +596,10 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             if (!boardLocation.isCheckFiducials()) {
                 continue;
             }
+            long checkStartTime = System.nanoTime();
             Location location = locator.locateBoard(boardLocation);
             boardLocation.setLocationFiducialOverrides(location);
+            telemetry.record(JobTelemetry.Step.FiducialCheck, checkStartTime);
             Logger.debug("Fiducial check for {}", boardLocation);
         }
     }
@@ -389,100 +607,32 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     protected void doIndividualFiducialCheck(BoardLocation boardLocation) throws Exception {
         fireTextStatus("Performing individual fiducial check.");
 
-        FiducialLocator locator = Configuration.get().getMachine().getFiducialLocator();
+        FiducialLocator locator = getFiducialLocator();
         
+        long checkStartTime = System.nanoTime();
         Location location = locator.locateBoard(boardLocation);
         boardLocation.setLocationFiducialOverrides(location);
+        telemetry.record(JobTelemetry.Step.FiducialCheck, checkStartTime);
         Logger.debug("Fiducial check for {}", boardLocation);
     }
 
     /**
-     * Description of the planner:
-     * 
-     * 1. Create a List<List<JobPlacement>> where each List<JobPlacement> is a List of JobPlacements
-     * that the corresponding (in order) Nozzle can handle in Nozzle order.
-     * 
-     * In addition, each List<JobPlacement> contains one instance of null which represents a
-     * solution where that Nozzle does not perform a placement.
-     * 
-     * 2. Create the Cartesian product of all of the List<JobPlacement>. The resulting List<List
-     * <JobPlacement>> represents possible solutions for a single cycle with each JobPlacement
-     * corresponding to a Nozzle.
-     * 
-     * 3. Filter out any solutions where the same JobPlacement is represented more than once. We
-     * don't want more than one Nozzle trying to place the same Placement.
-     * 
-     * 4. Sort the solutions by fewest nulls followed by fewest nozzle changes. The result is that
-     * we prefer solutions that use more nozzles in a cycle and require fewer nozzle changes.
-     * 
-     * Note: TODO: Originally planned to have this sort by part height but that went out the window
-     * during development. Need to think about how to best combine the height requirement with the
-     * want to fill all nozzles and perform minimal nozzle changes. Based on IRC discussion, the
-     * part height thing might be a red herring - most machines will have enough Z to place all
-     * parts regardless of height order.
+     * Plans the next cycle: has the planner decide which of the pending placements each nozzle
+     * performs.
      */
     protected void doPlan() throws Exception {
         plannedPlacements.clear();
 
         fireTextStatus("Planning placements.");
 
-        // Get the list of unfinished placements and sort them by part height.
-        List<JobPlacement> jobPlacements = getPendingJobPlacements().stream()
-                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
-                .collect(Collectors.toList());
-
-        if (jobPlacements.isEmpty()) {
+        if (pendingJobPlacements == null || pendingJobPlacements.isEmpty()) {
             return;
         }
 
-        // Create a List of Lists of JobPlacements that each Nozzle can handle, including
-        // one instance of null per Nozzle. The null indicates a possible "no solution"
-        // for that Nozzle.
-        List<List<JobPlacement>> solutions = head.getNozzles().stream().map(nozzle -> {
-            return Stream.concat(jobPlacements.stream().filter(jobPlacement -> {
-                return nozzleCanHandle(nozzle, jobPlacement.placement.getPart());
-            }), Stream.of((JobPlacement) null)).collect(Collectors.toList());
-        }).collect(Collectors.toList());
-
-        // Get the cartesian product of those Lists
-        List<JobPlacement> result = Collect.cartesianProduct(solutions).stream()
-                // Filter out any results that contains the same JobPlacement more than once
-                .filter(list -> {
-                    // Note: A previous version of this code just dumped everything into a
-                    // set and compared the size. This worked for two nozzles since there would
-                    // never be more than two nulls, but for > 2 nozzles there will always be a
-                    // solution that has > 2 nulls, which means the size will never match.
-                    // This version of the code ignores the nulls (since they are valid
-                    // solutions) and instead only checks for duplicate valid JobPlacements.
-                    // There is probably a more clever way to do this, but it isn't coming
-                    // to me at the moment.
-                    HashSet<JobPlacement> set = new HashSet<>();
-                    for (JobPlacement jp : list) {
-                        if (jp == null) {
-                            continue;
-                        }
-                        if (set.contains(jp)) {
-                            return false;
-                        }
-                        set.add(jp);
-                    }
-                    return true;
-                })
-                // Sort by the solutions that contain the fewest nulls followed by the
-                // solutions that require the fewest nozzle changes.
-                .sorted(byFewestNulls.thenComparing(byFewestNozzleChanges))
-                // And return the top result.
-                .findFirst().orElse(null);
-
-        // Now we have a solution, so apply it to the nozzles and plan the placements.
-        for (Nozzle nozzle : head.getNozzles()) {
-            // The solution is in Nozzle order, so grab the next one.
-            JobPlacement jobPlacement = result.remove(0);
-            if (jobPlacement == null) {
-                continue;
-            }
-            jobPlacement.status = Status.Processing;
-            plannedPlacements.add(new PlannedPlacement(nozzle, jobPlacement));
+        for (PlannedPlacement plannedPlacement : planner.plan(head, pendingJobPlacements,
+                compatibility)) {
+            pendingJobPlacements.setStatus(plannedPlacement.jobPlacement, Status.Processing);
+            plannedPlacements.add(plannedPlacement);
         }
 
         Logger.debug("Planned placements {}", plannedPlacements);
@@ -500,23 +650,28 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Part part = placement.getPart();
 
             // If the currently loaded NozzleTip can handle the Part we're good.
-            if (nozzle.getNozzleTip() != null && nozzle.getNozzleTip().canHandle(part)) {
+            if (nozzle.getNozzleTip() != null
+                    && compatibility.canHandle(nozzle.getNozzleTip(), part)) {
                 Logger.debug("No nozzle change needed for nozzle {}", nozzle);
                 plannedPlacement.stepComplete = true;
                 continue;
             }
 
             fireTextStatus("Changing nozzle tip on nozzle %s.", nozzle.getId());
+            long changeStartTime = System.nanoTime();
 
-            // Otherwise find a compatible tip and load it
-            NozzleTip nozzleTip = findNozzleTip(nozzle, part);
+            // Otherwise load the tip the planner chose, or find a compatible one
+            NozzleTip nozzleTip = plannedPlacement.nozzleTip;
+            if (nozzleTip == null) {
+                nozzleTip = compatibility.findNozzleTip(nozzle, part);
+            }
             fireTextStatus("Change NozzleTip on Nozzle %s to %s.", 
                     nozzle.getId(), 
                     nozzleTip.getName());   
             Logger.debug("Change NozzleTip on Nozzle {} from {} to {}",
                     new Object[] {nozzle, nozzle.getNozzleTip(), nozzleTip});
-            nozzle.unloadNozzleTip();
-            nozzle.loadNozzleTip(nozzleTip);
+            changeNozzleTip(nozzle, nozzleTip);
+            telemetry.record(JobTelemetry.Step.ChangeNozzleTip, part, changeStartTime);
 
             // Mark this step as complete
             plannedPlacement.stepComplete = true;
@@ -561,7 +716,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     // Find a compatible, enabled feeder
                     Feeder feeder;
                     try {
-                        feeder = findFeeder(machine, part);
+                        feeder = selectFeeder(nozzle, part);
                     }
                     catch (Exception e) {
                         if (lastError != null) {
@@ -578,6 +733,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     plannedPlacement.feeder = feeder;
 
                     // Feed the part
+                    long feedStartTime = System.nanoTime();
                     try {
                         // Try to feed the part. If it fails, retry the specified number of times
                         // before
@@ -588,11 +744,13 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                             Logger.debug("Attempt Feed {} from {} with {}.",
                                     new Object[] {part, feeder, nozzle});
 
-                            feeder.feed(nozzle);
+                            feed(feeder, nozzle);
+                            getFeederSelector().fed(feeder);
 
                             Logger.debug("Fed {} from {} with {}.",
                                     new Object[] {part, feeder, nozzle});
                         });
+                        telemetry.recordFeed(feeder, part, feedStartTime);
 
                         break;
                     }
@@ -600,7 +758,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                         Logger.debug("Feed {} from {} with {} failed!",
                                 new Object[] {part, feeder, nozzle});
                         // If the feed fails, disable the feeder and continue. If there are no
-                        // more valid feeders the findFeeder() call above will throw and exit the
+                        // more valid feeders the selectFeeder() call above will throw and exit the
                         // loop.
                         feeder.setEnabled(false);
                         lastErrorFeeder = feeder;
@@ -612,6 +770,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
             // Get the feeder that was used to feed
             Feeder feeder = plannedPlacement.feeder;
+            long pickStartTime = System.nanoTime();
 
             // Move to the pick location
             MovableUtils.moveToLocationAtSafeZ(nozzle, feeder.getPickLocation());
@@ -625,13 +784,14 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             nozzle.pick(part);
 
             // Retract
-            nozzle.moveToSafeZ();
+            retract(nozzle);
 
             Logger.debug("Pick {} from {} with {}", part, feeder, nozzle);
 
             if (feeder != null) {
                 feeder.postPick(nozzle);
             }
+            telemetry.record(JobTelemetry.Step.Pick, part, pickStartTime);
 
             plannedPlacement.stepComplete = true;
         }
@@ -639,41 +799,112 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         clearStepComplete();
     }
 
+    /**
+     * Aligns the parts on the nozzles. Each alignment is started as soon as the one before it no
+     * longer needs its nozzle, so the next nozzle moves into place while the previous part's image
+     * is processed. Consecutive placements that use the same PartAlignment are started together,
+     * so that it can align them together if it is able to. The offsets are then collected in
+     * nozzle order, so that an error is reported against the first placement that failed, as it
+     * would be when aligning one at a time.
+     */
     protected void doAlign() throws Exception {
+        prepareNextFeeds();
+        // Taken after the feeds are prepared so that feeder actuation isn't timed as alignment.
+        long alignStartTime = System.nanoTime();
+
+        List<PlannedPlacement> batch = new ArrayList<>();
+        PartAlignment batchPartAlignment = null;
+        boolean started = true;
         for (PlannedPlacement plannedPlacement : plannedPlacements) {
-            if (plannedPlacement.stepComplete) {
+            if (plannedPlacement.stepComplete || plannedPlacement.pendingAlignmentOffsets != null) {
                 continue;
             }
-            Nozzle nozzle = plannedPlacement.nozzle;
-            JobPlacement jobPlacement = plannedPlacement.jobPlacement;
-            Placement placement = jobPlacement.placement;
-            BoardLocation boardLocation = jobPlacement.boardLocation;
-            Part part = placement.getPart();
-            fireTextStatus("Aligning %s for %s.", part.getId(), placement.getId());
-
-            PartAlignment partAlignment = findPartAligner(machine, part);
+            Part part = plannedPlacement.jobPlacement.placement.getPart();
+            PartAlignment partAlignment = getPartAlignment(part);
+            if (partAlignment == null) {
+                Logger.debug("Not aligning {} as no compatible enabled aligners defined",part);
+                plannedPlacement.pendingAlignmentOffsets = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            if (partAlignment != batchPartAlignment) {
+                started = startAlign(batchPartAlignment, batch);
+                if (!started) {
+                    break;
+                }
+                batch.clear();
+                batchPartAlignment = partAlignment;
+            }
+            batch.add(plannedPlacement);
+        }
+        if (started) {
+            startAlign(batchPartAlignment, batch);
+        }
 
-            if(partAlignment!=null) {
-                plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
-                        partAlignment,
-                        part,
-                        boardLocation,
-                        placement.getLocation(), nozzle);
-                Logger.debug("Align {} with {}", part, nozzle);
-                Logger.debug("Offsets {}", plannedPlacement.alignmentOffsets);
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            if (plannedPlacement.stepComplete) {
+                continue;
             }
-            else
-            {
-                plannedPlacement.alignmentOffsets=null;
-                Logger.debug("Not aligning {} as no compatible enabled aligners defined",part);
+            Future<PartAlignment.PartAlignmentOffset> pendingAlignmentOffsets =
+                    plannedPlacement.pendingAlignmentOffsets;
+            if (pendingAlignmentOffsets == null) {
+                // Only happens after an earlier placement failed to start, which throws first.
+                throw new Exception(String.format("Alignment of %s was not started.",
+                        plannedPlacement.jobPlacement.placement.getId()));
+            }
+            plannedPlacement.pendingAlignmentOffsets = null;
+            try {
+                plannedPlacement.alignmentOffsets = pendingAlignmentOffsets.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
             }
+            Logger.debug("Offsets {}", plannedPlacement.alignmentOffsets);
+            telemetry.recordPart(JobTelemetry.Step.Align,
+                    plannedPlacement.jobPlacement.placement.getPart(), alignStartTime);
 
             plannedPlacement.stepComplete = true;
         }
+        telemetry.record(JobTelemetry.Step.Align, alignStartTime);
 
         clearStepComplete();
     }
 
+    /**
+     * Starts aligning the parts of the PlannedPlacements with the PartAlignment, returning once
+     * their nozzles are free.
+     * 
+     * @return false if starting one of them failed, in which case those after it are not started.
+     */
+    protected boolean startAlign(PartAlignment partAlignment, List<PlannedPlacement> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        List<PartAlignment.PartAlignmentRequest> requests = new ArrayList<>();
+        for (PlannedPlacement plannedPlacement : batch) {
+            JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+            Placement placement = jobPlacement.placement;
+            Part part = placement.getPart();
+            fireTextStatus("Aligning %s for %s.", part.getId(), placement.getId());
+            Logger.debug("Align {} with {}", part, plannedPlacement.nozzle);
+            requests.add(new PartAlignment.PartAlignmentRequest(part, jobPlacement.boardLocation,
+                    placement.getLocation(), plannedPlacement.nozzle));
+        }
+        List<Future<PartAlignment.PartAlignmentOffset>> futures =
+                VisionUtils.findPartAlignmentOffsetsAsync(partAlignment, requests);
+        for (int i = 0; i < futures.size(); i++) {
+            batch.get(i).pendingAlignmentOffsets = futures.get(i);
+        }
+        if (futures.size() < batch.size()) {
+            return false;
+        }
+        Future<?> last = futures.get(futures.size() - 1);
+        return !(last instanceof CompletableFuture
+                && ((CompletableFuture<?>) last).isCompletedExceptionally());
+    }
+
     protected void doPlace() throws Exception {
         for (PlannedPlacement plannedPlacement : plannedPlacements) {
             if (plannedPlacement.stepComplete) {
@@ -689,6 +920,8 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 doIndividualFiducialCheck(jobPlacement.boardLocation);
             }
 
+            long placeStartTime = System.nanoTime();
+
             // Check if there is a fiducial override for the board location and if so, use it.
             Location placementLocation =
                     Utils2D.calculateFiducialCompensatedBoardPlacementLocation(boardLocation, placement.getLocation());
@@ -748,7 +981,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 	            params.put("boardLocation", boardLocation);
 	            params.put("placementLocation", placementLocation);
 	            params.put("alignmentOffsets", plannedPlacement.alignmentOffsets);
-            Configuration.get().getScripting().on("Job.Placement.BeforeAssembly", params);
+            onScriptEvent("Job.Placement.BeforeAssembly", params);
 	        }
 	        catch (Exception e) {
 	            Logger.warn(e);
@@ -762,11 +995,12 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             // Place the part
             nozzle.place();
 
-            // Retract
-            nozzle.moveToSafeZ();
+            // Retract. The bookkeeping below doesn't need the nozzle to be up, so it's done while
+            // the nozzle moves.
+            retractAsync(nozzle);
 
             // Mark the placement as finished
-            jobPlacement.status = Status.Complete;
+            pendingJobPlacements.setStatus(jobPlacement, Status.Complete);
             
             // Mark the placement as "placed"
             boardLocation.setPlaced(jobPlacement.placement.getId(), true);
@@ -782,7 +1016,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 	            params.put("placement", placement);
 	            params.put("boardLocation", boardLocation);
 	            params.put("placementLocation", placementLocation);
-            Configuration.get().getScripting().on("Job.Placement.Complete", params);
+            onScriptEvent("Job.Placement.Complete", params);
 	        }
 	        catch (Exception e) {
 	            Logger.warn(e);
@@ -790,11 +1024,11 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             
             Logger.debug("Place {} with {}", part, nozzle.getName());
 
-            File file = job.getFile();
-            if (file != null) {
-                Configuration.get().saveJob(job, file);
-            }
-            Configuration.get().save();
+            saveJob();
+
+            nozzle.waitForMotionComplete();
+            telemetry.record(JobTelemetry.Step.Place, part, placeStartTime);
+            telemetry.placed();
         }
 
         clearStepComplete();
@@ -817,17 +1051,65 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             MovableUtils.moveToLocationAtSafeZ(head.getDefaultNozzle(), head.getParkLocation());
         }
         
+        telemetry.finish();
+        for (JobTelemetry.Step step : JobTelemetry.Step.values()) {
+            JobTelemetry.Histogram histogram = telemetry.getHistogram(step);
+            Logger.info("{}: {} in {} sec, {} ms mean, {} ms max", step, histogram.getCount(),
+                    String.format("%.1f", histogram.getTotalSeconds()),
+                    String.format("%.0f", histogram.getMeanMillis()),
+                    String.format("%.0f", histogram.getMaxMillis()));
+        }
+        if (exportTelemetry) {
+            try {
+                File directory =
+                        new File(Configuration.get().getConfigurationDirectory(), "telemetry");
+                String name = (job.getFile() == null ? "job" : job.getFile().getName())
+                        + "_" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date());
+                telemetry.export(directory, name);
+                Logger.info("Job telemetry written to {}", new File(directory, name));
+            }
+            catch (Exception e) {
+                Logger.warn(e, "Unable to write job telemetry.");
+            }
+        }
+
         double dtSec = (System.currentTimeMillis() - startTime)/1000.0;
         DecimalFormat df = new DecimalFormat("###,###.0");
         
         Logger.info("Job finished {} parts in {} sec. This is {} pph", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
+        // If the job ran faster than the machine would, estimate what it would have taken.
+        double estimatedSec = stopwatch.getEstimatedSeconds();
+        if (SimulationClock.isAccelerated()) {
+            Logger.info("Simulated machine time {} sec, estimated real cycle time {} sec. This is {} pph",
+                    df.format(stopwatch.getMachineSeconds()), df.format(estimatedSec),
+                    df.format(totalPartsPlaced / (estimatedSec / 3600.0)));
+        }
         
         HashMap<String, Object> params = new HashMap<>();
         params.put("job", job);
         params.put("jobProcessor", this);
-        Configuration.get().getScripting().on("Job.Finished", params);
+        params.put("telemetry", telemetry);
+        onScriptEvent("Job.Finished", params);
         
-        fireTextStatus("Job finished - placed %s parts in %s sec. (%s CPH)", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
+        if (SimulationClock.isAccelerated()) {
+            fireTextStatus("Job finished - placed %s parts in %s sec, estimated %s sec on the machine. (%s CPH)", totalPartsPlaced, df.format(dtSec), df.format(estimatedSec), df.format(totalPartsPlaced / (estimatedSec / 3600.0)));
+        }
+        else {
+            fireTextStatus("Job finished - placed %s parts in %s sec. (%s CPH)", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
+        }
+    }
+
+    /**
+     * Estimates how long the job would take on the machine, by running it through a
+     * ReferencePnpJobDryRun with this processor's settings. The machine must be disabled. Nothing
+     * on the machine or in the job is changed.
+     * 
+     * @param job
+     * @return
+     * @throws Exception If the machine is enabled, or the job would fail on the machine.
+     */
+    public JobEstimate estimate(Job job) throws Exception {
+        return new ReferencePnpJobDryRun(this).estimate(job);
     }
 
     protected void doReset() throws Exception {
@@ -864,7 +1146,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 Nozzle nozzle = plannedPlacement.nozzle;
                 discard(nozzle);
 
-                jobPlacement.status = Status.Skipped;
+                pendingJobPlacements.setStatus(jobPlacement, Status.Skipped);
                 Logger.debug("Skipped {}", jobPlacement.placement);
 
                 // stop iterating through plannedPlacements, since only one part is handled at a time
@@ -905,14 +1187,115 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }
     }
 
+    /**
+     * Returns the pending placements, sorted by part height.
+     */
     protected List<JobPlacement> getPendingJobPlacements() {
-        return this.jobPlacements.stream().filter((jobPlacement) -> {
-            return jobPlacement.status == Status.Pending;
-        }).collect(Collectors.toList());
+        if (pendingJobPlacements == null) {
+            return new ArrayList<>();
+        }
+        return pendingJobPlacements.getJobPlacements();
+    }
+
+    /**
+     * Returns the FiducialLocator for the fiducial checks. ReferencePnpJobDryRun stands in for
+     * this and the steps below, as they need the real machine.
+     */
+    protected FiducialLocator getFiducialLocator() {
+        return machine.getFiducialLocator();
+    }
+
+    protected void changeNozzleTip(Nozzle nozzle, NozzleTip nozzleTip) throws Exception {
+        nozzle.unloadNozzleTip();
+        nozzle.loadNozzleTip(nozzleTip);
+    }
+
+    protected void feed(Feeder feeder, Nozzle nozzle) throws Exception {
+        feeder.feed(nozzle);
+    }
+
+    protected PartAlignment getPartAlignment(Part part) throws Exception {
+        return findPartAligner(machine, part);
+    }
+
+    /**
+     * Saves the job and the configuration, so that the placed placements and the state of the
+     * feeders are kept if OpenPnP stops.
+     */
+    protected void saveJob() throws Exception {
+        File file = job.getFile();
+        if (file != null) {
+            Configuration.get().saveJob(job, file);
+        }
+        Configuration.get().save();
+    }
+
+    protected void onScriptEvent(String event, Map<String, Object> params) throws Exception {
+        Configuration.get().getScripting().on(event, params);
+    }
+
+    /**
+     * Returns the feeder to feed the part from for the nozzle, chosen by the feederSelection
+     * strategy from the enabled feeders holding the part.
+     * 
+     * @param nozzle
+     * @param part
+     * @return
+     * @throws Exception If there is no enabled feeder holding the part.
+     */
+    protected Feeder selectFeeder(Nozzle nozzle, Part part) throws Exception {
+        return getFeederSelector().select(part, feederSelection, nozzle, nozzle.getLocation());
+    }
+
+    protected FeederSelector getFeederSelector() {
+        Machine machine = Configuration.get().getMachine();
+        if (feederSelector == null || feederSelector.getMachine() != machine) {
+            if (feederSelector != null) {
+                feederSelector.dispose();
+            }
+            feederSelector = new FeederSelector(machine);
+        }
+        return feederSelector;
+    }
+
+    /**
+     * Retracts the nozzle after a pick, only as high as it needs to if it can. See
+     * ReferenceNozzle.retract().
+     */
+    protected void retract(Nozzle nozzle) throws Exception {
+        if (nozzle instanceof ReferenceNozzle) {
+            ((ReferenceNozzle) nozzle).retract(machine.getSpeed());
+        }
+        else {
+            nozzle.moveToSafeZ();
+        }
+    }
+
+    /**
+     * The same as retract() without waiting for the nozzle to get there.
+     */
+    protected CompletableFuture<Void> retractAsync(Nozzle nozzle) {
+        if (nozzle instanceof ReferenceNozzle) {
+            return ((ReferenceNozzle) nozzle).retractAsync(machine.getSpeed());
+        }
+        return nozzle.moveToSafeZAsync(machine.getSpeed());
+    }
+
+    /**
+     * Returns the job a step is being run for by next(), or null if none is. A job that has
+     * stopped, failed or is waiting for next() is not running, since the machine may then be
+     * moved by other means. See DynamicSafeZ.
+     */
+    static Job getRunningJob() {
+        return runningJob;
+    }
+
+    static void setRunningJob(Job job) {
+        runningJob = job;
     }
 
     protected boolean isJobComplete() {
-        return getPendingJobPlacements().isEmpty();
+        return pendingJobPlacements == null || pendingJobPlacements.isEmpty();
     }
     
     @Override
@@ -927,6 +1310,46 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     public void setParkWhenComplete(boolean parkWhenComplete) {
         this.parkWhenComplete = parkWhenComplete;
     }
+
+    public boolean isOptimizeTravel() {
+        return optimizeTravel;
+    }
+
+    public void setOptimizeTravel(boolean optimizeTravel) {
+        this.optimizeTravel = optimizeTravel;
+    }
+
+    public boolean isExportTelemetry() {
+        return exportTelemetry;
+    }
+
+    public void setExportTelemetry(boolean exportTelemetry) {
+        this.exportTelemetry = exportTelemetry;
+    }
+
+    /**
+     * Returns the step timings of the running or last job, including its components per hour so
+     * far.
+     */
+    public JobTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    public FeederSelector.Strategy getFeederSelection() {
+        return feederSelection;
+    }
+
+    public void setFeederSelection(FeederSelector.Strategy feederSelection) {
+        this.feederSelection = feederSelection;
+    }
+
+    public PnpJobPlanner getPlanner() {
+        return planner;
+    }
+
+    public void setPlanner(PnpJobPlanner planner) {
+        this.planner = planner;
+    }
     
     public List<JobPlacement> getJobPlacementsById(String id) { 
         return jobPlacements.stream().filter((jobPlacement) -> {
@@ -939,32 +1362,4 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return jobPlacement.toString() == id && jobPlacement.status == status;
         }).collect(Collectors.toList());
     }
-
-    // Sort a List<JobPlacement> by the number of nulls it contains in ascending order.
-    Comparator<List<JobPlacement>> byFewestNulls = (a, b) -> {
-        return Collections.frequency(a, null) - Collections.frequency(b, null);
-    };
-
-    // Sort a List<JobPlacement> by the number of nozzle changes it will require in
-    // descending order.
-    Comparator<List<JobPlacement>> byFewestNozzleChanges = (a, b) -> {
-        int countA = 0, countB = 0;
-        for (int i = 0; i < head.getNozzles().size(); i++) {
-            Nozzle nozzle = head.getNozzles().get(i);
-            JobPlacement jpA = a.get(i);
-            JobPlacement jpB = b.get(i);
-            if (nozzle.getNozzleTip() == null) {
-                countA++;
-                countB++;
-                continue;
-            }
-            if (jpA != null && !nozzle.getNozzleTip().canHandle(jpA.placement.getPart())) {
-                countA++;
-            }
-            if (jpB != null && !nozzle.getNozzleTip().canHandle(jpB.placement.getPart())) {
-                countB++;
-            }
-        }
-        return countA - countB;
-    };
 }
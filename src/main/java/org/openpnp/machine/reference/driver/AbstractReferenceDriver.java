@@ -33,6 +33,12 @@ public abstract class AbstractReferenceDriver extends AbstractModelObject implem
     @Attribute(required = false, name = "communications")
     protected String communicationsType = "serial";
 
+    /**
+     * Created on first use for the "tcp-nio" communications type. It uses the address and port of
+     * tcp.
+     */
+    private NioTcpCommunications nioTcp;
+
     /**
      * TODO The following properties are for backwards compatibility and can be removed after 2019-07-15. 
      */
@@ -128,6 +134,12 @@ public abstract class AbstractReferenceDriver extends AbstractModelObject implem
             case "tcp": {
                 return tcp;
             }
+            case "tcp-nio": {
+                if (nioTcp == null) {
+                    nioTcp = new NioTcpCommunications(tcp);
+                }
+                return nioTcp;
+            }
             default: {
                 Logger.error("Invalid communications method attempted to be set. Defaulting to serial.");
                 return serial;
@@ -2,12 +2,23 @@ package org.openpnp.machine.reference.driver;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -21,6 +32,7 @@ import javax.swing.JOptionPane;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.Icons;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
+import org.openpnp.machine.reference.MotionSegment;
 import org.openpnp.machine.reference.ReferenceActuator;
 import org.openpnp.machine.reference.ReferenceDriver;
 import org.openpnp.machine.reference.ReferenceHead;
@@ -29,6 +41,7 @@ import org.openpnp.machine.reference.ReferenceMachine;
 import org.openpnp.machine.reference.ReferenceNozzle;
 import org.openpnp.machine.reference.ReferenceNozzleTip;
 import org.openpnp.machine.reference.ReferencePasteDispenser;
+import org.openpnp.machine.reference.driver.GcodeTemplate.Variables;
 import org.openpnp.machine.reference.driver.wizards.GcodeDriverConsole;
 import org.openpnp.machine.reference.driver.wizards.GcodeDriverGcodes;
 import org.openpnp.machine.reference.driver.wizards.GcodeDriverSettings;
@@ -112,13 +125,19 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         @ElementList(required = false, inline = true, entry = "text", data = true)
         public ArrayList<String> commands = new ArrayList<>();
 
+        private GcodeTemplate template;
+
+        private ResponseMatcher matcher;
+
         public Command(String headMountableId, CommandType type, String text) {
             this.headMountableId = headMountableId;
             this.type = type;
             setCommand(text);
         }
 
-        public void setCommand(String text) {
+        public synchronized void setCommand(String text) {
+            this.template = null;
+            this.matcher = null;
             this.commands.clear();
             if (text != null) {
                 text = text.trim();
@@ -132,11 +151,73 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             return Joiner.on('\n').join(commands);
         }
 
+        /**
+         * Returns the command text compiled into a GcodeTemplate. The template is compiled on
+         * first use and kept until the text changes.
+         */
+        public synchronized GcodeTemplate getTemplate() {
+            if (template == null) {
+                template = new GcodeTemplate(getCommand());
+            }
+            return template;
+        }
+
+        /**
+         * Returns the command text compiled as a response regex. The regex is compiled on first
+         * use and kept until the text changes.
+         */
+        public synchronized ResponseMatcher getMatcher() {
+            if (matcher == null) {
+                matcher = new ResponseMatcher(getCommand());
+            }
+            return matcher;
+        }
+
         private Command() {
 
         }
     }
 
+    protected interface Operation {
+        void run() throws Exception;
+    }
+
+    protected interface SubDriverOperation {
+        void run(GcodeDriver driver) throws Exception;
+    }
+
+    /**
+     * Runs the sub-driver side of runWithSubDrivers(). Shared by all drivers, since the threads
+     * are only busy while they wait for a controller.
+     */
+    private static final ExecutorService subDriverExecutor =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "GcodeDriver Sub-Driver");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The classification of a line received from the controller, which is done once on the
+     * reader thread.
+     */
+    public enum ResponseType {
+        Confirm,
+        Error,
+        PositionReport,
+        Other
+    }
+
+    private static class Response {
+        final String line;
+        final ResponseType type;
+
+        Response(String line, ResponseType type) {
+            this.line = line;
+            this.type = type;
+        }
+    }
+
     @Attribute(required = false)
     protected LengthUnit units = LengthUnit.Millimeters;
 
@@ -164,6 +245,21 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     @Attribute(required = false)
     protected boolean visualHomingEnabled = true;
 
+    /**
+     * When streaming is enabled Gcode lines are written to the controller without waiting for
+     * the confirmation of the previous line, up to streamingMaxLines lines and, if greater than
+     * zero, streamingMaxBytes characters (grbl style character counting) in flight. Confirmations
+     * are matched to commands in the order they were sent. See sendGcode().
+     */
+    @Attribute(required = false)
+    protected boolean streamingEnabled = false;
+
+    @Attribute(required = false)
+    protected int streamingMaxLines = 4;
+
+    @Attribute(required = false)
+    protected int streamingMaxBytes = 0;
+
     @Element(required = false)
     protected Location homingFiducialLocation = new Location(LengthUnit.Millimeters);
 
@@ -182,9 +278,14 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     private Thread readerThread;
     private boolean disconnectRequested;
     private boolean connected;
-    private LinkedBlockingQueue<String> responseQueue = new LinkedBlockingQueue<>();
+    private LinkedBlockingQueue<Response> responseQueue = new LinkedBlockingQueue<>();
     private Set<Nozzle> pickedNozzles = new HashSet<>();
     private GcodeDriver parent = null;
+    private ArrayDeque<String> streamedCommands = new ArrayDeque<>();
+    private int streamedBytes;
+    private List<Command> streamedCompletions = new ArrayList<>();
+    private volatile Lookup lookup;
+    private MotionQueue motionQueue = new MotionQueue("GcodeDriver Motion");
     
     @Commit
     public void commit() {
@@ -192,6 +293,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         for (GcodeDriver driver : subDrivers) {
             driver.parent = this;
         }
+        invalidateLookup();
     }
     
     public void createDefaults() {
@@ -220,15 +322,26 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         commands.add(new Command(null, CommandType.CONNECT_COMMAND, "G21 ; Set millimeters mode\nG90 ; Set absolute positioning mode\nM82 ; Set absolute mode for extruder"));
         commands.add(new Command(null, CommandType.HOME_COMMAND, "G28 ; Home all axes"));
         commands.add(new Command(null, CommandType.MOVE_TO_COMMAND, "G0 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{FeedRate:%.0f} ; Send standard Gcode move\nM400 ; Wait for moves to complete before returning"));
+        invalidateLookup();
     }
 
     public synchronized void connect() throws Exception {
-        getCommunications().connect();
+        ReferenceDriverCommunications communications = getCommunications();
+        if (communications instanceof NioTcpCommunications) {
+            // The selector thread hands the lines over as they come in, so there is no need for a
+            // reader thread.
+            ((NioTcpCommunications) communications).setLineListener(this::receiveLine);
+        }
+        communications.connect();
 
         connected = false;
-        readerThread = new Thread(this);
-        readerThread.setDaemon(true);
-        readerThread.start();
+        resetStream();
+        readerThread = null;
+        if (!(communications instanceof NioTcpCommunications)) {
+            readerThread = new Thread(this);
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
 
         // Wait a bit while the controller starts up
         Thread.sleep(connectWaitTimeMilliseconds);
@@ -248,82 +361,61 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
         // Send startup Gcode
         sendGcode(getCommand(null, CommandType.CONNECT_COMMAND));
+        waitForStreamedCommands(timeoutMilliseconds);
 
         connected = true;
     }
 
     @Override
     public void setEnabled(boolean enabled) throws Exception {
-        if (enabled && !connected) {
-            connect();
+        try {
+            waitForMotionComplete();
         }
-        if (connected) {
+        catch (Exception e) {
+            // A failed move must not keep the machine from being disabled.
             if (enabled) {
-                sendGcode(getCommand(null, CommandType.ENABLE_COMMAND));
-            }
-            else {
-                sendGcode(getCommand(null, CommandType.DISABLE_COMMAND));
+                throw e;
             }
+            Logger.warn(e);
         }
-
-        for (ReferenceDriver driver : subDrivers) {
-            driver.setEnabled(enabled);
-        }
+        runWithSubDrivers(() -> {
+            if (enabled && !connected) {
+                connect();
+            }
+            if (connected) {
+                if (enabled) {
+                    sendGcode(getCommand(null, CommandType.ENABLE_COMMAND));
+                }
+                else {
+                    sendGcode(getCommand(null, CommandType.DISABLE_COMMAND));
+                }
+            }
+        }, driver -> driver.setEnabled(enabled));
     }
 
     @Override
     public void dispense(ReferencePasteDispenser dispenser,Location startLocation,Location endLocation,long dispenseTimeMilliseconds) throws Exception {
+        motionQueue.await();
         Logger.debug("dispense({}, {}, {}, {})", new Object[] {dispenser, startLocation, endLocation, dispenseTimeMilliseconds});
 
-        String command = getCommand(null, CommandType.PRE_DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
+        Variables variables = new Variables().set("DispenseTime", dispenseTimeMilliseconds);
 
-        sendGcode(command);
+        sendGcode(renderCommand(null, CommandType.PRE_DISPENSE_COMMAND, variables));
 
         for (ReferenceDriver driver: subDrivers )
         {
             driver.dispense(dispenser,startLocation,endLocation,dispenseTimeMilliseconds);
         }
 
-        command = getCommand(null, CommandType.DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
-        sendGcode(command);
+        sendGcode(renderCommand(null, CommandType.DISPENSE_COMMAND, variables));
 
-        command = getCommand(null, CommandType.POST_DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
-        sendGcode(command);
+        sendGcode(renderCommand(null, CommandType.POST_DISPENSE_COMMAND, variables));
     }
 
     @Override
     public void home(ReferenceHead head) throws Exception {
-        // Home is sent with an infinite timeout since it's tough to tell how long it will
-        // take.
-        String command = getCommand(null, CommandType.HOME_COMMAND);
-        command = substituteVariable(command, "Id", head.getId());
-        command = substituteVariable(command, "Name", head.getName());
-        long timeout = -1;
-        List<String> responses = sendGcode(command, timeout);
-
-        // Check home complete response against user's regex
-        String homeCompleteRegex = getCommand(null, CommandType.HOME_COMPLETE_REGEX);
-        if (homeCompleteRegex != null) {
-            if (timeout == -1) {
-                timeout = Long.MAX_VALUE;
-            }
-            if (!containsMatch(responses, homeCompleteRegex)) {
-                long t = System.currentTimeMillis();
-                boolean done = false;
-                while (!done && System.currentTimeMillis() - t < timeout) {
-                    done = containsMatch(sendCommand(null, 250), homeCompleteRegex);
-                }
-                if (!done) {
-                    // Should never get here but just in case.
-                    throw new Exception("Timed out waiting for home to complete.");
-                }
-            }
-        }
-
-
+        waitForMotionComplete();
+        runWithSubDrivers(() -> sendHomeCommand(head), driver -> driver.home(head));
 
         // We need to specially handle X and Y axes to support the non-squareness factor.
         Axis xAxis = null;
@@ -365,10 +457,6 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             }
         }
 
-        for (ReferenceDriver driver : subDrivers) {
-            driver.home(head);
-        }
-
         if (visualHomingEnabled) {
             /*
              * The head camera for nozzle-1 should now be (if everything has homed correctly) directly
@@ -390,47 +478,82 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 	yAxis.setCoordinate(yHomeCoordinate);
                 }
                 
-                String g92command = getCommand(null, CommandType.POST_VISION_HOME_COMMAND);
                 // make sure to use the native non-square X home coordinate.
-                g92command = substituteVariable(g92command, "X", xHomeCoordinateNonSquare);
-                g92command = substituteVariable(g92command, "Y", yHomeCoordinate);
+                String g92command = renderCommand(null, CommandType.POST_VISION_HOME_COMMAND,
+                        new Variables().set("X", xHomeCoordinateNonSquare).set("Y",
+                                yHomeCoordinate));
                 sendGcode(g92command, -1);
             }
         }
     }
 
-    public Axis getAxis(HeadMountable hm, Axis.Type type) {
-        for (Axis axis : axes) {
-            if (axis.getType() == type && (axis.getHeadMountableIds().contains("*")
-                    || axis.getHeadMountableIds().contains(hm.getId()))) {
-                return axis;
+    /**
+     * Sends the home command and waits for homing to complete.
+     */
+    private void sendHomeCommand(ReferenceHead head) throws Exception {
+        // Home is sent with an infinite timeout since it's tough to tell how long it will
+        // take.
+        String command = renderCommand(null, CommandType.HOME_COMMAND,
+                new Variables().set("Id", head.getId()).set("Name", head.getName()));
+        long timeout = -1;
+        List<String> responses = sendGcode(command, timeout);
+        responses.addAll(waitForStreamedCommands(timeout));
+
+        // Check home complete response against user's regex
+        Command homeCompleteRegex = getCommand(null, CommandType.HOME_COMPLETE_REGEX, true);
+        if (homeCompleteRegex != null) {
+            if (timeout == -1) {
+                timeout = Long.MAX_VALUE;
+            }
+            if (!containsMatch(responses, homeCompleteRegex)) {
+                long t = System.currentTimeMillis();
+                boolean done = false;
+                while (!done && System.currentTimeMillis() - t < timeout) {
+                    done = containsMatch(sendCommand(null, 250), homeCompleteRegex);
+                }
+                if (!done) {
+                    // Should never get here but just in case.
+                    throw new Exception("Timed out waiting for home to complete.");
+                }
             }
         }
-        return null;
+    }
+
+    public Axis getAxis(HeadMountable hm, Axis.Type type) {
+        return getLookup().getAxis(hm == null ? null : hm.getId(), type);
     }
 
     public Command getCommand(HeadMountable hm, CommandType type, boolean checkDefaults) {
+        Lookup lookup = getLookup();
         // If a HeadMountable is specified, see if we can find a match
         // for both the HeadMountable ID and the command type.
         if (type.headMountable && hm != null) {
-            for (Command c : commands) {
-                if (hm.getId().equals(c.headMountableId) && type == c.type) {
-                    return c;
-                }
-            }
-            if (!checkDefaults) {
-                return null;
+            Command c = lookup.getCommand(hm.getId(), type);
+            if (c != null || !checkDefaults) {
+                return c;
             }
         }
         // If not, see if we can find a match for the command type with a
         // null or * HeadMountable ID.
-        for (Command c : commands) {
-            if ((c.headMountableId == null || c.headMountableId.equals("*")) && type == c.type) {
-                return c;
-            }
+        return lookup.getDefaultCommand(type);
+    }
+
+    /**
+     * Discard the command and axis lookup tables so that they are rebuilt on next use. This must
+     * be called after changing the commands or axes lists, or an axis's type or HeadMountable
+     * ids, other than through setCommand().
+     */
+    public void invalidateLookup() {
+        lookup = null;
+    }
+
+    private Lookup getLookup() {
+        Lookup lookup = this.lookup;
+        if (lookup == null) {
+            lookup = new Lookup(commands, axes);
+            this.lookup = lookup;
         }
-        // No matches were found.
-        return null;
+        return lookup;
     }
 
     public String getCommand(HeadMountable hm, CommandType type) {
@@ -441,17 +564,31 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         return c.getCommand();
     }
 
+    /**
+     * Render the command for the given HeadMountable and type with the given variables. Returns
+     * null if there is no such command.
+     */
+    protected String renderCommand(HeadMountable hm, CommandType type, Variables variables) {
+        Command c = getCommand(hm, type, true);
+        if (c == null) {
+            return null;
+        }
+        return c.getTemplate().render(variables);
+    }
+
     public void setCommand(HeadMountable hm, CommandType type, String text) {
         Command c = getCommand(hm, type, false);
         if (text == null || text.trim().length() == 0) {
             if (c != null) {
                 commands.remove(c);
+                invalidateLookup();
             }
         }
         else {
             if (c == null) {
                 c = new Command(hm == null ? null : hm.getId(), type, text);
                 commands.add(c);
+                invalidateLookup();
             }
             else {
                 c.setCommand(text);
@@ -496,9 +633,121 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     @Override
     public void moveTo(ReferenceHeadMountable hm, Location location, double speed)
             throws Exception {
-        // keep copy for calling subdrivers as to not add offset on offset
-        Location locationOriginal = location;
+        motionQueue.await();
+        doMoveTo(hm, location, speed);
+    }
+
+    @Override
+    public CompletableFuture<Void> moveToAsync(ReferenceHeadMountable hm, Location location,
+            double speed) {
+        return motionQueue.submit(() -> doMoveTo(hm, location, speed));
+    }
+
+    /**
+     * Blocks until every move started with moveToAsync() has been sent and, when streaming, until
+     * the controller has confirmed every streamed command and reported every move complete that
+     * has a moveToCompleteRegex. When streaming this is where moves are waited for, not in
+     * moveTo(), so that the controller's queue doesn't run dry between them.
+     */
+    @Override
+    public void waitForMotionComplete() throws Exception {
+        motionQueue.await();
+        runWithSubDrivers(this::waitForStreamedMoves, driver -> driver.waitForMotionComplete());
+    }
+
+    @Override
+    public void waitForMovesSent() throws Exception {
+        motionQueue.await();
+    }
+
+    @Override
+    public void moveToSegments(List<MotionSegment> segments) throws Exception {
+        motionQueue.await();
+        runWithSubDrivers(() -> moveAxes(segments), driver -> driver.moveToSegments(segments));
+    }
+
+    private void doMoveTo(ReferenceHeadMountable hm, Location location, double speed)
+            throws Exception {
+        // The sub-drivers are given the original location, as to not add offset on offset.
+        runWithSubDrivers(
+                () -> moveAxes(Collections.singletonList(new MotionSegment(hm, location, speed))),
+                driver -> driver.moveTo(hm, location, speed));
+    }
+
+    /**
+     * Moves this driver's axes through the segments, without the sub-drivers. The moves are sent
+     * back to back and waited for once, after the last one. When streaming they are not waited
+     * for at all, but left for waitForMotionComplete().
+     */
+    private void moveAxes(List<MotionSegment> segments) throws Exception {
+        List<String> responses = new ArrayList<>();
+        List<Command> completions = new ArrayList<>();
+        boolean moved = false;
+        for (MotionSegment segment : segments) {
+            moved |= sendMove(segment.getHeadMountable(), segment.getLocation(),
+                    segment.getSpeed(), responses, completions);
+        }
+        if (!moved) {
+            return;
+        }
+
+        if (streamingEnabled) {
+            // The moves and any pre-move commands may still be in flight. Responses that came
+            // back while they were sent may already report some of them complete.
+            matchCompletions(responses, completions);
+            streamedCompletions.addAll(completions);
+            return;
+        }
+        waitForCompletions(responses, completions);
+    }
+
+    /**
+     * Waits for everything that was streamed and for the completions of the moves among it.
+     */
+    private void waitForStreamedMoves() throws Exception {
+        List<String> responses = waitForStreamedCommands(timeoutMilliseconds);
+        List<Command> completions = streamedCompletions;
+        streamedCompletions = new ArrayList<>();
+        waitForCompletions(responses, completions);
+    }
+
+    /**
+     * If moveToCompleteRegex is specified we need to wait until we match the regex in a response
+     * before continuing. Each move that has one reports its completion in turn, so we match them
+     * in the order the moves were sent. We first search the responses we have so far. If they are
+     * not all matched we then collect responses for up to timeoutMillis while searching them. As
+     * soon as the last one is matched we continue. If it's not matched within the timeout we
+     * throw an Exception.
+     */
+    private void waitForCompletions(List<String> responses, List<Command> completions)
+            throws Exception {
+        matchCompletions(responses, completions);
+        long t = System.currentTimeMillis();
+        while (!completions.isEmpty()
+                && System.currentTimeMillis() - t < timeoutMilliseconds) {
+            matchCompletions(sendCommand(null, 250), completions);
+        }
+        if (!completions.isEmpty()) {
+            throw new Exception("Timed out waiting for move to complete.");
+        }
+    }
+
+    private static void matchCompletions(List<String> responses, List<Command> completions) {
+        for (String response : responses) {
+            if (!completions.isEmpty() && completions.get(0).getMatcher().matches(response)) {
+                completions.remove(0);
+            }
+        }
+    }
 
+    /**
+     * Sends the command that moves this driver's axes to the location, without waiting for the
+     * move to complete. The responses received are added to responses, and the
+     * moveToCompleteRegex to wait for, if there is one, to completions. Returns false if no axis
+     * had to move.
+     */
+    private boolean sendMove(ReferenceHeadMountable hm, Location location, double speed,
+            List<String> responses, List<Command> completions) throws Exception {
         location = location.convertToUnits(units);
         location = location.subtract(hm.getHeadOffsets());
 
@@ -545,11 +794,11 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 rotation = rotationAxis.getTransform().toRaw(rotationAxis, hm, rotation);
             }
 
-            String command = getCommand(hm, CommandType.MOVE_TO_COMMAND);
-            command = substituteVariable(command, "Id", hm.getId());
-            command = substituteVariable(command, "Name", hm.getName());
-            command = substituteVariable(command, "FeedRate", maxFeedRate * speed);
-            command = substituteVariable(command, "BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
+            Variables variables = new Variables();
+            variables.set("Id", hm.getId());
+            variables.set("Name", hm.getName());
+            variables.set("FeedRate", maxFeedRate * speed);
+            variables.set("BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
 
             /**
              * NSF gets applied to X and is multiplied by Y
@@ -579,83 +828,64 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             }
             
             if (includeX) {
-                command = substituteVariable(command, "X", x + nonSquarenessFactor * y);
-                command = substituteVariable(command, "BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
+                variables.set("X", x + nonSquarenessFactor * y);
+                variables.set("BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
                 if (xAxis.getPreMoveCommand() != null) {
-                    String preMoveCommand = xAxis.getPreMoveCommand();
-                    preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", xAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcode(xAxis.getPreMoveTemplate()
+                            .render(new Variables().set("Coordinate", xAxis.getCoordinate())));
                 }
                 xAxis.setCoordinate(x);
             }
             else {
-                command = substituteVariable(command, "X", null);
-                command = substituteVariable(command, "BacklashOffsetX", null); // Backlash Compensation
+                variables.set("X", null);
+                variables.set("BacklashOffsetX", null); // Backlash Compensation
             }
 
             if (includeY) {
-                command = substituteVariable(command, "Y", y);
-                command = substituteVariable(command, "BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
+                variables.set("Y", y);
+                variables.set("BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
                 if (yAxis.getPreMoveCommand() != null) {
-                    String preMoveCommand = yAxis.getPreMoveCommand();
-                    preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", yAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcode(yAxis.getPreMoveTemplate()
+                            .render(new Variables().set("Coordinate", yAxis.getCoordinate())));
                 }
             }
             else {
-                command = substituteVariable(command, "Y", null);
-                command = substituteVariable(command, "BacklashOffsetY", null); // Backlash Compensation
+                variables.set("Y", null);
+                variables.set("BacklashOffsetY", null); // Backlash Compensation
             }
 
             if (includeZ) {
-                command = substituteVariable(command, "Z", z);
+                variables.set("Z", z);
                 if (zAxis.getPreMoveCommand() != null) {
-                    String preMoveCommand = zAxis.getPreMoveCommand();
-                    preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", zAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcode(zAxis.getPreMoveTemplate()
+                            .render(new Variables().set("Coordinate", zAxis.getCoordinate())));
                 }
             }
             else {
-                command = substituteVariable(command, "Z", null);
+                variables.set("Z", null);
             }
 
             if (includeRotation) {
-                command = substituteVariable(command, "Rotation", rotation);
+                variables.set("Rotation", rotation);
                 if (rotationAxis.getPreMoveCommand() != null) {
-                    String preMoveCommand = rotationAxis.getPreMoveCommand();
-                    preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", rotationAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcode(rotationAxis.getPreMoveTemplate()
+                            .render(new Variables().set("Coordinate", rotationAxis.getCoordinate())));
                 }
             }
             else {
-                command = substituteVariable(command, "Rotation", null);
+                variables.set("Rotation", null);
             }
 
             // Only give a command when move is necessary
             if (includeX || includeY || includeZ || includeRotation) {
 
-                List<String> responses = sendGcode(command);
-
-                /*
-                 * If moveToCompleteRegex is specified we need to wait until we match the regex in a
-                 * response before continuing. We first search the initial responses from the
-                 * command for the regex. If it's not found we then collect responses for up to
-                 * timeoutMillis while searching the responses for the regex. As soon as it is
-                 * matched we continue. If it's not matched within the timeout we throw an
-                 * Exception.
-                 */
-                String moveToCompleteRegex = getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
+                String command = renderCommand(hm, CommandType.MOVE_TO_COMMAND, variables);
+                responses.addAll(sendGcode(command));
+
+                Command moveToCompleteRegex =
+                        getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX, true);
                 if (moveToCompleteRegex != null) {
-                    if (!containsMatch(responses, moveToCompleteRegex)) {
-                        long t = System.currentTimeMillis();
-                        boolean done = false;
-                        while (!done && System.currentTimeMillis() - t < timeoutMilliseconds) {
-                            done = containsMatch(sendCommand(null, 250), moveToCompleteRegex);
-                        }
-                        if (!done) {
-                            throw new Exception("Timed out waiting for move to complete.");
-                        }
-                    }
+                    completions.add(moveToCompleteRegex);
                 }
 
                 // And save the final values on the axes.
@@ -671,43 +901,111 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 if (rotationAxis != null) {
                     rotationAxis.setCoordinate(rotation);
                 }
+                return true;
 
             } // there is a move
 
         } // there were axes involved
+        return false;
+    }
 
-        // regardless of any action above the subdriver needs its actions based on original input
-        for (ReferenceDriver driver : subDrivers) {
-            driver.moveTo(hm, locationOriginal, speed);
+    /**
+     * Runs the operation for this driver on the calling thread and the operation for each
+     * sub-driver on a thread of its own, all at the same time, and waits for all of them to
+     * finish. Sub-drivers usually drive independent axes on a separate controller, so there is no
+     * reason for one to wait on another's round trip.
+     * 
+     * If only this driver fails its exception is thrown as is. Otherwise a single exception is
+     * thrown that names every driver that failed along with its error.
+     */
+    protected void runWithSubDrivers(Operation operation, SubDriverOperation subDriverOperation)
+            throws Exception {
+        if (subDrivers.isEmpty()) {
+            operation.run();
+            return;
         }
-
+        List<Future<Void>> futures = new ArrayList<>();
+        for (GcodeDriver driver : subDrivers) {
+            futures.add(subDriverExecutor.submit(() -> {
+                subDriverOperation.run(driver);
+                return null;
+            }));
+        }
+        Map<GcodeDriver, Exception> errors = new LinkedHashMap<>();
+        try {
+            operation.run();
+        }
+        catch (Exception e) {
+            errors.put(this, e);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                errors.put(subDrivers.get(i),
+                        cause instanceof Exception ? (Exception) cause : new Exception(cause));
+            }
+        }
+        if (errors.isEmpty()) {
+            return;
+        }
+        if (errors.size() == 1 && errors.containsKey(this)) {
+            throw errors.get(this);
+        }
+        StringBuilder message = new StringBuilder();
+        for (Map.Entry<GcodeDriver, Exception> error : errors.entrySet()) {
+            if (message.length() > 0) {
+                message.append("; ");
+            }
+            message.append(error.getKey().getName()).append(": ")
+                    .append(error.getValue().getMessage());
+        }
+        Exception exception = null;
+        for (Exception e : errors.values()) {
+            if (exception == null) {
+                exception = new Exception(message.toString(), e);
+            }
+            else {
+                exception.addSuppressed(e);
+            }
+        }
+        throw exception;
     }
 
-    private boolean containsMatch(List<String> responses, String regex) {
+    private boolean containsMatch(List<String> responses, Command regex) {
+        ResponseMatcher matcher = regex.getMatcher();
         for (String response : responses) {
-            if (response.matches(regex)) {
+            if (matcher.matches(response)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Pick, place and actuate are sync points: when streaming they are only sent once every
+     * streamed move is complete, and they return once the controller has confirmed them, so that
+     * the dwells and ready times that follow them start when the controller has run them.
+     */
     @Override
     public void pick(ReferenceNozzle nozzle) throws Exception {
+        waitForMotionComplete();
         pickedNozzles.add(nozzle);
         if (pickedNozzles.size() > 0) {
             sendGcode(getCommand(nozzle, CommandType.PUMP_ON_COMMAND));
         }
 
-        String command = getCommand(nozzle, CommandType.PICK_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
-
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        Variables variables = new Variables();
+        variables.set("Id", nozzle.getId());
+        variables.set("Name", nozzle.getName());
+        variables.set("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.set("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
 
-        sendGcode(command);
+        sendGcode(renderCommand(nozzle, CommandType.PICK_COMMAND, variables));
+        waitForStreamedCommands(timeoutMilliseconds);
 
         for (ReferenceDriver driver : subDrivers) {
             driver.pick(nozzle);
@@ -716,21 +1014,21 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
     @Override
     public void place(ReferenceNozzle nozzle) throws Exception {
-
+        waitForMotionComplete();
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
 
-        String command = getCommand(nozzle, CommandType.PLACE_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
-
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
-        sendGcode(command);
+        Variables variables = new Variables();
+        variables.set("Id", nozzle.getId());
+        variables.set("Name", nozzle.getName());
+        variables.set("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.set("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        sendGcode(renderCommand(nozzle, CommandType.PLACE_COMMAND, variables));
 
         pickedNozzles.remove(nozzle);
         if (pickedNozzles.size() < 1) {
             sendGcode(getCommand(nozzle, CommandType.PUMP_OFF_COMMAND));
         }
+        waitForStreamedCommands(timeoutMilliseconds);
 
         for (ReferenceDriver driver : subDrivers) {
             driver.place(nozzle);
@@ -740,39 +1038,46 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
     @Override
     public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "BooleanValue", on);
-        command = substituteVariable(command, "True", on ? on : null);
-        command = substituteVariable(command, "False", on ? null : on);
-        sendGcode(command);
-
-        for (ReferenceDriver driver : subDrivers) {
-            driver.actuate(actuator, on);
-        }
+        waitForMotionComplete();
+        Variables variables = new Variables();
+        variables.set("Id", actuator.getId());
+        variables.set("Name", actuator.getName());
+        variables.set("Index", actuator.getIndex());
+        variables.set("BooleanValue", on);
+        variables.set("True", on ? on : null);
+        variables.set("False", on ? null : on);
+        runWithSubDrivers(
+                () -> {
+                    sendGcode(renderCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND,
+                            variables));
+                    waitForStreamedCommands(timeoutMilliseconds);
+                },
+                driver -> driver.actuate(actuator, on));
     }
 
     @Override
     public void actuate(ReferenceActuator actuator, double value) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_DOUBLE_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "DoubleValue", value);
-        command = substituteVariable(command, "IntegerValue", (int) value);
-        sendGcode(command);
-
-        for (ReferenceDriver driver : subDrivers) {
-            driver.actuate(actuator, value);
-        }
+        waitForMotionComplete();
+        Variables variables = new Variables();
+        variables.set("Id", actuator.getId());
+        variables.set("Name", actuator.getName());
+        variables.set("Index", actuator.getIndex());
+        variables.set("DoubleValue", value);
+        variables.set("IntegerValue", (int) value);
+        runWithSubDrivers(
+                () -> {
+                    sendGcode(renderCommand(actuator, CommandType.ACTUATE_DOUBLE_COMMAND,
+                            variables));
+                    waitForStreamedCommands(timeoutMilliseconds);
+                },
+                driver -> driver.actuate(actuator, value));
     }
     
     @Override
     public String actuatorRead(ReferenceActuator actuator) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
-        String regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX);
+        waitForMotionComplete();
+        Command command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, true);
+        Command regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX, true);
         if (command == null || regex == null) {
             // If the command or regex is null we'll query the subdrivers. The first
             // to respond with a non-null value wins.
@@ -787,17 +1092,18 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             return null;
         }
 
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
+        Variables variables = new Variables();
+        variables.set("Id", actuator.getId());
+        variables.set("Name", actuator.getName());
+        variables.set("Index", actuator.getIndex());
 
-        List<String> responses = sendGcode(command);
+        List<String> responses = sendGcode(command.getTemplate().render(variables));
+        responses.addAll(waitForStreamedCommands(timeoutMilliseconds));
 
         for (String line : responses) {
-            if (line.matches(regex)) {
+            Matcher matcher = regex.getMatcher().matcher(line);
+            if (matcher.matches()) {
                 Logger.trace("actuatorRead response: {}", line);
-                Matcher matcher = Pattern.compile(regex).matcher(line);
-                matcher.matches();
 
                 try {
                     String s = matcher.group("Value");
@@ -815,6 +1121,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     public synchronized void disconnect() {
         disconnectRequested = true;
         connected = false;
+        resetStream();
 
         try {
             if (readerThread != null && readerThread.isAlive()) {
@@ -837,6 +1144,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     @Override
     public void close() throws IOException {
         super.close();
+        motionQueue.shutdown();
 
         for (ReferenceDriver driver : subDrivers) {
             driver.close();
@@ -847,6 +1155,13 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         return sendGcode(gCode, timeoutMilliseconds);
     }
 
+    /**
+     * Send each line of the given Gcode to the controller. If streaming is disabled each line
+     * blocks until it is confirmed. If streaming is enabled the lines are only throttled by the
+     * streaming window and this method may return before they are confirmed. Callers that need
+     * the responses to the Gcode, or that need the controller to be done with it, must call
+     * waitForStreamedCommands() afterwards.
+     */
     protected List<String> sendGcode(String gCode, long timeout) throws Exception {
         if (gCode == null) {
             return new ArrayList<>();
@@ -857,11 +1172,96 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             if (command.length() == 0) {
                 continue;
             }
-            responses.addAll(sendCommand(command, timeout));
+            if (streamingEnabled) {
+                responses.addAll(streamCommand(command, timeout));
+            }
+            else {
+                responses.addAll(sendCommand(command, timeout));
+            }
         }
         return responses;
     }
 
+    /**
+     * Write the command as soon as there is room for it in the streaming window, without waiting
+     * for it to be confirmed. Returns any responses that were received while waiting for room.
+     */
+    protected List<String> streamCommand(String command, long timeout) throws Exception {
+        List<String> responses = new ArrayList<>();
+        // grbl counts the line ending against its receive buffer, so we do too.
+        int bytes = command.length() + 1;
+        while (!streamedCommands.isEmpty() && (streamedCommands.size() >= streamingMaxLines
+                || (streamingMaxBytes > 0 && streamedBytes + bytes > streamingMaxBytes))) {
+            receiveStreamedConfirmation(responses, timeout);
+        }
+
+        Logger.debug("streamCommand({}, {})...", command, timeout);
+        Logger.trace("[{}] >> {}", getCommunications().getConnectionName(), command);
+        getCommunications().writeLine(command);
+        streamedCommands.add(command);
+        streamedBytes += bytes;
+        return responses;
+    }
+
+    /**
+     * Block until every streamed command has been confirmed by the controller and return the
+     * responses received in the meantime. Returns immediately if nothing is in flight.
+     */
+    public List<String> waitForStreamedCommands(long timeout) throws Exception {
+        List<String> responses = new ArrayList<>();
+        while (!streamedCommands.isEmpty()) {
+            receiveStreamedConfirmation(responses, timeout);
+        }
+        drainResponses(responses);
+        return responses;
+    }
+
+    /**
+     * Collect responses until the oldest streamed command is confirmed, or throw if the
+     * controller reports an error or the timeout expires.
+     */
+    private void receiveStreamedConfirmation(List<String> responses, long timeout)
+            throws Exception {
+        if (timeout == -1) {
+            timeout = Long.MAX_VALUE;
+        }
+        long t = System.currentTimeMillis();
+        while (System.currentTimeMillis() - t < timeout) {
+            Response response = responseQueue.poll(timeout - (System.currentTimeMillis() - t),
+                    TimeUnit.MILLISECONDS);
+            if (response == null) {
+                continue;
+            }
+            responses.add(response.line);
+            if (response.type == ResponseType.Confirm) {
+                retireStreamedCommand();
+                return;
+            }
+            if (response.type == ResponseType.Error) {
+                String command = retireStreamedCommand();
+                throw new Exception(
+                        "Controller raised an error: " + response.line + " (" + command + ")");
+            }
+        }
+        // The controller's view of the window is unknown now, so start over.
+        String command = streamedCommands.peek();
+        resetStream();
+        throw new Exception("Timeout waiting for response to " + command);
+    }
+
+    private String retireStreamedCommand() {
+        String command = streamedCommands.remove();
+        streamedBytes -= command.length() + 1;
+        Logger.debug("streamCommand({}) confirmed, {} in flight", command, streamedCommands.size());
+        return command;
+    }
+
+    private void resetStream() {
+        streamedCommands.clear();
+        streamedBytes = 0;
+        streamedCompletions.clear();
+    }
+
     public List<String> sendCommand(String command) throws Exception {
         return sendCommand(command, timeoutMilliseconds);
     }
@@ -869,9 +1269,13 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     public List<String> sendCommand(String command, long timeout) throws Exception {
         List<String> responses = new ArrayList<>();
 
+        // If commands are being streamed, their confirmations are still to come and must not be
+        // mistaken for the confirmation of this one.
+        responses.addAll(waitForStreamedCommands(timeout));
+
         // Read any responses that might be queued up so that when we wait
         // for a response to a command we actually wait for the one we expect.
-        responseQueue.drainTo(responses);
+        drainResponses(responses);
 
         Logger.debug("sendCommand({}, {})...", command, timeout);
 
@@ -894,26 +1298,23 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         while (System.currentTimeMillis() - t < timeout) {
             // Wait to see if a response came in. We wait up until the number of millis remaining
             // in the timeout.
-            String response = responseQueue.poll(timeout - (System.currentTimeMillis() - t),
+            Response response = responseQueue.poll(timeout - (System.currentTimeMillis() - t),
                     TimeUnit.MILLISECONDS);
             // If no response yet, try again.
             if (response == null) {
                 continue;
             }
             // Store the response that was received
-            responses.add(response);
+            responses.add(response.line);
             // If the response is an ok or error we're done
-            if (response.matches(getCommand(null, CommandType.COMMAND_CONFIRM_REGEX))) {
+            if (response.type == ResponseType.Confirm) {
                 found = true;
                 break;
             }
-
-            if (getCommand(null, CommandType.COMMAND_ERROR_REGEX) != null) {
-                if (response.matches(getCommand(null, CommandType.COMMAND_ERROR_REGEX))) {
-                    foundError = true;
-                    errorResponse = response;
-                    break;
-                }
+            if (response.type == ResponseType.Error) {
+                foundError = true;
+                errorResponse = response.line;
+                break;
             }
         }
         // If a command was specified and no confirmation was found it's a timeout error.
@@ -925,7 +1326,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         }
 
         // Read any additional responses that came in after the initial one.
-        responseQueue.drainTo(responses);
+        drainResponses(responses);
 
         Logger.debug("sendCommand({} {}, {}) => {}",
                 new Object[] {getCommunications().getConnectionName(), command, timeout == Long.MAX_VALUE ? -1 : timeout, responses});
@@ -945,27 +1346,63 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 Logger.error("Read error", e);
                 return;
             }
-            line = line.trim();
-            Logger.trace("[{}] << {}", getCommunications().getConnectionName(), line);
-            if (!processPositionReport(line)) {
-                responseQueue.offer(line);
-            }
+            receiveLine(line);
+        }
+    }
+
+    /**
+     * Classify a line received from the controller and queue it up as a response, unless it is a
+     * position report. Called on the reader thread, or on the selector thread for "tcp-nio".
+     */
+    private void receiveLine(String line) {
+        line = line.trim();
+        Logger.trace("[{}] << {}", getCommunications().getConnectionName(), line);
+        ResponseType type = classifyResponse(line);
+        if (type != ResponseType.PositionReport) {
+            responseQueue.offer(new Response(line, type));
+        }
+    }
+
+    /**
+     * Classify a line received from the controller using the compiled position report, confirm
+     * and error regexes. Position reports are processed here, on the reader thread. They are
+     * tried first, so that a line that reports the position is never taken for a confirmation,
+     * even if it also matches the confirm regex.
+     */
+    protected ResponseType classifyResponse(String line) {
+        if (processPositionReport(line)) {
+            return ResponseType.PositionReport;
+        }
+        Command confirm = getCommand(null, CommandType.COMMAND_CONFIRM_REGEX, true);
+        if (confirm != null && confirm.getMatcher().matches(line)) {
+            return ResponseType.Confirm;
+        }
+        Command error = getCommand(null, CommandType.COMMAND_ERROR_REGEX, true);
+        if (error != null && error.getMatcher().matches(line)) {
+            return ResponseType.Error;
+        }
+        return ResponseType.Other;
+    }
+
+    private void drainResponses(List<String> responses) {
+        Response response;
+        while ((response = responseQueue.poll()) != null) {
+            responses.add(response.line);
         }
     }
 
     private boolean processPositionReport(String line) {
-        if (getCommand(null, CommandType.POSITION_REPORT_REGEX) == null) {
+        Command regex = getCommand(null, CommandType.POSITION_REPORT_REGEX, true);
+        if (regex == null) {
             return false;
         }
 
-        if (!line.matches(getCommand(null, CommandType.POSITION_REPORT_REGEX))) {
+        Matcher matcher = regex.getMatcher().matcher(line);
+        if (!matcher.matches()) {
             return false;
         }
 
         Logger.trace("Position report: {}", line);
-        Matcher matcher =
-                Pattern.compile(getCommand(null, CommandType.POSITION_REPORT_REGEX)).matcher(line);
-        matcher.matches();
         for (Axis axis : axes) {
             try {
                 String s = matcher.group(axis.getName());
@@ -988,6 +1425,9 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
      * Find matches of variables in the format {Name:Format} and replace them with the specified
      * value formatted using String.format with the specified Format. Format is optional and
      * defaults to %s. A null value replaces the variable with "".
+     * 
+     * This rescans the command for every call. Commands that are rendered repeatedly should use
+     * Command.getTemplate() instead.
      */
     static protected String substituteVariable(String command, String name, Object value) {
         if (command == null) {
@@ -1058,7 +1498,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         @Override
         public void actionPerformed(ActionEvent arg0) {
             GcodeDriver driver = new GcodeDriver();
-            driver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+            driver.setCommand(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*");
             driver.parent = GcodeDriver.this;
             subDrivers.add(driver);
             fireIndexedPropertyChange("subDrivers", subDrivers.size() - 1, null, driver);
@@ -1165,6 +1605,87 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         this.visualHomingEnabled = visualHomingEnabled;
     }
 
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
+
+    public int getStreamingMaxLines() {
+        return streamingMaxLines;
+    }
+
+    public void setStreamingMaxLines(int streamingMaxLines) {
+        this.streamingMaxLines = streamingMaxLines;
+    }
+
+    public int getStreamingMaxBytes() {
+        return streamingMaxBytes;
+    }
+
+    public void setStreamingMaxBytes(int streamingMaxBytes) {
+        this.streamingMaxBytes = streamingMaxBytes;
+    }
+
+    /**
+     * Immutable index of the commands by HeadMountable id and type, and of the axes by
+     * HeadMountable id and type. The lookups give the same results as scanning the lists in order
+     * would, and the index is rebuilt whenever the lists change. See invalidateLookup().
+     */
+    private static class Lookup {
+        private final Map<String, EnumMap<CommandType, Command>> commandsById = new HashMap<>();
+        private final EnumMap<CommandType, Command> defaultCommands =
+                new EnumMap<>(CommandType.class);
+        private final Map<String, EnumMap<Axis.Type, Axis>> axesById = new HashMap<>();
+        private final EnumMap<Axis.Type, Axis> defaultAxes = new EnumMap<>(Axis.Type.class);
+
+        Lookup(List<Command> commands, List<Axis> axes) {
+            // The first matching entry in a list wins, hence putIfAbsent throughout.
+            for (Command c : commands) {
+                if (c.headMountableId != null) {
+                    commandsById.computeIfAbsent(c.headMountableId,
+                            id -> new EnumMap<>(CommandType.class)).putIfAbsent(c.type, c);
+                }
+                if (c.headMountableId == null || c.headMountableId.equals("*")) {
+                    defaultCommands.putIfAbsent(c.type, c);
+                }
+            }
+            // An axis that lists "*" applies to every HeadMountable, so an id's axis of a given
+            // type is whichever comes first of its own and the "*" one.
+            for (Axis axis : axes) {
+                if (axis.getHeadMountableIds().contains("*")) {
+                    defaultAxes.putIfAbsent(axis.getType(), axis);
+                    for (EnumMap<Axis.Type, Axis> byType : axesById.values()) {
+                        byType.putIfAbsent(axis.getType(), axis);
+                    }
+                }
+                for (String id : axis.getHeadMountableIds()) {
+                    if (!axesById.containsKey(id)) {
+                        axesById.put(id, new EnumMap<>(defaultAxes));
+                    }
+                    axesById.get(id).putIfAbsent(axis.getType(), axis);
+                }
+            }
+        }
+
+        Command getCommand(String headMountableId, CommandType type) {
+            EnumMap<CommandType, Command> byType = commandsById.get(headMountableId);
+            return byType == null ? null : byType.get(type);
+        }
+
+        Command getDefaultCommand(CommandType type) {
+            return defaultCommands.get(type);
+        }
+
+        Axis getAxis(String headMountableId, Axis.Type type) {
+            EnumMap<Axis.Type, Axis> byType =
+                    headMountableId == null ? null : axesById.get(headMountableId);
+            return byType == null ? defaultAxes.get(type) : byType.get(type);
+        }
+    }
+
     public static class Axis {
         public enum Type {
             X,
@@ -1191,6 +1712,8 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         @Element(required = false, data = true)
         private String preMoveCommand;
 
+        private GcodeTemplate preMoveTemplate;
+
         /**
          * Stores the current value for this axis.
          */
@@ -1268,6 +1791,14 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
         public void setPreMoveCommand(String preMoveCommand) {
             this.preMoveCommand = preMoveCommand;
+            this.preMoveTemplate = null;
+        }
+
+        public GcodeTemplate getPreMoveTemplate() {
+            if (preMoveTemplate == null && preMoveCommand != null) {
+                preMoveTemplate = new GcodeTemplate(preMoveCommand);
+            }
+            return preMoveTemplate;
         }
     }
 
@@ -0,0 +1,223 @@
+package org.openpnp.machine.reference.driver;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Gcode command template that has been parsed into literal text and variables in the format
+ * {Name:Format}, so that it can be rendered in a single pass instead of being rescanned once per
+ * variable.
+ *
+ * Rendering gives the same result as calling GcodeDriver.substituteVariable() once for each
+ * variable that is set: a variable set to null renders as "" and a variable that is not set is
+ * left in the output as it was written.
+ */
+public class GcodeTemplate {
+    private static final Pattern variablePattern = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+
+    private final String text;
+    private final Segment[] segments;
+    private final StringBuilder sb = new StringBuilder();
+
+    public GcodeTemplate(String text) {
+        this.text = text;
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = variablePattern.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.start() > start) {
+                segments.add(new Literal(text.substring(start, matcher.start())));
+            }
+            segments.add(new Variable(matcher.group(1), matcher.group(2), matcher.group()));
+            start = matcher.end();
+        }
+        if (start < text.length()) {
+            segments.add(new Literal(text.substring(start)));
+        }
+        this.segments = segments.toArray(new Segment[] {});
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public synchronized String render(Variables variables) {
+        sb.setLength(0);
+        for (Segment segment : segments) {
+            segment.render(sb, variables);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * The values to render a template with. Lookups are linear, which is faster than hashing for
+     * the dozen or so variables a command uses.
+     */
+    public static class Variables {
+        private String[] names = new String[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        public Variables set(String name, Object value) {
+            int index = indexOf(name);
+            if (index == -1) {
+                if (size == names.length) {
+                    String[] names = new String[size * 2];
+                    Object[] values = new Object[size * 2];
+                    System.arraycopy(this.names, 0, names, 0, size);
+                    System.arraycopy(this.values, 0, values, 0, size);
+                    this.names = names;
+                    this.values = values;
+                }
+                index = size++;
+                names[index] = name;
+            }
+            values[index] = value;
+            return this;
+        }
+
+        public void clear() {
+            for (int i = 0; i < size; i++) {
+                names[i] = null;
+                values[i] = null;
+            }
+            size = 0;
+        }
+
+        int indexOf(String name) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private interface Segment {
+        void render(StringBuilder sb, Variables variables);
+    }
+
+    private static class Literal implements Segment {
+        private final String text;
+
+        public Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(StringBuilder sb, Variables variables) {
+            sb.append(text);
+        }
+    }
+
+    private static class Variable implements Segment {
+        private final String name;
+        private final String source;
+        private final Formatter formatter;
+
+        public Variable(String name, String format, String source) {
+            this.name = name;
+            this.source = source;
+            this.formatter = Formatter.compile(format == null ? "%s" : format);
+        }
+
+        @Override
+        public void render(StringBuilder sb, Variables variables) {
+            int index = variables.indexOf(name);
+            if (index == -1) {
+                sb.append(source);
+            }
+            else if (variables.values[index] != null) {
+                formatter.format(sb, variables.values[index]);
+            }
+        }
+    }
+
+    /**
+     * Formats a value the way String.format((Locale) null, format, value) would. Formats that
+     * consist of a single %s, %d or %.Nf conversion with optional literal text around it are
+     * handled directly and anything else is passed to String.format().
+     */
+    static class Formatter {
+        private static final Pattern simplePattern =
+                Pattern.compile("([^%]*)%(?:\\.(\\d+))?([sdf])([^%]*)");
+
+        private final String format;
+        private final String prefix;
+        private final String suffix;
+        private final char conversion;
+        private final int precision;
+
+        private Formatter(String format, String prefix, char conversion, int precision,
+                String suffix) {
+            this.format = format;
+            this.prefix = prefix;
+            this.conversion = conversion;
+            this.precision = precision;
+            this.suffix = suffix;
+        }
+
+        static Formatter compile(String format) {
+            Matcher matcher = simplePattern.matcher(format);
+            if (!matcher.matches()) {
+                return new Formatter(format, null, (char) 0, 0, null);
+            }
+            char conversion = matcher.group(3).charAt(0);
+            if (matcher.group(2) != null && conversion != 'f') {
+                // Precision means something different for %s and is illegal for %d.
+                return new Formatter(format, null, (char) 0, 0, null);
+            }
+            int precision = matcher.group(2) == null ? 6 : Integer.parseInt(matcher.group(2));
+            return new Formatter(format, matcher.group(1), conversion, precision,
+                    matcher.group(4));
+        }
+
+        void format(StringBuilder sb, Object value) {
+            switch (conversion) {
+                case 's':
+                    if (value instanceof java.util.Formattable) {
+                        break;
+                    }
+                    sb.append(prefix).append(value).append(suffix);
+                    return;
+                case 'd':
+                    if (!(value instanceof Integer || value instanceof Long
+                            || value instanceof Short || value instanceof Byte)) {
+                        break;
+                    }
+                    sb.append(prefix).append(((Number) value).longValue()).append(suffix);
+                    return;
+                case 'f':
+                    if (!(value instanceof Double || value instanceof Float)) {
+                        break;
+                    }
+                    double d = ((Number) value).doubleValue();
+                    if (Double.isNaN(d) || Double.isInfinite(d)) {
+                        break;
+                    }
+                    // Formatter rounds the shortest decimal representation half up, which is
+                    // exactly what BigDecimal.valueOf() followed by setScale() does.
+                    BigDecimal bd = BigDecimal.valueOf(d).setScale(precision, RoundingMode.HALF_UP);
+                    sb.append(prefix);
+                    if (bd.signum() == 0 && Double.doubleToRawLongBits(d) < 0) {
+                        // BigDecimal has no negative zero, but Formatter prints one.
+                        sb.append('-');
+                    }
+                    sb.append(bd.toPlainString()).append(suffix);
+                    return;
+            }
+            sb.append(String.format((Locale) null, format, value));
+        }
+    }
+}
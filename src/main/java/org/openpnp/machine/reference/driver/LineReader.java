@@ -0,0 +1,151 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the bytes received from a controller into lines. Bytes are read in bulk into a reusable
+ * buffer and scanned for CR and LF there, so the only allocation per line is the returned String.
+ * Empty lines, including the empty line between CR and LF, are skipped.
+ *
+ * Bytes are decoded as ISO-8859-1, so each byte becomes the char with the same value. A partial
+ * line is kept in the buffer when the source times out and is completed by the next call.
+ *
+ * Transports that are notified of incoming data instead of blocking for it can push the bytes in
+ * with put() and take the lines out with nextLine(), without a Source.
+ *
+ * A LineReader is not thread safe. It is meant to be used by one reader thread only.
+ */
+public class LineReader {
+    /**
+     * Where a LineReader gets its bytes from.
+     */
+    public interface Source {
+        /**
+         * Blocks until at least one byte is available, then reads as many bytes as are available
+         * into the buffer, up to length. Returns the number of bytes read, or -1 at end of stream.
+         * A timeout should be reported by throwing the exception the caller of readLine() expects.
+         */
+        int read(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final Source source;
+    private byte[] buffer;
+    /**
+     * The start of the unread bytes in the buffer.
+     */
+    private int position;
+    /**
+     * The end of the unread bytes in the buffer.
+     */
+    private int limit;
+    /**
+     * The bytes between position and scanned are known not to contain a line terminator.
+     */
+    private int scanned;
+
+    public LineReader() {
+        this(null, 4096);
+    }
+
+    public LineReader(Source source) {
+        this(source, 4096);
+    }
+
+    public LineReader(Source source, int bufferSize) {
+        this.source = source;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Returns the next non-empty line without its terminator, or null at end of stream.
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            String line = nextLine();
+            if (line != null) {
+                return line;
+            }
+            if (!fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the next non-empty line that has been received completely, or null if there is
+     * none. Never reads from the Source.
+     */
+    public String nextLine() {
+        while (position < limit && isTerminator(buffer[position])) {
+            position++;
+        }
+        if (scanned < position) {
+            scanned = position;
+        }
+        for (; scanned < limit; scanned++) {
+            if (isTerminator(buffer[scanned])) {
+                String line = new String(buffer, position, scanned - position,
+                        StandardCharsets.ISO_8859_1);
+                position = scanned + 1;
+                scanned = position;
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the remaining bytes of src to the bytes received.
+     */
+    public void put(ByteBuffer src) {
+        while (src.hasRemaining()) {
+            makeRoom();
+            int count = Math.min(src.remaining(), buffer.length - limit);
+            src.get(buffer, limit, count);
+            limit += count;
+        }
+    }
+
+    /**
+     * Discards any bytes that have been received but not returned as a line.
+     */
+    public void clear() {
+        position = 0;
+        limit = 0;
+        scanned = 0;
+    }
+
+    private boolean fill() throws IOException {
+        makeRoom();
+        int count = source.read(buffer, limit, buffer.length - limit);
+        if (count < 0) {
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, and grows the buffer if that does not
+     * leave any room after them.
+     */
+    private void makeRoom() {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            scanned -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] buffer = new byte[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, buffer, 0, limit);
+            this.buffer = buffer;
+        }
+    }
+
+    private static boolean isTerminator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,106 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a driver's asynchronous moves one at a time, in the order they were submitted, on a thread
+ * of its own. If a move fails the moves queued after it are not run and fail with the same error,
+ * and that error is thrown by the next call to await().
+ *
+ * Drivers call await() at the start of every other operation so that the operation happens after
+ * the moves that were started before it, as it would if the moves had been synchronous. They call
+ * shutdown() when they are closed, to stop the thread.
+ */
+public class MotionQueue {
+    public interface Motion {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private ExecutorService executor;
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+    private Exception failure;
+
+    public MotionQueue(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Queue the motion and return a future that completes when it has run.
+     */
+    public synchronized CompletableFuture<Void> submit(Motion motion) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            Exception failure = getFailure();
+            if (failure == null) {
+                try {
+                    motion.run();
+                    future.complete(null);
+                    return;
+                }
+                catch (Exception e) {
+                    failure = e;
+                    setFailure(e);
+                }
+            }
+            future.completeExceptionally(failure);
+        });
+        last = future;
+        return future;
+    }
+
+    /**
+     * Blocks until every motion submitted so far has run. If any of them failed, the first error
+     * is thrown, and only once.
+     */
+    public void await() throws Exception {
+        CompletableFuture<Void> last;
+        synchronized (this) {
+            last = this.last;
+        }
+        try {
+            last.get();
+        }
+        catch (ExecutionException e) {
+            // Reported below.
+        }
+        synchronized (this) {
+            if (failure != null) {
+                Exception e = failure;
+                failure = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops the thread once the motions submitted so far have run. A motion submitted after this
+     * starts a new one.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized Exception getFailure() {
+        return failure;
+    }
+
+    private synchronized void setFailure(Exception failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+    }
+}
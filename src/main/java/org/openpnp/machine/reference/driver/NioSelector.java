@@ -0,0 +1,79 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * A single thread that does the socket IO for every NioTcpCommunications, so a driver and all of
+ * its sub-drivers are served by one thread no matter how many controllers they talk to.
+ *
+ * Channels are registered with a Handler as the key attachment, and the Handler is called on the
+ * selector thread whenever its key is ready. Anything that has to touch the selector, such as
+ * registering a channel or changing a key's interest set, is passed to execute() so that it runs
+ * on the selector thread too.
+ */
+public class NioSelector implements Runnable {
+    public interface Handler {
+        void ready(SelectionKey key);
+    }
+
+    private static NioSelector instance;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private NioSelector() throws IOException {
+        selector = Selector.open();
+        Thread thread = new Thread(this, "NioSelector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized NioSelector get() throws IOException {
+        if (instance == null) {
+            instance = new NioSelector();
+        }
+        return instance;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Run the task on the selector thread.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        ((Handler) key.attachment()).ready(key);
+                    }
+                }
+            }
+            catch (Exception e) {
+                Logger.error(e);
+            }
+        }
+    }
+}
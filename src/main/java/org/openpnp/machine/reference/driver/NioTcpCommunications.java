@@ -0,0 +1,260 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.pmw.tinylog.Logger;
+
+/**
+ * A TCP connection that does its IO on the shared NioSelector thread instead of blocking a thread
+ * per connection. Incoming data is read into a direct buffer and split into lines on the selector
+ * thread. If a LineListener is set each line is handed to it there, as soon as it is framed, so
+ * the driver needs no thread of its own to read. Otherwise readLine() takes the lines from a
+ * queue. writeLine() adds the line to a direct buffer that the selector thread flushes when the
+ * socket is writable, so lines written in quick succession, as when streaming, go out together in
+ * one write.
+ *
+ * The address and port are those of the driver's TcpCommunications.
+ */
+public class NioTcpCommunications implements ReferenceDriverCommunications, NioSelector.Handler {
+    /**
+     * Is called on the selector thread with each line received. It must not block, since the
+     * selector thread serves every connection.
+     */
+    public interface LineListener {
+        void lineReceived(String line);
+    }
+
+    private static final int bufferSize = 8192;
+
+    private final TcpCommunications settings;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(bufferSize);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+    private final LineReader lineReader = new LineReader();
+    private final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+    private NioSelector selector;
+    private SocketChannel channel;
+    private volatile SelectionKey key;
+    private volatile IOException error;
+    private volatile LineListener lineListener;
+    private volatile boolean closed;
+    private long readTimeout = 500;
+
+    public NioTcpCommunications(TcpCommunications settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public synchronized void connect() throws Exception {
+        disconnect();
+        selector = NioSelector.get();
+        channel = SocketChannel.open(
+                new InetSocketAddress(settings.getIpAddress(), settings.getPort()));
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        error = null;
+        closed = false;
+        lines.clear();
+        lineReader.clear();
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+        }
+        CompletableFuture<SelectionKey> registered = new CompletableFuture<>();
+        selector.execute(() -> {
+            try {
+                registered.complete(channel.register(selector.getSelector(),
+                        SelectionKey.OP_READ, this));
+            }
+            catch (Exception e) {
+                registered.completeExceptionally(e);
+            }
+        });
+        key = registered.get();
+    }
+
+    @Override
+    public synchronized void disconnect() throws Exception {
+        if (channel != null) {
+            closed = true;
+            channel.close();
+            selector.getSelector().wakeup();
+            channel = null;
+            key = null;
+            synchronized (writeBuffer) {
+                writeBuffer.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public String getConnectionName() {
+        return "tcp://" + settings.getIpAddress() + ":" + settings.getPort();
+    }
+
+    /**
+     * Read a line from the socket. Blocks for the default timeout. If the read times out a
+     * TimeoutException is thrown. If the connection has failed or been closed by the controller
+     * an IOException is thrown once all of the lines received before that have been read.
+     */
+    @Override
+    public String readLine() throws TimeoutException, IOException {
+        String line = lines.poll();
+        if (line == null) {
+            if (error != null) {
+                throw error;
+            }
+            try {
+                line = lines.poll(readTimeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (line == null) {
+                throw new TimeoutException("No data received from " + getConnectionName());
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Queue the line to be sent. Blocks only if the write buffer is full.
+     */
+    @Override
+    public void writeLine(String data) throws IOException {
+        byte[] bytes = (data + lineEnding).getBytes(StandardCharsets.ISO_8859_1);
+        if (bytes.length > bufferSize) {
+            throw new IOException("Line too long to send: " + data);
+        }
+        synchronized (writeBuffer) {
+            while (true) {
+                if (error != null) {
+                    throw error;
+                }
+                if (closed || key == null) {
+                    throw new IOException("Not connected to " + getConnectionName());
+                }
+                if (writeBuffer.remaining() >= bytes.length) {
+                    break;
+                }
+                try {
+                    writeBuffer.wait();
+                }
+                catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            boolean flushPending = writeBuffer.position() > 0;
+            writeBuffer.put(bytes);
+            if (flushPending) {
+                // The selector thread has not flushed the previous lines yet and will take this
+                // one with them.
+                return;
+            }
+        }
+        SelectionKey key = this.key;
+        selector.execute(() -> {
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    /**
+     * Called on the selector thread when the socket can be read or written.
+     */
+    @Override
+    public void ready(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key);
+            }
+        }
+        catch (IOException e) {
+            fail(key, e);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        readBuffer.clear();
+        int count = ((SocketChannel) key.channel()).read(readBuffer);
+        if (count < 0) {
+            throw new IOException("Connection closed by " + getConnectionName());
+        }
+        readBuffer.flip();
+        lineReader.put(readBuffer);
+        LineListener lineListener = this.lineListener;
+        String line;
+        while ((line = lineReader.nextLine()) != null) {
+            if (lineListener != null) {
+                lineListener.lineReceived(line);
+            }
+            else {
+                lines.offer(line);
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.flip();
+            ((SocketChannel) key.channel()).write(writeBuffer);
+            writeBuffer.compact();
+            if (writeBuffer.position() == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            writeBuffer.notifyAll();
+        }
+    }
+
+    private void fail(SelectionKey key, IOException e) {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException ex) {
+            // Already failed, nothing more to do.
+        }
+        if (!closed) {
+            error = e;
+            if (lineListener != null) {
+                // Nothing is reading, so this is the only place the failure is seen until the
+                // next write.
+                Logger.error("Read error", e);
+            }
+        }
+        synchronized (writeBuffer) {
+            writeBuffer.notifyAll();
+        }
+    }
+
+    public LineListener getLineListener() {
+        return lineListener;
+    }
+
+    /**
+     * Has the lines received handed to the listener instead of being queued for readLine().
+     */
+    public void setLineListener(LineListener lineListener) {
+        this.lineListener = lineListener;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+}
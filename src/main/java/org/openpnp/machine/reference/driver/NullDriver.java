@@ -21,6 +21,7 @@ package org.openpnp.machine.reference.driver;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -39,6 +40,7 @@ import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 
@@ -53,10 +55,26 @@ public class NullDriver implements ReferenceDriver {
     @Attribute(required = false)
     private double feedRateMmPerMinute = 5000;
 
+    /**
+     * The real time slept per unit of simulated machine time while the driver is enabled: 1 runs
+     * in real time, 0.1 ten times faster and 0 without sleeping. See SimulationClock.
+     */
+    @Attribute(required = false)
+    private double simulationTimeScale = 1.0;
+
+    /**
+     * Time moves with the head's MotionTimeModel, accelerating and decelerating, rather than at a
+     * constant feedRateMmPerMinute.
+     */
+    @Attribute(required = false)
+    private boolean useMotionTimeModel = false;
+
     private HashMap<Head, Location> headLocations = new HashMap<>();
 
     private boolean enabled;
 
+    private MotionQueue motionQueue = new MotionQueue("NullDriver Motion");
+
     /**
      * Gets the Location object being tracked for a specific Head. This is the absolute coordinates
      * of a virtual Head on the machine.
@@ -80,6 +98,7 @@ public class NullDriver implements ReferenceDriver {
     @Override
     public void home(ReferenceHead head) throws Exception {
         Logger.debug("home()");
+        waitForMotionComplete();
         checkEnabled();
         setHeadLocation(head, getHeadLocation(head).derive(0.0, 0.0, 0.0, 0.0));
     }
@@ -103,6 +122,27 @@ public class NullDriver implements ReferenceDriver {
     public void moveTo(ReferenceHeadMountable hm, Location location, double speed)
             throws Exception {
         Logger.debug("moveTo({}, {}, {})", hm, location, speed);
+        waitForMotionComplete();
+        doMoveTo(hm, location, speed);
+    }
+
+    /**
+     * Queues the move to be simulated on the motion thread. See ReferenceDriver.moveToAsync().
+     */
+    @Override
+    public CompletableFuture<Void> moveToAsync(ReferenceHeadMountable hm, Location location,
+            double speed) {
+        Logger.debug("moveToAsync({}, {}, {})", hm, location, speed);
+        return motionQueue.submit(() -> doMoveTo(hm, location, speed));
+    }
+
+    @Override
+    public void waitForMotionComplete() throws Exception {
+        motionQueue.await();
+    }
+
+    protected void doMoveTo(ReferenceHeadMountable hm, Location location, double speed)
+            throws Exception {
         checkEnabled();
 
         // Subtract the offsets from the incoming Location. This converts the
@@ -145,6 +185,12 @@ public class NullDriver implements ReferenceDriver {
      */
     protected void simulateMovement(ReferenceHeadMountable hm, Location location, Location hl,
             double speed) throws Exception {
+        if (useMotionTimeModel && hm.getHead() instanceof ReferenceHead) {
+            double seconds = ((ReferenceHead) hm.getHead()).getMoveTime(hl, location, speed);
+            simulateMovement(hm, location, hl, Math.round(seconds * 1000));
+            return;
+        }
+
         double x = hl.getX();
         double y = hl.getY();
         double z = hl.getZ();
@@ -209,7 +255,7 @@ public class NullDriver implements ReferenceDriver {
                     .fireMachineHeadActivity(hm.getHead());
 
             try {
-                Thread.sleep(100);
+                SimulationClock.sleep(100);
             }
             catch (Exception e) {
 
@@ -221,44 +267,87 @@ public class NullDriver implements ReferenceDriver {
         }
     }
 
+    /**
+     * Simulates a movement that takes the given time, moving the head along the line in steps.
+     */
+    protected void simulateMovement(ReferenceHeadMountable hm, Location location, Location hl,
+            long durationMillis) throws Exception {
+        double x1 = hl.getX();
+        double y1 = hl.getY();
+        double z1 = hl.getZ();
+        double c1 = hl.getRotation();
+        double x2 = Double.isNaN(location.getX()) ? x1 : location.getX();
+        double y2 = Double.isNaN(location.getY()) ? y1 : location.getY();
+        double z2 = Double.isNaN(location.getZ()) ? z1 : location.getZ();
+        double c2 = Double.isNaN(location.getRotation()) ? c1 : location.getRotation();
+
+        c2 = c2 % 360.0;
+
+        long elapsedMillis = 0;
+        while (elapsedMillis < durationMillis) {
+            long tickMillis = Math.min(100, durationMillis - elapsedMillis);
+            try {
+                SimulationClock.sleep(tickMillis);
+            }
+            catch (Exception e) {
+
+            }
+            elapsedMillis += tickMillis;
+
+            double f = (double) elapsedMillis / durationMillis;
+            hl = hl.derive(x1 + (x2 - x1) * f, y1 + (y2 - y1) * f, z1 + (z2 - z1) * f,
+                    c1 + (c2 - c1) * f);
+            setHeadLocation(hm.getHead(), hl);
+
+            // Provide live updates to the Machine as the move progresses.
+            ((ReferenceMachine) Configuration.get().getMachine())
+                    .fireMachineHeadActivity(hm.getHead());
+        }
+    }
+
     @Override
     public void pick(ReferenceNozzle nozzle) throws Exception {
         Logger.debug("pick({})", nozzle);
+        waitForMotionComplete();
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
     @Override
     public void place(ReferenceNozzle nozzle) throws Exception {
         Logger.debug("place({})", nozzle);
+        waitForMotionComplete();
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
     @Override
     public void actuate(ReferenceActuator actuator, double value) throws Exception {
         Logger.debug("actuate({}, {})", actuator, value);
+        waitForMotionComplete();
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
     @Override
     public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
         Logger.debug("actuate({}, {})", actuator, on);
+        waitForMotionComplete();
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
     
     @Override
     public String actuatorRead(ReferenceActuator actuator) throws Exception {
+        waitForMotionComplete();
         return Math.random() + "";
     }
 
@@ -267,14 +356,28 @@ public class NullDriver implements ReferenceDriver {
             Location endLocation, long dispenseTimeMilliseconds) throws Exception {
         Logger.debug("dispense({}, {}, {}, {})",
                 new Object[] {dispenser, startLocation, endLocation, dispenseTimeMilliseconds});
+        waitForMotionComplete();
         checkEnabled();
-        Thread.sleep(dispenseTimeMilliseconds);
+        SimulationClock.sleep(dispenseTimeMilliseconds);
     }
 
     @Override
     public void setEnabled(boolean enabled) throws Exception {
         Logger.debug("setEnabled({})", enabled);
+        try {
+            waitForMotionComplete();
+        }
+        catch (Exception e) {
+            // A failed move must not keep the machine from being disabled.
+            if (enabled) {
+                throw e;
+            }
+            Logger.warn(e);
+        }
         this.enabled = enabled;
+        // Only this driver's simulated waits may be shortened, not those of a real machine the
+        // configuration is switched to.
+        SimulationClock.setTimeScale(enabled ? simulationTimeScale : 1.0);
     }
 
     @Override
@@ -321,8 +424,27 @@ public class NullDriver implements ReferenceDriver {
         this.feedRateMmPerMinute = feedRateMmPerMinute;
     }
 
+    public boolean isUseMotionTimeModel() {
+        return useMotionTimeModel;
+    }
+
+    public void setUseMotionTimeModel(boolean useMotionTimeModel) {
+        this.useMotionTimeModel = useMotionTimeModel;
+    }
+
+    public double getSimulationTimeScale() {
+        return simulationTimeScale;
+    }
+
+    public void setSimulationTimeScale(double simulationTimeScale) {
+        this.simulationTimeScale = simulationTimeScale;
+        if (enabled) {
+            SimulationClock.setTimeScale(simulationTimeScale);
+        }
+    }
+
     @Override
     public void close() throws IOException {
-
+        motionQueue.shutdown();
     }
 }
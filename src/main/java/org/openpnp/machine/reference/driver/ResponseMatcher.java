@@ -0,0 +1,84 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A response regex that has been compiled once. Regexes that only test for a literal line, such
+ * as "^ok$", or a literal prefix, such as "^ok.*", are matched with String methods instead of the
+ * regex engine, since that is what most controllers send for every line they accept.
+ */
+public class ResponseMatcher {
+    private static final Pattern metaCharacters = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private final String regex;
+    private final Pattern pattern;
+    private final String literal;
+    private final boolean literalPrefix;
+
+    public ResponseMatcher(String regex) {
+        this.regex = regex;
+        this.pattern = Pattern.compile(regex);
+
+        String s = regex;
+        if (s.startsWith("^")) {
+            s = s.substring(1);
+        }
+        if (s.endsWith("$") && !s.endsWith("\\$")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        boolean prefix = false;
+        if (s.endsWith(".*") && !s.endsWith("\\.*")) {
+            s = s.substring(0, s.length() - 2);
+            prefix = true;
+        }
+        if (metaCharacters.matcher(s).find()) {
+            this.literal = null;
+            this.literalPrefix = false;
+        }
+        else {
+            this.literal = s;
+            this.literalPrefix = prefix;
+        }
+    }
+
+    /**
+     * Returns true if the whole line matches the regex, as String.matches() would.
+     */
+    public boolean matches(String line) {
+        if (literal != null) {
+            if (!literalPrefix) {
+                return line.equals(literal);
+            }
+            if (!line.startsWith(literal)) {
+                return false;
+            }
+            // . does not match line terminators, so neither may the rest of the line.
+            for (int i = literal.length(); i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+                        || c == '\u2029') {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return pattern.matcher(line).matches();
+    }
+
+    /**
+     * Returns a Matcher for the line, for callers that need the groups.
+     */
+    public Matcher matcher(String line) {
+        return pattern.matcher(line);
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+}
@@ -101,6 +101,7 @@ public class SerialPortCommunications implements ReferenceDriverCommunications {
 
     private SerialPort serialPort;
     private SerialInputStream input;
+    private LineReader lineReader;
     private OutputStream output;
 
     public synchronized void connect() throws Exception {
@@ -111,6 +112,7 @@ public class SerialPortCommunications implements ReferenceDriverCommunications {
         serialPort.setFlowControlMode(flowControl.mask);
         input = new SerialInputStream(serialPort);
         input.setTimeout(500);
+        lineReader = new LineReader(input::readAvailable);
         output = new SerialOutputStream(serialPort);
     }
 
@@ -118,6 +120,7 @@ public class SerialPortCommunications implements ReferenceDriverCommunications {
         if (serialPort != null && serialPort.isOpened()) {
             serialPort.closePort();
             input = null;
+            lineReader = null;
             output = null;
             serialPort = null;
         }
@@ -159,28 +162,14 @@ public class SerialPortCommunications implements ReferenceDriverCommunications {
      * @throws IOException
      */
     public String readLine() throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
-        while (true) {
-            try {
-                int ch = input.read();
-                if (ch == -1) {
-                    return null;
-                }
-                else if (ch == '\n' || ch == '\r') {
-                    if (line.length() > 0) {
-                        return line.toString();
-                    }
-                }
-                else {
-                    line.append((char) ch);
-                }
-            }
-            catch (IOException ex) {
-                if (ex.getCause() instanceof SerialPortTimeoutException) {
-                    throw new TimeoutException(ex.getMessage());
-                }
-                throw ex;
+        try {
+            return lineReader.readLine();
+        }
+        catch (IOException ex) {
+            if (ex.getCause() instanceof SerialPortTimeoutException) {
+                throw new TimeoutException(ex.getMessage());
             }
+            throw ex;
         }
     }
 
@@ -456,6 +445,42 @@ public class SerialPortCommunications implements ReferenceDriverCommunications {
             }
         }
 
+        /**
+         * Blocks until at least one byte is available, an error occurs, or the default timeout is
+         * hit (if specified), then reads all of the bytes that are available, up to length. This
+         * reads a whole burst of data with two calls to the port instead of one call per byte.
+         * 
+         * @param buf The buffer to fill.
+         * @param offset Offset in the buffer to start saving data.
+         * @param length The maximum number of bytes to read.
+         * @return The number of bytes read.
+         * @throws IOException On error or timeout.
+         */
+        public int readAvailable(byte[] buf, int offset, int length) throws IOException {
+            if (length < 1) {
+                return 0;
+            }
+            try {
+                int count = 0;
+                int available = serialPort.getInputBufferBytesCount();
+                if (available < 1) {
+                    buf[offset] = (byte) read();
+                    count = 1;
+                    available = serialPort.getInputBufferBytesCount();
+                }
+                available = Math.min(available, length - count);
+                if (available > 0) {
+                    byte[] readBuf = serialPort.readBytes(available);
+                    System.arraycopy(readBuf, 0, buf, offset + count, readBuf.length);
+                    count += readBuf.length;
+                }
+                return count;
+            }
+            catch (SerialPortException e) {
+                throw new IOException(e);
+            }
+        }
+
         @Override
         public int available() throws IOException {
             int ret;
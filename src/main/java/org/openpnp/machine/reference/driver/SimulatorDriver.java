@@ -41,6 +41,7 @@ import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 
@@ -160,7 +161,7 @@ public class SimulatorDriver implements ReferenceDriver {
         Logger.debug("pick({})", nozzle);
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
@@ -169,7 +170,7 @@ public class SimulatorDriver implements ReferenceDriver {
         Logger.debug("place({})", nozzle);
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
@@ -178,7 +179,7 @@ public class SimulatorDriver implements ReferenceDriver {
         Logger.debug("actuate({}, {})", actuator, value);
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
@@ -187,7 +188,7 @@ public class SimulatorDriver implements ReferenceDriver {
         Logger.debug("actuate({}, {})", actuator, on);
         checkEnabled();
         if (feedRateMmPerMinute > 0) {
-            Thread.sleep(500);
+            SimulationClock.sleep(500);
         }
     }
 
@@ -1,9 +1,8 @@
 package org.openpnp.machine.reference.driver;
 
-import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.concurrent.TimeoutException;
@@ -26,13 +25,15 @@ public class TcpCommunications implements ReferenceDriverCommunications {
 
 
     protected Socket clientSocket;
-    protected BufferedReader input;
+    protected InputStream input;
+    protected LineReader lineReader;
     protected DataOutputStream output;
 
     public synchronized void connect() throws Exception {
         disconnect();
         clientSocket = new Socket(ipAddress,port);
-        input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        input = clientSocket.getInputStream();
+        lineReader = new LineReader(input::read);
         output = new DataOutputStream(clientSocket.getOutputStream());
     }
 
@@ -40,6 +41,7 @@ public class TcpCommunications implements ReferenceDriverCommunications {
         if (clientSocket != null && clientSocket.isBound()) {
             clientSocket.close();
             input = null;
+            lineReader = null;
             output = null;
             clientSocket = null;
         }
@@ -58,28 +60,17 @@ public class TcpCommunications implements ReferenceDriverCommunications {
      * @throws IOException
      */
     public String readLine() throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
-        while (true) {
-            try {
-                int ch = input.read();
-                if (ch == -1) {
-                    return null;
-                }
-                else if (ch == '\n' || ch == '\r') {
-                    if (line.length() > 0) {
-                        return line.toString();
-                    }
-                }
-                else {
-                    line.append((char) ch);
-                }
-            }
-            catch (IOException ex) {
-                if (ex.getCause() instanceof SocketTimeoutException) {
-                    throw new TimeoutException(ex.getMessage());
-                }
-                throw ex;
+        try {
+            return lineReader.readLine();
+        }
+        catch (SocketTimeoutException ex) {
+            throw new TimeoutException(ex.getMessage());
+        }
+        catch (IOException ex) {
+            if (ex.getCause() instanceof SocketTimeoutException) {
+                throw new TimeoutException(ex.getMessage());
             }
+            throw ex;
         }
     }
 
@@ -79,16 +79,24 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
         radioTCP.setActionCommand("tcp");
         radioTCP.addActionListener(this);
 
+        JRadioButton radioTCPNio = new JRadioButton("TCP (Non-Blocking)");
+        radioTCPNio.setMnemonic(KeyEvent.VK_N);
+        radioTCPNio.setActionCommand("tcp-nio");
+        radioTCPNio.setToolTipText("TCP with the IO for all controllers done on one shared thread.");
+        radioTCPNio.addActionListener(this);
+
         commsMethodButtonGroup = new ButtonGroup();
         commsMethodButtonGroup.add(radioSerial);
         commsMethodButtonGroup.add(radioTCP);
+        commsMethodButtonGroup.add(radioTCPNio);
 
         panelComms.add(radioSerial, "4, 2, fill, default");
         panelComms.add(radioTCP, "4, 4, fill, default");
+        panelComms.add(radioTCPNio, "4, 6, fill, default");
 
         commsMethod = new JTextField();
         commsMethod.setVisible(false);
-        panelComms.add(commsMethod, "4, 6, fill, default");
+        panelComms.add(commsMethod, "4, 8, fill, default");
 
 
         //Serial config code
@@ -248,6 +256,7 @@ public class AbstractReferenceDriverConfigurationWizard extends AbstractConfigur
         //Finally, click a radio button to initialise enabled/disabled setting
         if(driver.getCommunicationsType().equals("serial")){ radioSerial.doClick(); }
         if(driver.getCommunicationsType().equals("tcp")) { radioTCP.doClick(); }
+        if(driver.getCommunicationsType().equals("tcp-nio")) { radioTCPNio.doClick(); }
     }
 
     private void setPanelEnabled(JPanel panel, Boolean isEnabled) {
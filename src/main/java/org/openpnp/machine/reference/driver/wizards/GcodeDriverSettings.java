@@ -73,6 +73,10 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
         
         JLabel lblUnits = new JLabel("Units");
@@ -142,6 +146,26 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         
         visualHoming = new JCheckBox("");
         settingsPanel.add(visualHoming, "8, 10");
+        
+        JLabel lblStreaming = new JLabel("Streaming");
+        settingsPanel.add(lblStreaming, "2, 12, right, default");
+        
+        streaming = new JCheckBox("");
+        settingsPanel.add(streaming, "4, 12");
+        
+        JLabel lblStreamingMaxLines = new JLabel("Streaming Max Lines");
+        settingsPanel.add(lblStreamingMaxLines, "6, 12, right, default");
+        
+        streamingMaxLinesTf = new JTextField();
+        settingsPanel.add(streamingMaxLinesTf, "8, 12, fill, default");
+        streamingMaxLinesTf.setColumns(5);
+        
+        JLabel lblStreamingMaxBytes = new JLabel("Streaming Max Bytes");
+        settingsPanel.add(lblStreamingMaxBytes, "6, 14, right, default");
+        
+        streamingMaxBytesTf = new JTextField();
+        settingsPanel.add(streamingMaxBytesTf, "8, 14, fill, default");
+        streamingMaxBytesTf.setColumns(5);
     }
 
     @Override
@@ -161,6 +185,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         addWrappedBinding(driver, "connectWaitTimeMilliseconds", connectWaitTimeTf, "text", intConverter);
         addWrappedBinding(driver, "name", driverName, "text");
         addWrappedBinding(driver, "visualHomingEnabled", visualHoming, "selected");
+        addWrappedBinding(driver, "streamingEnabled", streaming, "selected");
+        addWrappedBinding(driver, "streamingMaxLines", streamingMaxLinesTf, "text", intConverter);
+        addWrappedBinding(driver, "streamingMaxBytes", streamingMaxBytesTf, "text", intConverter);
         
         ComponentDecorators.decorateWithAutoSelect(maxFeedRateTf);
         ComponentDecorators.decorateWithAutoSelect(backlashOffsetXTf);
@@ -170,6 +197,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(commandTimeoutTf);
         ComponentDecorators.decorateWithAutoSelect(connectWaitTimeTf);
         ComponentDecorators.decorateWithAutoSelect(driverName);
+        ComponentDecorators.decorateWithAutoSelect(streamingMaxLinesTf);
+        ComponentDecorators.decorateWithAutoSelect(streamingMaxBytesTf);
     }
 
     public final Action exportProfileAction = new AbstractAction() {
@@ -308,6 +337,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
     private JComboBox unitsCb;
     private JTextField driverName;
     private JCheckBox visualHoming;
+    private JCheckBox streaming;
+    private JTextField streamingMaxLinesTf;
+    private JTextField streamingMaxBytesTf;
 
     static class HeadMountableItem {
         private HeadMountable hm;
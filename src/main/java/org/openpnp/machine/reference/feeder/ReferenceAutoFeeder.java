@@ -29,6 +29,7 @@ import org.openpnp.model.Location;
 import org.openpnp.spi.Actuator;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 
@@ -56,13 +57,56 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
     @Attribute(required=false)
     protected double postPickActuatorValue;
 
+    @Attribute(required=false)
+    protected boolean preFeed;
+
+    @Attribute(required=false)
+    protected long feedTimeMilliseconds;
+
+    /**
+     * True if a part was fed by prepareFeed() and has not been picked yet.
+     */
+    protected boolean prepared;
+
+    /**
+     * The time at which the last part fed is ready to be picked, in
+     * SimulationClock.currentTimeMillis() machine time.
+     */
+    protected long readyTime;
+
     @Override
     public Location getPickLocation() throws Exception {
         return location;
     }
 
+    /**
+     * If preFeed is set, fires the feed actuator now, so that the part is ready by the time the
+     * job processor calls feed(). Does nothing if a part has been prepared already.
+     */
+    @Override
+    public void prepareFeed(Nozzle nozzle) throws Exception {
+        if (!preFeed || prepared) {
+            return;
+        }
+        actuateFeed(nozzle);
+        prepared = true;
+        Logger.debug("{}.prepareFeed() ready in {} ms", getName(), feedTimeMilliseconds);
+    }
+
+    /**
+     * Fires the feed actuator unless prepareFeed() already has, then waits until the part is
+     * ready.
+     */
     @Override
     public void feed(Nozzle nozzle) throws Exception {
+        if (!prepared) {
+            actuateFeed(nozzle);
+        }
+        prepared = false;
+        SimulationClock.sleep(readyTime - SimulationClock.currentTimeMillis());
+    }
+
+    private void actuateFeed(Nozzle nozzle) throws Exception {
         if (actuatorName == null || actuatorName.equals("")) {
             Logger.warn("No actuatorName specified for feeder {}.", getName());
             return;
@@ -80,6 +124,7 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         else {
             actuator.actuate(actuatorValue);
         }
+        readyTime = SimulationClock.currentTimeMillis() + feedTimeMilliseconds;
     }
     
     @Override
@@ -150,6 +195,22 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         this.postPickActuatorValue = postPickActuatorValue;
     }
 
+    public boolean isPreFeed() {
+        return preFeed;
+    }
+
+    public void setPreFeed(boolean preFeed) {
+        this.preFeed = preFeed;
+    }
+
+    public long getFeedTimeMilliseconds() {
+        return feedTimeMilliseconds;
+    }
+
+    public void setFeedTimeMilliseconds(long feedTimeMilliseconds) {
+        this.feedTimeMilliseconds = feedTimeMilliseconds;
+    }
+
     @Override
     public Wizard getConfigurationWizard() {
         return new ReferenceAutoFeederConfigurationWizard(this);
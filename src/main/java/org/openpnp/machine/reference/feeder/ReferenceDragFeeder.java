@@ -44,6 +44,7 @@ import org.openpnp.spi.Head;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.VisionProvider;
+import org.openpnp.util.SimulationClock;
 import org.openpnp.util.Utils2D;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
@@ -280,7 +281,7 @@ public class ReferenceDragFeeder extends ReferenceFeeder {
         // head.moveTo(head.getX(), head.getY(), z, head.getC());
 
         // Settle the camera
-        Thread.sleep(camera.getSettleTimeMs());
+        SimulationClock.sleep(camera.getSettleTimeMs());
 
         VisionProvider visionProvider = camera.getVisionProvider();
 
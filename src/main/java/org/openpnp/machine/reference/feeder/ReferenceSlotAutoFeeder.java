@@ -88,6 +88,14 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
         super.feed(nozzle);
     }
 
+    @Override
+    public void prepareFeed(Nozzle nozzle) throws Exception {
+        if (getFeeder() == null) {
+            return;
+        }
+        super.prepareFeed(nozzle);
+    }
+
     @Override
     public void postPick(Nozzle nozzle) throws Exception {
         if (getFeeder() == null) {
@@ -129,6 +137,8 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
             throw new Exception("Bank is required.");
         }
         this.bank = bank;
+        // The slot holds the new bank's feeder now, which has nothing prepared.
+        prepared = false;
     }
 
     public Feeder getFeeder() {
@@ -143,6 +153,8 @@ public class ReferenceSlotAutoFeeder extends ReferenceAutoFeeder {
           }
         }
         getBank().setFeeder(this, feeder);
+        // A part prepared by the old feeder is not in the new one.
+        prepared = false;
     }
     
     public static synchronized IdentifiableList<Bank> getBanks() {
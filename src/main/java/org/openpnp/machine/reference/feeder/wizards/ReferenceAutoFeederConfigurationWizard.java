@@ -30,6 +30,7 @@ import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.DoubleConverter;
+import org.openpnp.gui.support.LongConverter;
 import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
 import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder.ActuatorType;
 import org.openpnp.model.Configuration;
@@ -49,6 +50,8 @@ public class ReferenceAutoFeederConfigurationWizard
     private JTextField postPickActuatorValue;
     private JComboBox actuatorType;
     private JComboBox postPickActuatorType;
+    private JTextField feedTime;
+    private JCheckBox preFeed;
 
     public ReferenceAutoFeederConfigurationWizard(ReferenceAutoFeeder feeder) {
         super(feeder);
@@ -70,6 +73,10 @@ public class ReferenceAutoFeederConfigurationWizard
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
@@ -119,6 +126,23 @@ public class ReferenceAutoFeederConfigurationWizard
         
         JLabel label = new JLabel("For Boolean: 1 = True, 0 = False");
         panelActuator.add(label, "10, 6");
+
+        JLabel lblFeedTime = new JLabel("Feed Time (ms)");
+        lblFeedTime.setToolTipText(
+                "How long the feeder takes to advance after the feed actuator fires.");
+        panelActuator.add(lblFeedTime, "2, 8, right, default");
+
+        feedTime = new JTextField();
+        feedTime.setColumns(10);
+        panelActuator.add(feedTime, "4, 8");
+
+        JLabel lblPreFeed = new JLabel("Pre-Feed");
+        lblPreFeed.setToolTipText("Fire the feed actuator for the next part while the previous "
+                + "cycle is still aligning and placing.");
+        panelActuator.add(lblPreFeed, "2, 10, right, default");
+
+        preFeed = new JCheckBox("");
+        panelActuator.add(preFeed, "4, 10");
     }
 
     @Override
@@ -135,10 +159,14 @@ public class ReferenceAutoFeederConfigurationWizard
         addWrappedBinding(feeder, "postPickActuatorName", postPickActuatorName, "text");
         addWrappedBinding(feeder, "postPickActuatorType", postPickActuatorType, "selectedItem");
         addWrappedBinding(feeder, "postPickActuatorValue", postPickActuatorValue, "text", doubleConverter);
+
+        addWrappedBinding(feeder, "feedTimeMilliseconds", feedTime, "text", new LongConverter());
+        addWrappedBinding(feeder, "preFeed", preFeed, "selected");
         
         ComponentDecorators.decorateWithAutoSelect(actuatorName);
         ComponentDecorators.decorateWithAutoSelect(actuatorValue);
         ComponentDecorators.decorateWithAutoSelect(postPickActuatorName);
         ComponentDecorators.decorateWithAutoSelect(postPickActuatorValue);
+        ComponentDecorators.decorateWithAutoSelect(feedTime);
     }
 }
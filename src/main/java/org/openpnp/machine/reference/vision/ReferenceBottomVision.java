@@ -1,7 +1,21 @@
 package org.openpnp.machine.reference.vision;
 
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -14,6 +28,7 @@ import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionConfigurationWizard;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionPartConfigurationWizard;
 import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Footprint;
 import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
@@ -27,7 +42,9 @@ import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -35,7 +52,14 @@ import org.simpleframework.xml.ElementMap;
 import org.simpleframework.xml.Root;
 
 public class ReferenceBottomVision implements PartAlignment {
-
+    /**
+     * Runs the pipelines of findOffsetsAsync().
+     */
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ReferenceBottomVision");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Element(required = false)
     protected CvPipeline pipeline = createDefaultPipeline();
@@ -47,6 +71,27 @@ public class ReferenceBottomVision implements PartAlignment {
     @Attribute(required = false)
     protected boolean preRotate = false;
 
+    @Attribute(required = false)
+    protected boolean preRotateSingleCapture = false;
+
+    /**
+     * With preRotateSingleCapture set, the largest angle error, in degrees, that is corrected
+     * without capturing the part again.
+     */
+    @Attribute(required = false)
+    protected double preRotateMaxSingleCaptureAngle = 5.0;
+
+    @Attribute(required = false)
+    protected boolean multiNozzle = false;
+
+    /**
+     * Without pre-rotate, captures the part at the rotation it will be placed at instead of at 0,
+     * so that the nozzle turns to the placement rotation while it travels to the camera and only
+     * the small correction is left for the travel to the board.
+     */
+    @Attribute(required = false)
+    protected boolean rotateWhileTravelling = false;
+
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = new HashMap<>();
 
@@ -73,12 +118,267 @@ public class ReferenceBottomVision implements PartAlignment {
                     partSettings);
         }
         else {
-            return findOffsetsPostRotate(part, boardLocation, placementLocation, nozzle, camera,
-                    partSettings);
+            return findOffsetsPostRotate(part, nozzle, camera, partSettings,
+                    getCaptureRotation(boardLocation, placementLocation));
+        }
+    }
+
+    /**
+     * Captures the image of the part and returns, leaving a copy of the pipeline to process it on
+     * another thread. Pre-rotate moves the nozzle in between its two captures, so it isn't
+     * overlapped, and neither is a pipeline that doesn't start with an ImageCapture stage.
+     */
+    @Override
+    public Future<PartAlignmentOffset> findOffsetsAsync(Part part, BoardLocation boardLocation,
+            Location placementLocation, Nozzle nozzle) throws Exception {
+        PartSettings partSettings = getPartSettings(part);
+        ImageCapture imageCapture = getImageCapture(partSettings);
+        if (!isEnabled() || preRotate || imageCapture == null) {
+            return CompletableFuture
+                    .completedFuture(findOffsets(part, boardLocation, placementLocation, nozzle));
+        }
+
+        if (part == null || nozzle.getPart() == null) {
+            throw new Exception("No part on nozzle.");
+        }
+        if (part != nozzle.getPart()) {
+            throw new Exception("Part mismatch with part on nozzle.");
+        }
+
+        // The part's pipeline is cloned since the same part may be on more than one nozzle.
+        CvPipeline pipeline = partSettings.getPipeline().clone();
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        double captureRotation = getCaptureRotation(boardLocation, placementLocation);
+        moveToPostRotateStartLocation(part, nozzle, camera, captureRotation);
+        BufferedImage image = capture(camera, imageCapture.isSettleFirst());
+        pipeline.setProperty(ImageCapture.CAPTURED_IMAGE_PROPERTY, image);
+        return submit(() -> {
+            try (CvPipeline p = pipeline) {
+                return processPostRotate(p, part, nozzle, camera, captureRotation);
+            }
+        });
+    }
+
+    /**
+     * With multiNozzle set, aligns the parts from a single frame if the camera can see all of
+     * their nozzles at once. The head is moved so that the middle of the nozzles is over the
+     * camera, and each part's pipeline processes the square of the frame around its own nozzle,
+     * in parallel. Otherwise the parts are aligned one after the other.
+     */
+    @Override
+    public List<Future<PartAlignmentOffset>> findOffsetsAsync(
+            List<PartAlignmentRequest> requests) {
+        if (multiNozzle && requests.size() > 1) {
+            try {
+                List<Future<PartAlignmentOffset>> futures = findOffsetsMultiNozzle(requests);
+                if (futures != null) {
+                    return futures;
+                }
+            }
+            catch (Exception e) {
+                CompletableFuture<PartAlignmentOffset> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return Collections.singletonList(future);
+            }
+        }
+        return PartAlignment.super.findOffsetsAsync(requests);
+    }
+
+    /**
+     * Returns null if the parts can't be aligned from one frame.
+     */
+    private List<Future<PartAlignmentOffset>> findOffsetsMultiNozzle(
+            List<PartAlignmentRequest> requests) throws Exception {
+        if (!isEnabled() || preRotate) {
+            return null;
+        }
+        int count = requests.size();
+        Nozzle first = requests.get(0).getNozzle();
+        boolean settleFirst = false;
+        for (PartAlignmentRequest request : requests) {
+            PartSettings partSettings = getPartSettings(request.getPart());
+            ImageCapture imageCapture = getImageCapture(partSettings);
+            if (imageCapture == null || request.getPart() == null
+                    || request.getPart() != request.getNozzle().getPart()
+                    || request.getNozzle().getHead() != first.getHead()) {
+                return null;
+            }
+            settleFirst |= imageCapture.isSettleFirst();
+        }
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        LengthUnit units = unitsPerPixel.getUnits();
+
+        // Where each nozzle will be relative to the center of the camera.
+        Location[] nozzleOffsets = new Location[count];
+        Location firstLocation = first.getLocation().convertToUnits(units);
+        double middleX = 0;
+        double middleY = 0;
+        for (int i = 0; i < count; i++) {
+            Location location = requests.get(i).getNozzle().getLocation().convertToUnits(units);
+            nozzleOffsets[i] = new Location(units, location.getX() - firstLocation.getX(),
+                    location.getY() - firstLocation.getY(), 0, 0);
+            middleX += nozzleOffsets[i].getX() / count;
+            middleY += nozzleOffsets[i].getY() / count;
+        }
+        for (int i = 0; i < count; i++) {
+            nozzleOffsets[i] = nozzleOffsets[i].subtract(new Location(units, middleX, middleY, 0, 0));
+        }
+
+        // Each nozzle gets a square of the frame, as wide as the closest two nozzles are apart so
+        // that the squares don't overlap.
+        double size = Math.min(camera.getWidth(), camera.getHeight());
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double dx = (nozzleOffsets[i].getX() - nozzleOffsets[j].getX()) / unitsPerPixel.getX();
+                double dy = (nozzleOffsets[i].getY() - nozzleOffsets[j].getY()) / unitsPerPixel.getY();
+                size = Math.min(size, Math.max(Math.abs(dx), Math.abs(dy)));
+            }
+        }
+        if (size < 1) {
+            return null;
+        }
+        // A part that doesn't fit in its nozzle's square could reach into the next one, where
+        // that part's pipeline might find it instead. A part captured at an angle takes up more
+        // of the square.
+        double[] captureRotations = new double[count];
+        for (int i = 0; i < count; i++) {
+            PartAlignmentRequest request = requests.get(i);
+            captureRotations[i] = getCaptureRotation(request.getBoardLocation(),
+                    request.getPlacementLocation());
+            if (!fitsSquare(request.getPart(), captureRotations[i], camera, size)) {
+                Logger.debug("{} may not fit in a {} pixel square, aligning nozzles one by one.",
+                        request.getPart().getId(), size);
+                return null;
+            }
+        }
+        Rectangle frame = new Rectangle(camera.getWidth(), camera.getHeight());
+        Rectangle[] regions = new Rectangle[count];
+        for (int i = 0; i < count; i++) {
+            double x = camera.getWidth() / 2. + nozzleOffsets[i].getX() / unitsPerPixel.getX();
+            double y = camera.getHeight() / 2. - nozzleOffsets[i].getY() / unitsPerPixel.getY();
+            regions[i] = new Rectangle((int) Math.round(x - size / 2),
+                    (int) Math.round(y - size / 2), (int) size, (int) size);
+            if (!frame.contains(regions[i])) {
+                return null;
+            }
+        }
+
+        // The part's pipelines are cloned since the same part may be on more than one nozzle.
+        CvPipeline[] pipelines = new CvPipeline[count];
+        for (int i = 0; i < count; i++) {
+            pipelines[i] = getPartSettings(requests.get(i).getPart()).getPipeline().clone();
+        }
+
+        // Move the nozzles over the camera, each at its part's height and capture rotation.
+        Location cameraLocation = camera.getLocation().convertToUnits(units);
+        Location[] locations = new Location[count];
+        for (int i = 0; i < count; i++) {
+            Length partHeight = requests.get(i).getPart().getHeight().convertToUnits(units);
+            locations[i] = cameraLocation.add(nozzleOffsets[i])
+                                         .add(new Location(units, 0, 0, partHeight.getValue(), 0))
+                                         .derive(null, null, null, captureRotations[i]);
+        }
+        MovableUtils.moveToLocationAtSafeZ(first, locations[0]);
+        for (int i = 1; i < count; i++) {
+            requests.get(i).getNozzle().moveTo(locations[i]);
+        }
+        // Nozzles that share an axis, such as a Z axis, may not all be able to get there.
+        double tolerance = new Length(0.01, LengthUnit.Millimeters).convertToUnits(units).getValue();
+        for (int i = 0; i < count; i++) {
+            Location location = requests.get(i).getNozzle().getLocation().convertToUnits(units);
+            if (location.getXyzDistanceTo(locations[i]) > tolerance) {
+                Logger.debug("Can't align {} nozzles from one frame.", count);
+                return null;
+            }
+        }
+
+        BufferedImage image = capture(camera, settleFirst);
+
+        List<Future<PartAlignmentOffset>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Part part = requests.get(i).getPart();
+            Nozzle nozzle = requests.get(i).getNozzle();
+            CvPipeline pipeline = pipelines[i];
+            Point origin = regions[i].getLocation();
+            Location nozzleOffset = nozzleOffsets[i];
+            double captureRotation = captureRotations[i];
+            pipeline.setProperty(ImageCapture.CAPTURED_IMAGE_PROPERTY, crop(image, regions[i]));
+            futures.add(submit(() -> {
+                try (CvPipeline p = pipeline) {
+                    return processPostRotate(p, part, nozzle, camera, captureRotation, origin,
+                            nozzleOffset);
+                }
+            }));
         }
+        return futures;
     }
 
-    private static PartAlignmentOffset findOffsetsPreRotate(Part part, BoardLocation boardLocation,
+    /**
+     * Captures an image with the camera, letting it settle first if settleFirst.
+     */
+    protected BufferedImage capture(Camera camera, boolean settleFirst) throws Exception {
+        return settleFirst ? camera.settleAndCapture() : camera.capture();
+    }
+
+    /**
+     * Processes a captured image on another thread.
+     */
+    protected Future<PartAlignmentOffset> submit(Callable<PartAlignmentOffset> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Returns true if the part's footprint, centred on its nozzle and turned by the rotation,
+     * fits in a square of size pixels. A part without a footprint can't be known to fit.
+     */
+    private static boolean fitsSquare(Part part, double rotation, Camera camera, double size) {
+        Footprint footprint = part.getPackage() == null ? null : part.getPackage().getFootprint();
+        if (footprint == null) {
+            return false;
+        }
+        Rectangle2D bounds = AffineTransform.getRotateInstance(Math.toRadians(rotation))
+                .createTransformedShape(footprint.getShape()).getBounds2D();
+        if (bounds.isEmpty()) {
+            return false;
+        }
+        // Centred on the nozzle, the square has to reach the furthest edge on both sides.
+        double width = 2 * Math.max(Math.abs(bounds.getMinX()), Math.abs(bounds.getMaxX()));
+        double height = 2 * Math.max(Math.abs(bounds.getMinY()), Math.abs(bounds.getMaxY()));
+        Location unitsPerPixel = camera.getUnitsPerPixel().convertToUnits(footprint.getUnits());
+        return width / unitsPerPixel.getX() <= size && height / unitsPerPixel.getY() <= size;
+    }
+
+    /**
+     * Returns the pipeline's ImageCapture stage if it is the first stage that is enabled, or
+     * null.
+     */
+    private static ImageCapture getImageCapture(PartSettings partSettings) {
+        if (!partSettings.isEnabled()) {
+            return null;
+        }
+        for (CvStage stage : partSettings.getPipeline().getStages()) {
+            if (stage.isEnabled()) {
+                return stage instanceof ImageCapture ? (ImageCapture) stage : null;
+            }
+        }
+        return null;
+    }
+
+    private static BufferedImage crop(BufferedImage image, Rectangle region) {
+        BufferedImage cropped = new BufferedImage(region.width, region.height,
+                image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB
+                        : image.getType());
+        Graphics2D g = cropped.createGraphics();
+        g.drawImage(image.getSubimage(region.x, region.y, region.width, region.height), 0, 0,
+                null);
+        g.dispose();
+        return cropped;
+    }
+
+    private PartAlignmentOffset findOffsetsPreRotate(Part part, BoardLocation boardLocation,
             Location placementLocation, Nozzle nozzle, Camera camera, PartSettings partSettings)
             throws Exception {
         double angle = placementLocation.getRotation();
@@ -86,6 +386,7 @@ public class ReferenceBottomVision implements PartAlignment {
             angle = Utils2D.calculateFiducialCompensatedBoardPlacementLocation(boardLocation, placementLocation)
                            .getRotation();
         }
+        double placementRotation = angle;
         angle = angleNorm(angle, 180.);
         double placementAngle = angle;
         Location location = camera.getLocation()
@@ -121,6 +422,23 @@ public class ReferenceBottomVision implements PartAlignment {
                 angle += 0.0567 * Math.signum(angle);
             } // rounding
 
+            if (preRotateSingleCapture && Math.abs(angle) <= preRotateMaxSingleCaptureAngle) {
+                // Rotating the nozzle by the correction turns the part's offsets about the nozzle
+                // axis by the same angle, so the centre they will have is worked out from this
+                // capture instead of rotating and capturing again. The nozzle is left to rotate on
+                // its way to the placement: the rotation returned takes the placement rotation to
+                // placementAngle + angle.
+                Logger.debug("Result rect {}", rect);
+                Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y)
+                                              .rotateXy(angle)
+                                              .derive(null, null, null,
+                                                      placementRotation - (placementAngle + angle));
+
+                Logger.debug("Final offsets {}", offsets);
+                displayResult(pipeline, part, offsets, camera);
+                return new PartAlignment.PartAlignmentOffset(offsets, true);
+            }
+
             nozzle.moveTo(new Location(LengthUnit.Millimeters, Double.NaN, Double.NaN, Double.NaN,
                     placementAngle + angle));
 
@@ -136,54 +454,95 @@ public class ReferenceBottomVision implements PartAlignment {
         }
     }
 
-    private static PartAlignmentOffset findOffsetsPostRotate(Part part, BoardLocation boardLocation,
-            Location placementLocation, Nozzle nozzle, Camera camera, PartSettings partSettings)
-            throws Exception {
+    /**
+     * Returns the rotation to capture the part at without pre-rotate: the rotation it will be
+     * placed at with rotateWhileTravelling set, otherwise 0.
+     */
+    private double getCaptureRotation(BoardLocation boardLocation, Location placementLocation) {
+        if (!rotateWhileTravelling || placementLocation == null) {
+            return 0;
+        }
+        if (boardLocation != null) {
+            placementLocation = Utils2D.calculateFiducialCompensatedBoardPlacementLocation(
+                    boardLocation, placementLocation);
+        }
+        return placementLocation.getRotation();
+    }
+
+    private PartAlignmentOffset findOffsetsPostRotate(Part part, Nozzle nozzle,
+            Camera camera, PartSettings partSettings, double captureRotation) throws Exception {
+        moveToPostRotateStartLocation(part, nozzle, camera, captureRotation);
+
+        try (CvPipeline pipeline = partSettings.getPipeline()) {
+            return processPostRotate(pipeline, part, nozzle, camera, captureRotation);
+        }
+    }
+
+    private static void moveToPostRotateStartLocation(Part part, Nozzle nozzle, Camera camera,
+            double captureRotation) throws Exception {
         // Create a location that is the Camera's X, Y, it's Z + part height
-        // and a rotation of 0, unless preRotate is enabled
+        // and the capture rotation
         Location startLocation = camera.getLocation();
         Length partHeight = part.getHeight();
         Location partHeightLocation =
                 new Location(partHeight.getUnits(), 0, 0, partHeight.getValue(), 0);
         startLocation = startLocation.add(partHeightLocation)
-                                     .derive(null, null, null, 0.);
+                                     .derive(null, null, null, captureRotation);
 
         MovableUtils.moveToLocationAtSafeZ(nozzle, startLocation);
+    }
 
-        try (CvPipeline pipeline = partSettings.getPipeline()) {
-            RotatedRect rect = processPipelineAndGetResult(pipeline, camera, part, nozzle);
-            camera=(Camera)pipeline.getProperty("camera");
-    
-            Logger.debug("Result rect {}", rect);
-    
-            // Create the offsets object. This is the physical distance from
-            // the center of the camera to the located part.
-            Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
-    
-            // We assume that the part is never picked more than 45º rotated
-            // so if OpenCV tells us it's rotated more than 45º we correct
-            // it. This seems to happen quite a bit when the angle of rotation
-            // is close to 0.
-            double angle = rect.angle;
-            while (Math.abs(angle) > 45) {
-                if (angle < 0) {
-                    angle += 90;
-                }
-                else {
-                    angle -= 90;
-                }
+    private PartAlignmentOffset processPostRotate(CvPipeline pipeline, Part part,
+            Nozzle nozzle, Camera camera, double captureRotation) throws Exception {
+        return processPostRotate(pipeline, part, nozzle, camera, captureRotation, new Point(),
+                new Location(LengthUnit.Millimeters));
+    }
+
+    /**
+     * Returns the offsets the part would have with the nozzle at a rotation of 0, so that the
+     * placement works them out the same way whatever the rotation the part was captured at.
+     *
+     * @param captureRotation The rotation of the nozzle when the part was captured.
+     * @param origin Where the image the pipeline processes is in the camera's frame, if it is
+     *        only a part of the frame.
+     * @param nozzleOffset Where the nozzle is relative to the center of the camera.
+     */
+    private PartAlignmentOffset processPostRotate(CvPipeline pipeline, Part part,
+            Nozzle nozzle, Camera camera, double captureRotation, Point origin,
+            Location nozzleOffset) throws Exception {
+        RotatedRect rect = processPipelineAndGetResult(pipeline, camera, part, nozzle);
+        camera=(Camera)pipeline.getProperty("camera");
+
+        Logger.debug("Result rect {}", rect);
+
+        // Create the offsets object. This is the physical distance from
+        // the nozzle to the located part.
+        Location offsets = VisionUtils.getPixelCenterOffsets(camera, origin.x + rect.center.x,
+                origin.y + rect.center.y).subtract(nozzleOffset).rotateXy(-captureRotation);
+
+        // We assume that the part is never picked more than 45º rotated
+        // so if OpenCV tells us it's rotated more than 45º we correct
+        // it. This seems to happen quite a bit when the angle of rotation
+        // is close to 0.
+        double angle = rect.angle + captureRotation;
+        while (Math.abs(angle) > 45) {
+            if (angle < 0) {
+                angle += 90;
+            }
+            else {
+                angle -= 90;
             }
-    
-            // Set the angle on the offsets.
-            offsets = offsets.derive(null, null, null, -angle);
-            Logger.debug("Final offsets {}", offsets);
-    
-            offsets = offsets.derive(null, null, null, offsets.getRotation());
-    
-            displayResult(pipeline, part, offsets, camera);
-    
-            return new PartAlignmentOffset(offsets, false);
         }
+
+        // Set the angle on the offsets.
+        offsets = offsets.derive(null, null, null, -angle);
+        Logger.debug("Final offsets {}", offsets);
+
+        offsets = offsets.derive(null, null, null, offsets.getRotation());
+
+        displayResult(pipeline, part, offsets, camera);
+
+        return new PartAlignmentOffset(offsets, false);
     }
 
     private static void displayResult(CvPipeline pipeline, Part part, Location offsets, Camera camera) {
@@ -200,7 +559,10 @@ public class ReferenceBottomVision implements PartAlignment {
         }
     }
 
-    private static RotatedRect processPipelineAndGetResult(CvPipeline pipeline, Camera camera, Part part,
+    /**
+     * Captures the image, unless the pipeline was given one, and processes it.
+     */
+    protected RotatedRect processPipelineAndGetResult(CvPipeline pipeline, Camera camera, Part part,
             Nozzle nozzle) throws Exception {
         pipeline.setProperty("camera", camera);
         pipeline.setProperty("nozzle", nozzle);
@@ -297,6 +659,38 @@ public class ReferenceBottomVision implements PartAlignment {
         this.enabled = enabled;
     }
 
+    public boolean isPreRotateSingleCapture() {
+        return preRotateSingleCapture;
+    }
+
+    public void setPreRotateSingleCapture(boolean preRotateSingleCapture) {
+        this.preRotateSingleCapture = preRotateSingleCapture;
+    }
+
+    public double getPreRotateMaxSingleCaptureAngle() {
+        return preRotateMaxSingleCaptureAngle;
+    }
+
+    public void setPreRotateMaxSingleCaptureAngle(double preRotateMaxSingleCaptureAngle) {
+        this.preRotateMaxSingleCaptureAngle = preRotateMaxSingleCaptureAngle;
+    }
+
+    public boolean isMultiNozzle() {
+        return multiNozzle;
+    }
+
+    public void setMultiNozzle(boolean multiNozzle) {
+        this.multiNozzle = multiNozzle;
+    }
+
+    public boolean isRotateWhileTravelling() {
+        return rotateWhileTravelling;
+    }
+
+    public void setRotateWhileTravelling(boolean rotateWhileTravelling) {
+        this.rotateWhileTravelling = rotateWhileTravelling;
+    }
+
     public boolean isPreRotate() {
         return preRotate;
     }
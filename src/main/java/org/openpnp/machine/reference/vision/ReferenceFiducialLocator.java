@@ -206,11 +206,8 @@ public class ReferenceFiducialLocator implements FiducialLocator {
             for (int i = 0; i < repeatFiducialRecognition; i++) {
                 List<KeyPoint> keypoints;
                 try {
-                    // Perform vision operation
-                    pipeline.process();
-                    
-                    // Get the results
-                    keypoints = (List<KeyPoint>) pipeline.getResult(VisionUtils.PIPELINE_RESULTS_NAME).getModel();
+                    // Perform vision operation and get the results
+                    keypoints = process(pipeline);
                 }
                 catch (Exception e) {
                     Logger.debug(e);
@@ -279,13 +276,22 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return location;
     }
     
+    /**
+     * Captures an image and processes it with the pipeline, returning the fiducials it found.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<KeyPoint> process(CvPipeline pipeline) throws Exception {
+        pipeline.process();
+        return (List<KeyPoint>) pipeline.getResult(VisionUtils.PIPELINE_RESULTS_NAME).getModel();
+    }
+
     /**
      * Given a List of Placements, find the two that are the most distant from each other.
      * 
      * @param fiducials
      * @return
      */
-    private static List<Placement> getMostDistantPlacements(List<Placement> fiducials) {
+    public static List<Placement> getMostDistantPlacements(List<Placement> fiducials) {
         if (fiducials.size() < 2) {
             return null;
         }
@@ -310,7 +316,7 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return results;
     }
 
-    private static IdentifiableList<Placement> getFiducials(BoardLocation boardLocation) {
+    public static IdentifiableList<Placement> getFiducials(BoardLocation boardLocation) {
         Board board = boardLocation.getBoard();
         IdentifiableList<Placement> fiducials = new IdentifiableList<>();
         for (Placement placement : board.getPlacements()) {
@@ -10,13 +10,17 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.DoubleConverter;
 import org.openpnp.gui.support.MessageBoxes;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision.PartSettings;
+import org.openpnp.model.Configuration;
 import org.openpnp.util.UiUtils;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
@@ -31,6 +35,10 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
     private final ReferenceBottomVision bottomVision;
     private JCheckBox enabledCheckbox;
     private JCheckBox preRotCheckbox;
+    private JCheckBox multiNozzleCheckbox;
+    private JCheckBox singleCaptureCheckbox;
+    private JTextField maxSingleCaptureAngleTf;
+    private JCheckBox rotateWhileTravellingCheckbox;
 
     public ReferenceBottomVisionConfigurationWizard(ReferenceBottomVision bottomVision) {
         this.bottomVision = bottomVision;
@@ -45,6 +53,10 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
                 new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
                         FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
                         FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
@@ -105,6 +117,39 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
 
         preRotCheckbox = new JCheckBox("");
         panel.add(preRotCheckbox, "4, 6");
+
+        JLabel lblMultiNozzle = new JLabel("Align several nozzles from one frame?");
+        lblMultiNozzle.setToolTipText(
+                "When the camera can see several nozzles at once, align all of their parts from a single capture.");
+        panel.add(lblMultiNozzle, "2, 8");
+
+        multiNozzleCheckbox = new JCheckBox("");
+        panel.add(multiNozzleCheckbox, "4, 8");
+
+        JLabel lblSingleCapture = new JLabel("Pre-rotate from a single capture?");
+        lblSingleCapture.setToolTipText(
+                "When rotating parts prior to vision, work out the corrected position from the first capture instead of rotating and capturing again.");
+        panel.add(lblSingleCapture, "2, 10");
+
+        singleCaptureCheckbox = new JCheckBox("");
+        panel.add(singleCaptureCheckbox, "4, 10");
+
+        JLabel lblMaxSingleCaptureAngle = new JLabel("Max. Single Capture Angle [°]");
+        lblMaxSingleCaptureAngle.setToolTipText(
+                "Parts that are off by more than this angle are rotated and captured again.");
+        panel.add(lblMaxSingleCaptureAngle, "2, 12");
+
+        maxSingleCaptureAngleTf = new JTextField();
+        panel.add(maxSingleCaptureAngleTf, "4, 12");
+        maxSingleCaptureAngleTf.setColumns(5);
+
+        JLabel lblRotateWhileTravelling = new JLabel("Rotate while travelling?");
+        lblRotateWhileTravelling.setToolTipText(
+                "When not rotating parts prior to vision, capture them at their placement rotation so the nozzle rotates on its way to the camera.");
+        panel.add(lblRotateWhileTravelling, "2, 14");
+
+        rotateWhileTravellingCheckbox = new JCheckBox("");
+        panel.add(rotateWhileTravellingCheckbox, "4, 14");
     }
 
     private void editPipeline() throws Exception {
@@ -130,5 +175,14 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
     public void createBindings() {
         addWrappedBinding(bottomVision, "enabled", enabledCheckbox, "selected");
         addWrappedBinding(bottomVision, "preRotate", preRotCheckbox, "selected");
+        addWrappedBinding(bottomVision, "multiNozzle", multiNozzleCheckbox, "selected");
+        addWrappedBinding(bottomVision, "preRotateSingleCapture", singleCaptureCheckbox,
+                "selected");
+        addWrappedBinding(bottomVision, "preRotateMaxSingleCaptureAngle", maxSingleCaptureAngleTf,
+                "text", new DoubleConverter(Configuration.get().getLengthDisplayFormat()));
+        addWrappedBinding(bottomVision, "rotateWhileTravelling", rotateWhileTravellingCheckbox,
+                "selected");
+
+        ComponentDecorators.decorateWithAutoSelect(maxSingleCaptureAngleTf);
     }
 }
@@ -54,6 +54,11 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
     private JCheckBox chckbxChangerEnabled;
     private JCheckBox chckbxLimitRotationTo;
     private JTextField textFieldSafeZ;
+    private JCheckBox chckbxDynamicSafeZ;
+    private JTextField textFieldClearance;
+    private JTextField textFieldCorridor;
+    private JTextField textFieldFeederHeight;
+    private JTextField textFieldFeederReach;
     private JPanel panelProperties;
     private JLabel lblName;
     private JTextField nameTf;
@@ -133,7 +138,12 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         panelSafeZ.setLayout(new FormLayout(
                 new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
-                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblSafeZ = new JLabel("Safe Z");
         panelSafeZ.add(lblSafeZ, "2, 2, right, default");
@@ -142,6 +152,47 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         panelSafeZ.add(textFieldSafeZ, "4, 2, fill, default");
         textFieldSafeZ.setColumns(10);
 
+        JLabel lblDynamicSafeZ = new JLabel("Dynamic Safe Z?");
+        lblDynamicSafeZ.setToolTipText(
+                "Travel during a job only as high as the placed parts and feeders in the way need.");
+        panelSafeZ.add(lblDynamicSafeZ, "2, 4, right, default");
+
+        chckbxDynamicSafeZ = new JCheckBox("");
+        panelSafeZ.add(chckbxDynamicSafeZ, "4, 4");
+
+        JLabel lblClearance = new JLabel("Clearance");
+        panelSafeZ.add(lblClearance, "2, 6, right, default");
+
+        textFieldClearance = new JTextField();
+        panelSafeZ.add(textFieldClearance, "4, 6, fill, default");
+        textFieldClearance.setColumns(10);
+
+        JLabel lblCorridor = new JLabel("Corridor Width");
+        lblCorridor.setToolTipText(
+                "Width of the path kept clear, on top of the footprints of the part on the nozzle and of the placed parts.");
+        panelSafeZ.add(lblCorridor, "2, 8, right, default");
+
+        textFieldCorridor = new JTextField();
+        panelSafeZ.add(textFieldCorridor, "4, 8, fill, default");
+        textFieldCorridor.setColumns(10);
+
+        JLabel lblFeederHeight = new JLabel("Feeder Height");
+        lblFeederHeight.setToolTipText(
+                "How high feeder bodies, tape guides and pins stand above the pick locations.");
+        panelSafeZ.add(lblFeederHeight, "2, 10, right, default");
+
+        textFieldFeederHeight = new JTextField();
+        panelSafeZ.add(textFieldFeederHeight, "4, 10, fill, default");
+        textFieldFeederHeight.setColumns(10);
+
+        JLabel lblFeederReach = new JLabel("Feeder Reach");
+        lblFeederReach.setToolTipText("How far the feeders reach around their pick locations.");
+        panelSafeZ.add(lblFeederReach, "2, 12, right, default");
+
+        textFieldFeederReach = new JTextField();
+        panelSafeZ.add(textFieldFeederReach, "4, 12, fill, default");
+        textFieldFeederReach.setColumns(10);
+
 
         panelChanger = new JPanel();
         panelChanger.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED, null, null),
@@ -246,6 +297,15 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         addWrappedBinding(nozzle, "changerEnabled", chckbxChangerEnabled, "selected");
         addWrappedBinding(nozzle, "limitRotation", chckbxLimitRotationTo, "selected");
         addWrappedBinding(nozzle, "safeZ", textFieldSafeZ, "text", lengthConverter);
+        addWrappedBinding(nozzle, "dynamicSafeZ", chckbxDynamicSafeZ, "selected");
+        addWrappedBinding(nozzle, "dynamicSafeZClearance", textFieldClearance, "text",
+                lengthConverter);
+        addWrappedBinding(nozzle, "dynamicSafeZCorridor", textFieldCorridor, "text",
+                lengthConverter);
+        addWrappedBinding(nozzle, "dynamicSafeZFeederHeight", textFieldFeederHeight, "text",
+                lengthConverter);
+        addWrappedBinding(nozzle, "dynamicSafeZFeederReach", textFieldFeederReach, "text",
+                lengthConverter);
         addWrappedBinding(nozzle, "pickDwellMilliseconds", pickDwellTf, "text", intConverter);
         addWrappedBinding(nozzle, "placeDwellMilliseconds", placeDwellTf, "text", intConverter);
         addWrappedBinding(nozzle, "vacuumSenseActuatorName", vacSenseActuatorNameTf, "text");
@@ -258,6 +318,10 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(locationY);
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(locationZ);
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldSafeZ);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldClearance);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldCorridor);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldFeederHeight);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldFeederReach);
         ComponentDecorators.decorateWithAutoSelect(vacSenseActuatorNameTf);
     }
 }
@@ -21,11 +21,13 @@ package org.openpnp.machine.reference.wizards;
 
 import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.machine.reference.FeederSelector;
 import org.openpnp.machine.reference.ReferencePnpJobProcessor;
 
 import com.jgoodies.forms.layout.ColumnSpec;
@@ -37,6 +39,9 @@ import com.jgoodies.forms.layout.RowSpec;
 public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigurationWizard {
     private final ReferencePnpJobProcessor jobProcessor;
     private JCheckBox parkWhenComplete;
+    private JCheckBox optimizeTravel;
+    private JComboBox feederSelection;
+    private JCheckBox exportTelemetry;
 
     public ReferencePnpJobProcessorConfigurationWizard(ReferencePnpJobProcessor jobProcessor) {
         this.jobProcessor = jobProcessor;
@@ -48,17 +53,47 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
         contentPanel.add(panelGeneral);
         panelGeneral.setLayout(new FormLayout(
                 new ColumnSpec[] {FormSpecs.DEFAULT_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
-                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),}));
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblParkWhenComplete = new JLabel("Park When Complete");
         panelGeneral.add(lblParkWhenComplete, "1, 2, right, top");
 
         parkWhenComplete = new JCheckBox("");
         panelGeneral.add(parkWhenComplete, "2, 2");
+
+        JLabel lblOptimizeTravel = new JLabel("Optimize Travel");
+        lblOptimizeTravel.setToolTipText(
+                "Order the placements to shorten the travel between feeders and boards.");
+        panelGeneral.add(lblOptimizeTravel, "1, 4, right, top");
+
+        optimizeTravel = new JCheckBox("");
+        panelGeneral.add(optimizeTravel, "2, 4");
+
+        JLabel lblFeederSelection = new JLabel("Feeder Selection");
+        lblFeederSelection.setToolTipText(
+                "How to choose between several enabled feeders holding the same part.");
+        panelGeneral.add(lblFeederSelection, "1, 6, right, default");
+
+        feederSelection = new JComboBox(FeederSelector.Strategy.values());
+        panelGeneral.add(feederSelection, "2, 6, fill, default");
+
+        JLabel lblExportTelemetry = new JLabel("Export Step Timings");
+        lblExportTelemetry.setToolTipText(
+                "Write the time taken by each step, part and feeder to CSV and JSON files in the telemetry directory when a job finishes.");
+        panelGeneral.add(lblExportTelemetry, "1, 8, right, default");
+
+        exportTelemetry = new JCheckBox("");
+        panelGeneral.add(exportTelemetry, "2, 8");
     }
 
     @Override
     public void createBindings() {
         addWrappedBinding(jobProcessor, "parkWhenComplete", parkWhenComplete, "selected");
+        addWrappedBinding(jobProcessor, "optimizeTravel", optimizeTravel, "selected");
+        addWrappedBinding(jobProcessor, "feederSelection", feederSelection, "selectedItem");
+        addWrappedBinding(jobProcessor, "exportTelemetry", exportTelemetry, "selected");
     }
 }
@@ -75,6 +75,22 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
      */
     public void feed(Nozzle nozzle) throws Exception;
 
+    /**
+     * Lets the Feeder start preparing its next part ahead of the feed(Nozzle) call, so that the
+     * part is ready by the time the Nozzle arrives. The job processor calls this for the Feeders
+     * the next cycle will likely use while the current cycle is aligning and placing. Feeders that
+     * can advance without the Head, such as actuator driven feeders, may do so here and then have
+     * feed(Nozzle) only wait for the prepared part. A Feeder that prepares a part must not prepare
+     * another until that one has been fed.
+     * 
+     * The default does nothing, leaving all of the work to feed(Nozzle).
+     * 
+     * @param nozzle The Nozzle that will likely be used for picking.
+     * @throws Exception
+     */
+    public default void prepareFeed(Nozzle nozzle) throws Exception {
+    }
+
     public void postPick(Nozzle nozzle) throws Exception;
     
     public int getRetryCount();
@@ -102,6 +102,24 @@ public interface Head extends Identifiable, Named, WizardConfigurable, PropertyS
 
     public void moveToSafeZ() throws Exception;
 
+    /**
+     * Moves the given HeadMountable to the specified Location by first commanding the head to
+     * safe-Z all of it's components, then moving the HeadMountable in X, Y and C, followed by
+     * moving in Z. A Head may perform the moves together, without stopping in between. The
+     * default implementation performs them one by one.
+     * 
+     * @param hm
+     * @param location
+     * @param speed
+     * @throws Exception
+     */
+    default void moveToLocationAtSafeZ(HeadMountable hm, Location location, double speed)
+            throws Exception {
+        moveToSafeZ(speed);
+        hm.moveTo(location.derive(null, null, Double.NaN, null), speed);
+        hm.moveTo(location, speed);
+    }
+
     public List<PasteDispenser> getPasteDispensers();
 
     public PasteDispenser getPasteDispenser(String id);
@@ -1,5 +1,7 @@
 package org.openpnp.spi;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.openpnp.model.Location;
 
 public interface Movable extends Locatable {
@@ -17,7 +19,56 @@ public interface Movable extends Locatable {
 
     public void moveTo(Location location) throws Exception;
 
+    /**
+     * Start moving the object to the Location at the feedRate and return without waiting for the
+     * move to complete. The returned future completes when the move has completed, or
+     * exceptionally if it failed. Anything else that moves or operates the machine after this call
+     * still happens after the move.
+     * 
+     * The default implementation calls moveTo() and returns a completed future.
+     * 
+     * @param location See moveTo(Location, double).
+     * @param speed See moveTo(Location, double).
+     */
+    public default CompletableFuture<Void> moveToAsync(Location location, double speed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            moveTo(location, speed);
+            future.complete(null);
+        }
+        catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     public void moveToSafeZ(double speed) throws Exception;
 
     public void moveToSafeZ() throws Exception;
+
+    /**
+     * Blocks until every move of this object that was started with moveToAsync() or
+     * moveToSafeZAsync() has completed. If one of them failed its error is thrown. Only call this
+     * where the machine physically has to have arrived before continuing, since anything that
+     * moves or operates the machine waits for the moves anyway.
+     * 
+     * The default implementation does nothing, since the default async moves are synchronous.
+     */
+    public default void waitForMotionComplete() throws Exception {
+    }
+
+    /**
+     * The same as moveToAsync() for moveToSafeZ(double).
+     */
+    public default CompletableFuture<Void> moveToSafeZAsync(double speed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            moveToSafeZ(speed);
+            future.complete(null);
+        }
+        catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
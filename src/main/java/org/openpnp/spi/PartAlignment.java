@@ -1,5 +1,10 @@
 package org.openpnp.spi;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Location;
@@ -40,6 +45,46 @@ public interface PartAlignment extends Identifiable, Named, PropertySheetHolder
         }
     }
 
+    /**
+     * A part to align, when aligning several at once.
+     */
+    public class PartAlignmentRequest
+    {
+        private final Part part;
+        private final BoardLocation boardLocation;
+        private final Location placementLocation;
+        private final Nozzle nozzle;
+
+        public PartAlignmentRequest(Part part, BoardLocation boardLocation,
+                Location placementLocation, Nozzle nozzle)
+        {
+            this.part = part;
+            this.boardLocation = boardLocation;
+            this.placementLocation = placementLocation;
+            this.nozzle = nozzle;
+        }
+
+        public Part getPart()
+        {
+            return part;
+        }
+
+        public BoardLocation getBoardLocation()
+        {
+            return boardLocation;
+        }
+
+        public Location getPlacementLocation()
+        {
+            return placementLocation;
+        }
+
+        public Nozzle getNozzle()
+        {
+            return nozzle;
+        }
+    }
+
     /**
      * Perform the part alignment operation. The method must return a Location containing
      * the offsets on the nozzle of the aligned part and these offsets will be applied
@@ -52,6 +97,52 @@ public interface PartAlignment extends Identifiable, Named, PropertySheetHolder
      * @throws Exception if the alignment fails for any reason. The caller may retry.
      */
     PartAlignmentOffset findOffsets(Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception;
+
+    /**
+     * Start the part alignment operation, returning as soon as the nozzle is free to move on.
+     * Work that doesn't need the nozzle, such as processing a captured image, may then carry on
+     * in the background, and the Future gives its result. This lets a JobProcessor move the next
+     * nozzle into place while the previous part's image is processed. The default implementation
+     * just calls findOffsets().
+     * @param part
+     * @param nozzle
+     * @return
+     * @throws Exception if the alignment fails before returning. A failure after that is
+     * thrown by the Future.
+     */
+    default Future<PartAlignmentOffset> findOffsetsAsync(Part part, BoardLocation boardLocation,
+            Location placementLocation, Nozzle nozzle) throws Exception {
+        return CompletableFuture
+                .completedFuture(findOffsets(part, boardLocation, placementLocation, nozzle));
+    }
+
+    /**
+     * Start aligning several parts, each on a different nozzle, returning as soon as the
+     * nozzles are free to move on. An implementation may align them together, for instance from
+     * a single camera frame that shows all of the nozzles. The default implementation calls
+     * findOffsetsAsync() for each part in turn.
+     * @param requests
+     * @return A Future for each part, in the same order. If starting the alignment of a part
+     * fails its Future throws the error and the parts after it are not started, so the list is
+     * shorter than the requests.
+     */
+    default List<Future<PartAlignmentOffset>> findOffsetsAsync(
+            List<PartAlignmentRequest> requests) {
+        List<Future<PartAlignmentOffset>> futures = new ArrayList<>();
+        for (PartAlignmentRequest request : requests) {
+            try {
+                futures.add(findOffsetsAsync(request.getPart(), request.getBoardLocation(),
+                        request.getPlacementLocation(), request.getNozzle()));
+            }
+            catch (Exception e) {
+                CompletableFuture<PartAlignmentOffset> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                futures.add(future);
+                break;
+            }
+        }
+        return futures;
+    }
     
     /**
      * Get a Wizard for configuring the PartAlignment instance properties for a specific
@@ -20,6 +20,7 @@ import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.VisionProvider;
+import org.openpnp.util.SimulationClock;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -151,7 +152,7 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
         
     	
         try {
-            Thread.sleep(getSettleTimeMs());
+            SimulationClock.sleep(getSettleTimeMs());
         }
         catch (Exception e) {
 
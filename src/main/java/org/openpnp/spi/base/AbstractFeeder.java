@@ -60,8 +60,10 @@ public abstract class AbstractFeeder extends AbstractModelObject implements Feed
 
     @Override
     public void setPart(Part part) {
+        Object oldValue = this.part;
         this.part = part;
         this.partId = part.getId();
+        firePropertyChange("part", oldValue, part);
     }
 
     @Override
@@ -0,0 +1,98 @@
+package org.openpnp.util;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem: given a matrix of costs with no more rows than columns, assign
+ * each row a different column so that the sum of the costs is as small as possible. This is the
+ * Hungarian algorithm in its O(rows^2 * columns) form, so it stays fast with many more columns
+ * than rows, as when assigning a few nozzles to the placements of a large job.
+ */
+public class AssignmentSolver {
+    /**
+     * Returns the column assigned to each row. A cost of Double.POSITIVE_INFINITY means the row
+     * may not be assigned to that column.
+     *
+     * @param costs costs[row][column]
+     * @return
+     * @throws IllegalArgumentException If there are more rows than columns, or there is no
+     *         assignment with a finite cost.
+     */
+    public static int[] solve(double[][] costs) {
+        int rows = costs.length;
+        if (rows == 0) {
+            return new int[0];
+        }
+        int columns = costs[0].length;
+        if (rows > columns) {
+            throw new IllegalArgumentException(
+                    String.format("Can't assign %d rows to %d columns.", rows, columns));
+        }
+
+        // Potentials of the rows and columns, and the row assigned to each column. Row and column
+        // 0 are a sentinel, the matrix is indexed from 1.
+        double[] u = new double[rows + 1];
+        double[] v = new double[columns + 1];
+        int[] rowOfColumn = new int[columns + 1];
+        int[] way = new int[columns + 1];
+        double[] minV = new double[columns + 1];
+        boolean[] used = new boolean[columns + 1];
+
+        for (int row = 1; row <= rows; row++) {
+            // Find the shortest augmenting path from row to a free column, Dijkstra style.
+            rowOfColumn[0] = row;
+            int column0 = 0;
+            Arrays.fill(minV, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[column0] = true;
+                int row0 = rowOfColumn[column0];
+                double delta = Double.POSITIVE_INFINITY;
+                int column1 = -1;
+                for (int column = 1; column <= columns; column++) {
+                    if (used[column]) {
+                        continue;
+                    }
+                    double cost = costs[row0 - 1][column - 1] - u[row0] - v[column];
+                    if (cost < minV[column]) {
+                        minV[column] = cost;
+                        way[column] = column0;
+                    }
+                    if (minV[column] < delta) {
+                        delta = minV[column];
+                        column1 = column;
+                    }
+                }
+                if (column1 < 0) {
+                    throw new IllegalArgumentException(
+                            String.format("No allowed assignment for row %d.", row - 1));
+                }
+                for (int column = 0; column <= columns; column++) {
+                    if (used[column]) {
+                        u[rowOfColumn[column]] += delta;
+                        v[column] -= delta;
+                    }
+                    else {
+                        minV[column] -= delta;
+                    }
+                }
+                column0 = column1;
+            } while (rowOfColumn[column0] != 0);
+
+            // Flip the assignments along the path.
+            do {
+                int column1 = way[column0];
+                rowOfColumn[column0] = rowOfColumn[column1];
+                column0 = column1;
+            } while (column0 != 0);
+        }
+
+        int[] columnOfRow = new int[rows];
+        for (int column = 1; column <= columns; column++) {
+            if (rowOfColumn[column] != 0) {
+                columnOfRow[rowOfColumn[column] - 1] = column - 1;
+            }
+        }
+        return columnOfRow;
+    }
+}
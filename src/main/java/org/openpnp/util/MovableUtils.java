@@ -18,9 +18,7 @@ public class MovableUtils {
     public static void moveToLocationAtSafeZ(HeadMountable hm, Location location, double speed)
             throws Exception {
         Head head = hm.getHead();
-        head.moveToSafeZ(speed);
-        hm.moveTo(location.derive(null, null, Double.NaN, null), speed);
-        hm.moveTo(location, speed);
+        head.moveToLocationAtSafeZ(hm, location, speed);
     }
 
     public static void moveToLocationAtSafeZ(HeadMountable hm, Location location) throws Exception {
@@ -0,0 +1,181 @@
+package org.openpnp.util;
+
+import java.util.List;
+import java.util.function.ToDoubleBiFunction;
+
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+
+/**
+ * Orders placements to shorten the distance the head travels. Each placement is a move to the
+ * location its part is picked from followed by a move to the location it is placed at, so the
+ * travel between two placements is the distance from where the first is placed to where the
+ * second is picked.
+ *
+ * The order is built by always going to the placement whose pick location is nearest, and then
+ * improved with 2-opt: reversing any run of placements that makes the total travel shorter, until
+ * there is no such run left. If that is no shorter than the order the placements were given in,
+ * the given order is kept. By default travel is the distance in X and Y, in millimeters, but it
+ * can be given as any cost of moving between two locations, such as the time the move takes.
+ */
+public class PlacementSequencer {
+    private static final int maxPasses = 50;
+
+    private final Location[] picks;
+    private final Location[] places;
+    private final ToDoubleBiFunction<Location, Location> travel;
+
+    /**
+     * @param start Where the head starts from.
+     * @param pickLocations The pick location of each placement.
+     * @param placeLocations The place location of each placement, in the same order.
+     */
+    public PlacementSequencer(Location start, List<Location> pickLocations,
+            List<Location> placeLocations) {
+        this(start, pickLocations, placeLocations, (from, to) -> from.getLinearDistanceTo(to));
+    }
+
+    /**
+     * @param start Where the head starts from.
+     * @param pickLocations The pick location of each placement.
+     * @param placeLocations The place location of each placement, in the same order.
+     * @param travel The cost of moving from one location to another. The locations are given in
+     *        millimeters.
+     */
+    public PlacementSequencer(Location start, List<Location> pickLocations,
+            List<Location> placeLocations, ToDoubleBiFunction<Location, Location> travel) {
+        this.travel = travel;
+        // Index 0 is the start, the placements follow it.
+        int count = pickLocations.size() + 1;
+        picks = new Location[count];
+        places = new Location[count];
+        set(0, start, start);
+        for (int i = 1; i < count; i++) {
+            set(i, pickLocations.get(i - 1), placeLocations.get(i - 1));
+        }
+    }
+
+    private void set(int i, Location pick, Location place) {
+        picks[i] = pick.convertToUnits(LengthUnit.Millimeters);
+        places[i] = place.convertToUnits(LengthUnit.Millimeters);
+    }
+
+    /**
+     * Returns the estimated travel, in the units of the travel cost, of doing the placements in the given order.
+     *
+     * @param order Indexes into the lists of locations.
+     */
+    public double getTravel(int[] order) {
+        double total = 0;
+        int previous = 0;
+        for (int i : order) {
+            total += cost(previous, i + 1) + travel.applyAsDouble(picks[i + 1], places[i + 1]);
+            previous = i + 1;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the order of the placements, as indexes into the lists of locations. It never
+     * travels further than the order they were given in.
+     */
+    public int[] sequence() {
+        int[] tour = nearestNeighbour();
+        improve(tour);
+        int[] order = new int[tour.length - 1];
+        int[] givenOrder = new int[order.length];
+        for (int i = 1; i < tour.length; i++) {
+            order[i - 1] = tour[i] - 1;
+            givenOrder[i - 1] = i - 1;
+        }
+        if (getTravel(order) < getTravel(givenOrder)) {
+            return order;
+        }
+        return givenOrder;
+    }
+
+    private int[] nearestNeighbour() {
+        int count = picks.length;
+        int[] tour = new int[count];
+        boolean[] visited = new boolean[count];
+        visited[0] = true;
+        for (int i = 1; i < count; i++) {
+            int previous = tour[i - 1];
+            int best = -1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int j = 1; j < count; j++) {
+                if (!visited[j]) {
+                    double cost = cost(previous, j);
+                    if (cost < bestCost) {
+                        best = j;
+                        bestCost = cost;
+                    }
+                }
+            }
+            tour[i] = best;
+            visited[best] = true;
+        }
+        return tour;
+    }
+
+    /**
+     * 2-opt. Travel is not symmetric, since the travel from a to b ends at b's pick location but
+     * the travel from b to a starts at b's place location, so reversing a run changes the cost of
+     * every step in it. Running sums of the forward and backward steps give that change without
+     * walking the run.
+     */
+    private void improve(int[] tour) {
+        int count = tour.length;
+        double[] forward = new double[count];
+        double[] backward = new double[count];
+        for (int pass = 0; pass < maxPasses; pass++) {
+            boolean improved = false;
+            sums(tour, forward, backward);
+            for (int i = 1; i < count - 1; i++) {
+                for (int k = i + 1; k < count; k++) {
+                    int before = tour[i - 1];
+                    double delta = cost(before, tour[k]) - cost(before, tour[i])
+                            + (backward[k] - backward[i]) - (forward[k] - forward[i]);
+                    if (k < count - 1) {
+                        int after = tour[k + 1];
+                        delta += cost(tour[i], after) - cost(tour[k], after);
+                    }
+                    if (delta < -1e-9) {
+                        reverse(tour, i, k);
+                        sums(tour, forward, backward);
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * forward[m] is the cost of the steps from tour[0] to tour[m], and backward[m] the cost of
+     * the same steps taken in the other direction.
+     */
+    private void sums(int[] tour, double[] forward, double[] backward) {
+        for (int m = 1; m < tour.length; m++) {
+            forward[m] = forward[m - 1] + cost(tour[m - 1], tour[m]);
+            backward[m] = backward[m - 1] + cost(tour[m], tour[m - 1]);
+        }
+    }
+
+    private static void reverse(int[] tour, int i, int k) {
+        for (; i < k; i++, k--) {
+            int t = tour[i];
+            tour[i] = tour[k];
+            tour[k] = t;
+        }
+    }
+
+    /**
+     * The travel from placing a to picking b.
+     */
+    private double cost(int a, int b) {
+        return travel.applyAsDouble(places[a], picks[b]);
+    }
+}
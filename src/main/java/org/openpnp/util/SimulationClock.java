@@ -0,0 +1,105 @@
+package org.openpnp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The time the machine spends waiting: on moves, dwells, actuators and camera settling. Waits go
+ * through sleep(), which normally just sleeps. A simulation can scale the time actually slept
+ * down, to run a job faster than the machine would, or to 0 to not sleep at all. The machine
+ * time waited is accumulated either way, so a Stopwatch can estimate how long the work would have
+ * taken on the real machine.
+ *
+ * Waits on different threads are all added up, so time a simulated machine spends moving while
+ * the job processor waits on another thread is counted once, but moves that overlap each other
+ * would be counted twice.
+ */
+public class SimulationClock {
+    private static volatile double timeScale = 1.0;
+    private static final AtomicLong machineNanos = new AtomicLong();
+    private static final AtomicLong sleptNanos = new AtomicLong();
+
+    /**
+     * Measures the time between its creation and now, in machine time.
+     */
+    public static class Stopwatch {
+        private final long startTime = System.nanoTime();
+        private final long startMachineNanos = machineNanos.get();
+        private final long startSleptNanos = sleptNanos.get();
+
+        /**
+         * Returns the machine time waited since the Stopwatch was started.
+         */
+        public double getMachineSeconds() {
+            return (machineNanos.get() - startMachineNanos) / 1e9;
+        }
+
+        /**
+         * Returns how long the machine would have taken since the Stopwatch was started: the time
+         * that really went by, with what was slept replaced by the machine time it stood for.
+         */
+        public double getEstimatedSeconds() {
+            long elapsed = System.nanoTime() - startTime;
+            long slept = sleptNanos.get() - startSleptNanos;
+            return (elapsed - slept) / 1e9 + getMachineSeconds();
+        }
+    }
+
+    /**
+     * Returns the real time slept per unit of machine time. 1 is real time and 0 is instantaneous.
+     */
+    public static double getTimeScale() {
+        return timeScale;
+    }
+
+    public static void setTimeScale(double timeScale) {
+        if (timeScale < 0 || Double.isNaN(timeScale)) {
+            throw new IllegalArgumentException("Time scale must be 0 or more: " + timeScale);
+        }
+        SimulationClock.timeScale = timeScale;
+    }
+
+    /**
+     * Returns true if waits are shorter than the machine time they stand for.
+     */
+    public static boolean isAccelerated() {
+        return timeScale != 1.0;
+    }
+
+    /**
+     * Waits for millis of machine time.
+     */
+    public static void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) {
+            return;
+        }
+        machineNanos.addAndGet(millis * 1000000);
+        long scaledNanos = (long) (millis * 1000000 * timeScale);
+        if (scaledNanos <= 0) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            Thread.sleep(scaledNanos / 1000000, (int) (scaledNanos % 1000000));
+        }
+        finally {
+            sleptNanos.addAndGet(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Returns the current machine time in milliseconds, for measuring how long something takes,
+     * or until when to wait, in place of System.currentTimeMillis(). Time that really goes by
+     * counts as it is, and time slept counts as the machine time it stood for. Only differences
+     * between the values returned mean anything.
+     */
+    public static long currentTimeMillis() {
+        return (System.nanoTime() - sleptNanos.get() + machineNanos.get()) / 1000000;
+    }
+
+    /**
+     * Returns all the machine time waited so far.
+     */
+    public static double getMachineSeconds() {
+        return machineNanos.get() / 1e9;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
@@ -140,28 +141,57 @@ public class VisionUtils {
     }
     
     public static PartAlignment.PartAlignmentOffset findPartAlignmentOffsets(PartAlignment p, Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception {
+        onPartAlignment("Vision.PartAlignment.Before", part, nozzle);
         try {
-            Map<String, Object> globals = new HashMap<>();
-            globals.put("part", part);
-            globals.put("nozzle", nozzle);
-            Configuration.get().getScripting().on("Vision.PartAlignment.Before", globals);
+            return p.findOffsets(part, boardLocation, placementLocation, nozzle);
         }
-        catch (Exception e) {
-            Logger.warn(e);
+        finally {
+            onPartAlignment("Vision.PartAlignment.After", part, nozzle);
         }
+    }
+
+    /**
+     * Like findPartAlignmentOffsets(), but returns as soon as the nozzle is free to move on. See
+     * PartAlignment.findOffsetsAsync(). The Vision.PartAlignment.After script is run at that
+     * point, rather than when the offsets are found.
+     */
+    public static Future<PartAlignment.PartAlignmentOffset> findPartAlignmentOffsetsAsync(PartAlignment p, Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception {
+        onPartAlignment("Vision.PartAlignment.Before", part, nozzle);
         try {
-            return p.findOffsets(part, boardLocation, placementLocation, nozzle);
+            return p.findOffsetsAsync(part, boardLocation, placementLocation, nozzle);
         }
         finally {
-            try {
-                Map<String, Object> globals = new HashMap<>();
-                globals.put("part", part);
-                globals.put("nozzle", nozzle);
-                Configuration.get().getScripting().on("Vision.PartAlignment.After", globals);
-            }
-            catch (Exception e) {
-                Logger.warn(e);
+            onPartAlignment("Vision.PartAlignment.After", part, nozzle);
+        }
+    }
+
+    /**
+     * Like findPartAlignmentOffsetsAsync(), for several parts at once. See
+     * PartAlignment.findOffsetsAsync(List).
+     */
+    public static List<Future<PartAlignment.PartAlignmentOffset>> findPartAlignmentOffsetsAsync(PartAlignment p, List<PartAlignment.PartAlignmentRequest> requests) {
+        for (PartAlignment.PartAlignmentRequest request : requests) {
+            onPartAlignment("Vision.PartAlignment.Before", request.getPart(), request.getNozzle());
+        }
+        try {
+            return p.findOffsetsAsync(requests);
+        }
+        finally {
+            for (PartAlignment.PartAlignmentRequest request : requests) {
+                onPartAlignment("Vision.PartAlignment.After", request.getPart(), request.getNozzle());
             }
         }
     }
+
+    private static void onPartAlignment(String event, Part part, Nozzle nozzle) {
+        try {
+            Map<String, Object> globals = new HashMap<>();
+            globals.put("part", part);
+            globals.put("nozzle", nozzle);
+            Configuration.get().getScripting().on(event, globals);
+        }
+        catch (Exception e) {
+            Logger.warn(e);
+        }
+    }
 }
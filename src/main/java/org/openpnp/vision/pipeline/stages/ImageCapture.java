@@ -15,6 +15,14 @@ import org.openpnp.vision.pipeline.Property;
   description="Capture an image from the pipeline camera.")
 
 public class ImageCapture extends CvStage {
+    /**
+     * The name of a pipeline property that may hold a BufferedImage captured before the pipeline
+     * was run, to be used instead of capturing one. This lets the camera, or whatever it is
+     * looking at, move on while the image is processed on another thread. The image is only used
+     * once.
+     */
+    public static final String CAPTURED_IMAGE_PROPERTY = "capturedImage";
+
     @Attribute
     @Property(description="Wait for the camera to settle before capturing an image.")
     private boolean settleFirst;
@@ -33,8 +41,11 @@ public class ImageCapture extends CvStage {
         if (camera == null) {
             throw new Exception("No Camera set on pipeline.");
         }
-        BufferedImage image;
-        if (settleFirst) {
+        BufferedImage image = (BufferedImage) pipeline.getProperty(CAPTURED_IMAGE_PROPERTY);
+        if (image != null) {
+            pipeline.setProperty(CAPTURED_IMAGE_PROPERTY, null);
+        }
+        else if (settleFirst) {
             image = camera.settleAndCapture();
         }
         else {
@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openpnp.util.AssignmentSolver;
+
+public class AssignmentSolverTest {
+    @Test
+    public void testSimple() {
+        double[][] costs = new double[][] {
+            {4, 1, 3},
+            {2, 0, 5},
+            {3, 2, 2}};
+        assertArrayEquals(new int[] {1, 0, 2}, AssignmentSolver.solve(costs));
+    }
+
+    /**
+     * Compare the cost of the solution with the best found by trying every assignment, for 10k
+     * random matrices with up to 4 rows and 7 columns, some of the cells not allowed.
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        for (int n = 0; n < 10000; n++) {
+            int rows = 1 + random.nextInt(4);
+            int columns = rows + random.nextInt(4);
+            double[][] costs = new double[rows][columns];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    costs[i][j] = random.nextInt(5) == 0 ? Double.POSITIVE_INFINITY
+                            : random.nextInt(100);
+                }
+                // Make sure there is always an allowed assignment.
+                costs[i][i] = random.nextInt(100);
+            }
+            double best = bruteForce(costs, 0, new boolean[columns]);
+            int[] assignment = AssignmentSolver.solve(costs);
+            boolean[] used = new boolean[columns];
+            double cost = 0;
+            for (int i = 0; i < rows; i++) {
+                assertEquals(false, used[assignment[i]]);
+                used[assignment[i]] = true;
+                cost += costs[i][assignment[i]];
+            }
+            assertEquals(best, cost, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAllowed() {
+        double[][] costs = new double[][] {
+            {1, Double.POSITIVE_INFINITY},
+            {1, Double.POSITIVE_INFINITY}};
+        AssignmentSolver.solve(costs);
+    }
+
+    private static double bruteForce(double[][] costs, int row, boolean[] used) {
+        if (row == costs.length) {
+            return 0;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < used.length; j++) {
+            if (!used[j]) {
+                used[j] = true;
+                best = Math.min(best, costs[row][j] + bruteForce(costs, row + 1, used));
+                used[j] = false;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.util.PlacementSequencer;
+
+public class PlacementSequencerTest {
+    /**
+     * Parts picked and placed at the same spots along a line, given out of order, must be
+     * sequenced along the line.
+     */
+    @Test
+    public void testLine() {
+        List<Location> locations = new ArrayList<>();
+        for (int x : new int[] {30, 10, 50, 20, 40}) {
+            locations.add(new Location(LengthUnit.Millimeters, x, 0, 0, 0));
+        }
+        PlacementSequencer sequencer =
+                new PlacementSequencer(new Location(LengthUnit.Millimeters), locations, locations);
+        int[] order = sequencer.sequence();
+        assertArrayEquals(new int[] {1, 3, 0, 4, 2}, order);
+        assertEquals(50, sequencer.getTravel(order), 1e-9);
+    }
+
+    /**
+     * Given the cost of travel, the sequence follows that rather than distance. X is ten times
+     * slower than Y here, so going along Y first is sooner even though it is further.
+     */
+    @Test
+    public void testTravelCost() {
+        List<Location> locations = new ArrayList<>();
+        locations.add(new Location(LengthUnit.Millimeters, 0, 30, 0, 0));
+        locations.add(new Location(LengthUnit.Millimeters, 20, 0, 0, 0));
+        Location start = new Location(LengthUnit.Millimeters);
+        assertArrayEquals(new int[] {1, 0},
+                new PlacementSequencer(start, locations, locations).sequence());
+
+        PlacementSequencer sequencer = new PlacementSequencer(start, locations, locations,
+                (from, to) -> Math.max(Math.abs(to.getX() - from.getX()) * 10,
+                        Math.abs(to.getY() - from.getY())));
+        int[] order = sequencer.sequence();
+        assertArrayEquals(new int[] {0, 1}, order);
+        assertEquals(230, sequencer.getTravel(order), 1e-9);
+    }
+
+    /**
+     * Random jobs must come back as a permutation of the placements that travels no further than
+     * the original order.
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        for (int n = 0; n < 100; n++) {
+            int count = 1 + random.nextInt(200);
+            List<Location> picks = new ArrayList<>();
+            List<Location> places = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                // A few feeders along the front, placements anywhere on the board.
+                picks.add(new Location(LengthUnit.Millimeters, random.nextInt(10) * 10, 0, 0, 0));
+                places.add(new Location(LengthUnit.Millimeters, random.nextDouble() * 100,
+                        50 + random.nextDouble() * 100, 0, 0));
+            }
+            PlacementSequencer sequencer =
+                    new PlacementSequencer(new Location(LengthUnit.Millimeters), picks, places);
+            int[] order = sequencer.sequence();
+            int[] sorted = order.clone();
+            Arrays.sort(sorted);
+            int[] jobOrder = new int[count];
+            for (int i = 0; i < count; i++) {
+                jobOrder[i] = i;
+            }
+            assertArrayEquals(jobOrder, sorted);
+            assertTrue(sequencer.getTravel(order) <= sequencer.getTravel(jobOrder) + 1e-9);
+        }
+    }
+}
@@ -1,17 +1,25 @@
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferenceNozzle;
 import org.openpnp.machine.reference.camera.SimulatedUpCamera;
 import org.openpnp.machine.reference.driver.NullDriver;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Footprint;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Part;
 import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
+import org.openpnp.spi.PartAlignment.PartAlignmentRequest;
 import org.openpnp.util.VisionUtils;
 
 import com.google.common.io.Files;
@@ -27,7 +35,199 @@ public class ReferenceBottomVisionTest {
         testError(new Location(LengthUnit.Millimeters, 1, 2, 0, -13));
     }
     
+    /**
+     * The image is processed in the background, after the nozzle is free to move on.
+     */
+    @Test
+    public void testAsync() throws Exception {
+        testError(new Location(LengthUnit.Millimeters, 1, 2, 0, 13), true);
+    }
+
+    /**
+     * Both nozzles are aligned from one frame.
+     */
+    @Test
+    public void testMultiNozzle() throws Exception {
+        // The nozzles were centered on the camera together, rather than one at a time.
+        assertMaxDelta(testMultiNozzle(0, 0), -4, 0.001);
+    }
+
+    /**
+     * A part that is too big for the square of the frame around its nozzle could run into the
+     * other nozzle's square, so the nozzles are aligned one at a time.
+     */
+    @Test
+    public void testMultiNozzleTooBig() throws Exception {
+        // The second nozzle was centered on the camera last, on its own.
+        assertMaxDelta(testMultiNozzle(9, 0), -8, 0.001);
+    }
+
+    /**
+     * Captured at 45°, with rotateWhileTravelling, a part that would fit square on takes up too
+     * much of its square.
+     */
+    @Test
+    public void testMultiNozzleRotatedTooBig() throws Exception {
+        assertMaxDelta(testMultiNozzle(7, 0), -4, 0.001);
+        assertMaxDelta(testMultiNozzle(7, 45), -8, 0.001);
+    }
+
+    /**
+     * Aligns two nozzles 8 mm apart and returns where the first one was left, in X, relative to
+     * the camera.
+     *
+     * @param bodySize If not 0, the size the part's body is made.
+     * @param rotation If not 0, the rotation the parts are placed and, with
+     *        rotateWhileTravelling, captured at.
+     */
+    private static double testMultiNozzle(double bodySize, double rotation) throws Exception {
+        Location error = new Location(LengthUnit.Millimeters, 1, 2, 0, 13);
+        // Off the pixel grid the angle is found less exactly.
+        Location maxError =
+                new Location(LengthUnit.Millimeters, 0.1, 0.1, 0, rotation == 0 ? 0.01 : 0.1);
+
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        System.out.println("Configuration directory: " + workingDirectory);
+
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        Machine machine = Configuration.get().getMachine();
+        ReferenceNozzle n1 = (ReferenceNozzle) machine.getDefaultHead().getDefaultNozzle();
+        ReferenceNozzle n2 = new ReferenceNozzle();
+        n2.setName("N2");
+        n2.setHeadOffsets(new Location(LengthUnit.Millimeters, 8, 0, 0, 0));
+        machine.getDefaultHead().addNozzle(n2);
+        n2.addNozzleTip(n1.getNozzleTip());
+        n2.loadNozzleTip(n1.getNozzleTip());
+        SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        Part part = Configuration.get().getPart("R0805-1K");
+        if (bodySize != 0) {
+            Footprint footprint = part.getPackage().getFootprint();
+            footprint.setBodyWidth(bodySize);
+            footprint.setBodyHeight(bodySize);
+        }
+        ReferenceBottomVision bottomVision = (ReferenceBottomVision) machine.getPartAlignments().get(0);
+        bottomVision.setMultiNozzle(true);
+        bottomVision.setRotateWhileTravelling(rotation != 0);
+        NullDriver driver = (NullDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setFeedRateMmPerMinute(0);
+
+        camera.setErrorOffsets(error);
+        machine.setEnabled(true);
+        n1.pick(part);
+        n2.pick(part);
+        Location placementLocation = new Location(LengthUnit.Millimeters, 0, 0, 0, rotation);
+        List<Future<PartAlignmentOffset>> futures = bottomVision.findOffsetsAsync(Arrays.asList(
+                new PartAlignmentRequest(part, null, placementLocation, n1),
+                new PartAlignmentRequest(part, null, placementLocation, n2)));
+        assertEquals(2, futures.size());
+        for (Future<PartAlignmentOffset> future : futures) {
+            Location offsets = future.get().getLocation();
+            assertMaxDelta(offsets.getX(), error.getX(), maxError.getX());
+            assertMaxDelta(offsets.getY(), error.getY(), maxError.getY());
+            assertMaxDelta(offsets.getRotation(), error.getRotation(), maxError.getRotation());
+        }
+        return n1.getLocation().getX() - camera.getLocation().getX();
+    }
+
+    /**
+     * Pre-rotate works the corrected offsets out from the first capture when the error is within
+     * the tolerance, and gets the same answer as rotating and capturing again.
+     */
+    @Test
+    public void testPreRotateSingleCapture() throws Exception {
+        Location error = new Location(LengthUnit.Millimeters, 1, 2, 0, 13);
+
+        PartAlignmentOffset twoCaptures = testPreRotate(error, false, 15);
+        assertEquals(Double.NaN, twoCaptures.getLocation().getRotation(), 0);
+
+        PartAlignmentOffset singleCapture = testPreRotate(error, true, 15);
+        Location offsets = singleCapture.getLocation();
+        assertMaxDelta(offsets.getX(), twoCaptures.getLocation().getX(), 0.1);
+        assertMaxDelta(offsets.getY(), twoCaptures.getLocation().getY(), 0.1);
+        // Left for the placement move to rotate the nozzle by.
+        assertMaxDelta(offsets.getRotation(), error.getRotation(), 0.1);
+
+        // Over the tolerance, so captured again.
+        PartAlignmentOffset overTolerance = testPreRotate(error, true, 10);
+        assertEquals(Double.NaN, overTolerance.getLocation().getRotation(), 0);
+    }
+
+    /**
+     * With rotateWhileTravelling the part is captured at its placement rotation, and gives the
+     * same offsets as when it is captured at 0.
+     */
+    @Test
+    public void testRotateWhileTravelling() throws Exception {
+        Location error = new Location(LengthUnit.Millimeters, 1, 2, 0, 13);
+        // The part's edges aren't lined up with the pixels, so the angle is found less exactly.
+        Location maxError = new Location(LengthUnit.Millimeters, 0.1, 0.1, 0, 0.1);
+
+        for (double rotation : new double[] {30, 90, -135}) {
+            File workingDirectory = Files.createTempDir();
+            workingDirectory = new File(workingDirectory, ".openpnp");
+
+            Configuration.initialize(workingDirectory);
+            Configuration.get().load();
+
+            Machine machine = Configuration.get().getMachine();
+            Nozzle nozzle = machine.getDefaultHead().getDefaultNozzle();
+            SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+            Part part = Configuration.get().getPart("R0805-1K");
+            ReferenceBottomVision bottomVision =
+                    (ReferenceBottomVision) machine.getPartAlignments().get(0);
+            bottomVision.setRotateWhileTravelling(true);
+            NullDriver driver = (NullDriver) ((ReferenceMachine) machine).getDriver();
+            driver.setFeedRateMmPerMinute(0);
+
+            camera.setErrorOffsets(error);
+            machine.setEnabled(true);
+            nozzle.pick(part);
+            PartAlignmentOffset offset = bottomVision.findOffsets(part, null,
+                    new Location(LengthUnit.Millimeters, 0, 0, 0, rotation), nozzle);
+            assertMaxDelta(nozzle.getLocation().getRotation(), rotation, 0.001);
+            Location offsets = offset.getLocation();
+            assertMaxDelta(offsets.getX(), error.getX(), maxError.getX());
+            assertMaxDelta(offsets.getY(), error.getY(), maxError.getY());
+            assertMaxDelta(offsets.getRotation(), error.getRotation(), maxError.getRotation());
+        }
+    }
+
+    private static PartAlignmentOffset testPreRotate(Location error, boolean singleCapture,
+            double maxSingleCaptureAngle) throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        Machine machine = Configuration.get().getMachine();
+        Nozzle nozzle = machine.getDefaultHead().getDefaultNozzle();
+        SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        Part part = Configuration.get().getPart("R0805-1K");
+        ReferenceBottomVision bottomVision = (ReferenceBottomVision) machine.getPartAlignments().get(0);
+        bottomVision.setPreRotate(true);
+        bottomVision.setPreRotateSingleCapture(singleCapture);
+        bottomVision.setPreRotateMaxSingleCaptureAngle(maxSingleCaptureAngle);
+        NullDriver driver = (NullDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setFeedRateMmPerMinute(0);
+
+        camera.setErrorOffsets(error);
+        machine.setEnabled(true);
+        nozzle.pick(part);
+        PartAlignmentOffset offset = bottomVision.findOffsets(part, null,
+                new Location(LengthUnit.Millimeters), nozzle);
+        assertEquals(true, offset.getPreRotated());
+        return offset;
+    }
+
     public static void testError(Location error) throws Exception {
+        testError(error, false);
+    }
+
+    public static void testError(Location error, boolean async) throws Exception {
         Location maxError = new Location(LengthUnit.Millimeters, 0.1, 0.1, 0, 0.01);
 
         File workingDirectory = Files.createTempDir();
@@ -48,7 +248,9 @@ public class ReferenceBottomVisionTest {
         camera.setErrorOffsets(error);
         machine.setEnabled(true);
         nozzle.pick(part);
-        PartAlignmentOffset offset = bottomVision.findOffsets(part, null, null, nozzle);
+        PartAlignmentOffset offset = async
+                ? bottomVision.findOffsetsAsync(part, null, null, nozzle).get()
+                : bottomVision.findOffsets(part, null, null, nozzle);
         Location offsets = offset.getLocation();
         assertMaxDelta(offsets.getX(), error.getX(), maxError.getX());
         assertMaxDelta(offsets.getY(), error.getY(), maxError.getY());
@@ -0,0 +1,74 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.driver.NullDriver;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.SimulationClock;
+
+import com.google.common.io.Files;
+
+public class SimulationClockTest {
+    @After
+    public void tearDown() {
+        SimulationClock.setTimeScale(1.0);
+    }
+
+    /**
+     * A minute of machine time goes by on the clock without the test taking a minute. The times
+     * asserted on are machine times, so how busy the computer is doesn't matter.
+     */
+    @Test
+    public void testInstantaneous() throws Exception {
+        SimulationClock.setTimeScale(0);
+        SimulationClock.Stopwatch stopwatch = new SimulationClock.Stopwatch();
+        long startTime = SimulationClock.currentTimeMillis();
+        SimulationClock.sleep(60000);
+        assertEquals(60, stopwatch.getMachineSeconds(), 0);
+        assertTrue(stopwatch.getEstimatedSeconds() >= 60);
+        assertTrue(SimulationClock.currentTimeMillis() - startTime >= 60000);
+    }
+
+    @Test
+    public void testRealTime() throws Exception {
+        SimulationClock.Stopwatch stopwatch = new SimulationClock.Stopwatch();
+        long startTime = SimulationClock.currentTimeMillis();
+        SimulationClock.sleep(100);
+        assertEquals(0.1, stopwatch.getMachineSeconds(), 0);
+        assertTrue(stopwatch.getEstimatedSeconds() >= 0.1);
+        assertTrue(SimulationClock.currentTimeMillis() - startTime >= 100);
+    }
+
+    /**
+     * A simulated move and pick take their machine time without waiting for it.
+     */
+    @Test
+    public void testNullDriver() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        NullDriver driver = (NullDriver) machine.getDriver();
+        driver.setFeedRateMmPerMinute(6000);
+        driver.setSimulationTimeScale(0);
+        Nozzle nozzle = machine.getDefaultHead().getDefaultNozzle();
+
+        machine.setEnabled(true);
+        SimulationClock.Stopwatch stopwatch = new SimulationClock.Stopwatch();
+        nozzle.moveTo(new Location(LengthUnit.Millimeters, 500, 0, 0, 0));
+        nozzle.pick(Configuration.get().getPart("R0805-1K"));
+        // 5 seconds to move 500 mm at 6000 mm/min, and half a second to pick.
+        assertEquals(5.5, stopwatch.getMachineSeconds(), 0.2);
+
+        machine.setEnabled(false);
+        assertEquals(1.0, SimulationClock.getTimeScale(), 0);
+    }
+}
@@ -0,0 +1,79 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+
+/**
+ * Benchmarks planning one cycle across nozzle counts and job sizes. There are 10 parts, and each
+ * nozzle has two nozzle tips that can each handle half of them. These are not run as part of the
+ * tests. See GcodeDriverBenchmark for how to run them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssignmentPnpJobPlannerBenchmark {
+    @Param({"1", "2", "4", "8"})
+    private int nozzleCount;
+
+    @Param({"10", "100", "2000"})
+    private int placementCount;
+
+    private AssignmentPnpJobPlanner planner = new AssignmentPnpJobPlanner();
+    private Head head;
+    private PendingJobPlacements pendingJobPlacements;
+    private NozzleTipCompatibility compatibility;
+
+    @Setup
+    public void setUp() throws Exception {
+        AssignmentPnpJobPlannerTest.setUpClass();
+        List<Part> parts = AssignmentPnpJobPlannerTest.createParts(10);
+        List<Part> evenParts = new ArrayList<>();
+        List<Part> oddParts = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            (i % 2 == 0 ? evenParts : oddParts).add(parts.get(i));
+        }
+        NozzleTip even = AssignmentPnpJobPlannerTest.createNozzleTip("Even", evenParts);
+        NozzleTip odd = AssignmentPnpJobPlannerTest.createNozzleTip("Odd", oddParts);
+        Nozzle[] nozzles = new Nozzle[nozzleCount];
+        for (int i = 0; i < nozzleCount; i++) {
+            nozzles[i] = AssignmentPnpJobPlannerTest.createNozzle("N" + i, even, even, odd);
+        }
+        head = AssignmentPnpJobPlannerTest.createHead(nozzles);
+        pendingJobPlacements = new PendingJobPlacements(
+                AssignmentPnpJobPlannerTest.createJobPlacements(parts, placementCount));
+        compatibility = new NozzleTipCompatibility(head);
+    }
+
+    @Benchmark
+    public List<PlannedPlacement> plan() {
+        return planner.plan(head, pendingJobPlacements, compatibility);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AssignmentPnpJobPlannerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
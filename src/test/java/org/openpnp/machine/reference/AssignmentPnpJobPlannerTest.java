@@ -0,0 +1,138 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.machine.reference.driver.test.Fake;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+import com.google.common.io.Files;
+
+public class AssignmentPnpJobPlannerTest {
+    private AssignmentPnpJobPlanner planner = new AssignmentPnpJobPlanner();
+
+    @BeforeClass
+    public static void setUpClass() {
+        Configuration.initialize(new File(Files.createTempDir(), ".openpnp"));
+    }
+
+    /**
+     * Every nozzle gets a placement, the lowest parts going to the first nozzles.
+     */
+    @Test
+    public void testFillsNozzles() {
+        List<Part> parts = createParts(1);
+        NozzleTip nozzleTip = createNozzleTip("T", parts);
+        Head head = createHead(createNozzle("N1", nozzleTip, nozzleTip),
+                createNozzle("N2", nozzleTip, nozzleTip));
+        List<JobPlacement> jobPlacements = createJobPlacements(parts, 3);
+
+        List<PlannedPlacement> planned = planner.plan(head,
+                new PendingJobPlacements(jobPlacements), new NozzleTipCompatibility(head));
+        assertEquals(2, planned.size());
+        assertSame(head.getNozzles().get(0), planned.get(0).nozzle);
+        assertSame(jobPlacements.get(0), planned.get(0).jobPlacement);
+        assertSame(head.getNozzles().get(1), planned.get(1).nozzle);
+        assertSame(jobPlacements.get(1), planned.get(1).jobPlacement);
+        assertNull(planned.get(0).nozzleTip);
+    }
+
+    /**
+     * A taller part that the loaded tip can handle goes before a lower one that needs a change.
+     */
+    @Test
+    public void testAvoidsNozzleTipChange() {
+        List<Part> parts = createParts(2);
+        NozzleTip tip0 = createNozzleTip("T0", parts.subList(0, 1));
+        NozzleTip tip1 = createNozzleTip("T1", parts.subList(1, 2));
+        Head head = createHead(createNozzle("N1", tip1, tip0, tip1));
+        List<JobPlacement> jobPlacements = createJobPlacements(parts, 2);
+
+        List<PlannedPlacement> planned = planner.plan(head,
+                new PendingJobPlacements(jobPlacements), new NozzleTipCompatibility(head));
+        assertSame(jobPlacements.get(1), planned.get(0).jobPlacement);
+    }
+
+    /**
+     * When a change is needed the tip that can handle the most of the job is loaded, not the
+     * first one that can handle the part.
+     */
+    @Test
+    public void testLoadsMostUsefulNozzleTip() {
+        List<Part> parts = createParts(3);
+        NozzleTip loaded = createNozzleTip("T0", new ArrayList<>());
+        NozzleTip few = createNozzleTip("T1", parts.subList(0, 1));
+        NozzleTip many = createNozzleTip("T2", parts);
+        Head head = createHead(createNozzle("N1", loaded, loaded, few, many));
+        List<JobPlacement> jobPlacements = createJobPlacements(parts, 3);
+
+        List<PlannedPlacement> planned = planner.plan(head,
+                new PendingJobPlacements(jobPlacements), new NozzleTipCompatibility(head));
+        assertSame(jobPlacements.get(0), planned.get(0).jobPlacement);
+        assertSame(many, planned.get(0).nozzleTip);
+    }
+
+    static List<Part> createParts(int count) {
+        List<Part> parts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            parts.add(new Part("P" + i));
+        }
+        return parts;
+    }
+
+    /**
+     * Creates count placements, using the parts in turn.
+     */
+    static List<JobPlacement> createJobPlacements(List<Part> parts, int count) {
+        BoardLocation boardLocation = new BoardLocation(new Board());
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Placement placement = new Placement("R" + i);
+            placement.setPart(parts.get(i % parts.size()));
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+        return jobPlacements;
+    }
+
+    static Head createHead(Nozzle... nozzles) {
+        return Fake.of(Head.class, "H1").returns("getNozzles", Arrays.asList(nozzles)).create();
+    }
+
+    /**
+     * Creates a Nozzle with the given tip loaded.
+     */
+    static Nozzle createNozzle(String id, NozzleTip nozzleTip, NozzleTip... nozzleTips) {
+        return Fake.of(Nozzle.class, id)
+                .returns("getId", id)
+                .returns("getNozzleTip", nozzleTip)
+                .returns("getNozzleTips", Arrays.asList(nozzleTips))
+                .create();
+    }
+
+    /**
+     * Creates a NozzleTip that can handle the given parts.
+     */
+    static NozzleTip createNozzleTip(String id, List<Part> parts) {
+        return Fake.of(NozzleTip.class, id)
+                .returns("getId", id)
+                .answers("canHandle", args -> parts.contains(args[0]))
+                .create();
+    }
+}
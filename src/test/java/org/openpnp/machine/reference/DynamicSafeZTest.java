@@ -0,0 +1,143 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Footprint;
+import org.openpnp.model.Job;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Package;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+
+import com.google.common.io.Files;
+
+public class DynamicSafeZTest {
+    @After
+    public void tearDown() {
+        ReferencePnpJobProcessor.setRunningJob(null);
+    }
+
+    @Test
+    public void testTravelZ() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        ReferenceNozzle nozzle = (ReferenceNozzle) machine.getDefaultHead().getDefaultNozzle();
+
+        // A board far away from the feeders, with a 5 mm tall part on it.
+        Part part = new Part("TALL");
+        part.setHeight(new Length(5, LengthUnit.Millimeters));
+        Placement placement = new Placement("U1");
+        placement.setPart(part);
+        placement.setLocation(location(50, 0, 0));
+        Board board = new Board();
+        board.addPlacement(placement);
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(location(1000, 1000, -20));
+        Job job = new Job();
+        job.addBoardLocation(boardLocation);
+
+        Length safeZ = new Length(0, LengthUnit.Millimeters);
+        Length clearance = new Length(2, LengthUnit.Millimeters);
+        Length corridor = new Length(10, LengthUnit.Millimeters);
+        Length feederHeight = new Length(10, LengthUnit.Millimeters);
+        Length feederReach = new Length(15, LengthUnit.Millimeters);
+        Location from = location(1000, 1000, -20);
+        Location across = location(1100, 1000, Double.NaN);
+
+        // Without a running job nothing is known about the boards.
+        assertEquals(0, DynamicSafeZ.getTravelZ(nozzle, from, across, safeZ, clearance, corridor,
+                feederHeight, feederReach),
+                0);
+
+        // Nor with a job that is set up, but isn't having a step run.
+        machine.getPnpJobProcessor().initialize(job);
+        assertEquals(0, DynamicSafeZ.getTravelZ(nozzle, from, across, safeZ, clearance, corridor,
+                feederHeight, feederReach), 0);
+
+        ReferencePnpJobProcessor.setRunningJob(job);
+        // Only the board is in the way until the part is placed.
+        assertEquals(-18,
+                DynamicSafeZ.getTravelZ(nozzle, from, across, safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        boardLocation.setPlaced("U1", true);
+        assertEquals(-13,
+                DynamicSafeZ.getTravelZ(nozzle, from, across, safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        // Travelling beside the part, outside of the corridor.
+        assertEquals(-18, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1010, -20),
+                location(1100, 1010, Double.NaN), safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        // A retract clears where the nozzle is.
+        assertEquals(-8, DynamicSafeZ.getTravelZ(nozzle, location(1050, 1000, -10),
+                location(1050, 1000, -10), safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        // Never above Safe Z.
+        assertEquals(-16, DynamicSafeZ.getTravelZ(nozzle, from, across,
+                new Length(-16, LengthUnit.Millimeters), clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+
+        // The placed part's footprint reaches 7.07 mm from its centre.
+        part.setPackage(createPackage(10));
+        assertEquals(-13, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1010, -20),
+                location(1100, 1010, Double.NaN), safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        assertEquals(-18, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1013, -20),
+                location(1100, 1013, Double.NaN), safeZ, clearance, corridor,
+                feederHeight, feederReach), 1e-9);
+        // And that of a 1 mm tall part on the nozzle 14.14 mm.
+        Part carried = new Part("QFP");
+        carried.setHeight(new Length(1, LengthUnit.Millimeters));
+        carried.setPackage(createPackage(20));
+        nozzle.setPart(carried);
+        try {
+            assertEquals(-12, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1025, -20),
+                    location(1100, 1025, Double.NaN), safeZ, clearance, corridor,
+                    feederHeight, feederReach), 1e-9);
+        }
+        finally {
+            nozzle.setPart(null);
+        }
+
+        // A feeder stands 10 mm above its pick location, and reaches 15 mm around it.
+        ReferenceAutoFeeder feeder = new ReferenceAutoFeeder();
+        feeder.setEnabled(true);
+        feeder.setLocation(location(1000, 1060, -15));
+        machine.addFeeder(feeder);
+        try {
+            assertEquals(-3, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1040, -20),
+                    location(1100, 1040, Double.NaN), safeZ, clearance, corridor,
+                    feederHeight, feederReach), 1e-9);
+            assertEquals(-18, DynamicSafeZ.getTravelZ(nozzle, location(1000, 1035, -20),
+                    location(1100, 1035, Double.NaN), safeZ, clearance, corridor,
+                    feederHeight, feederReach), 1e-9);
+        }
+        finally {
+            machine.removeFeeder(feeder);
+        }
+    }
+
+    private static Package createPackage(double size) {
+        Footprint footprint = new Footprint();
+        footprint.setBodyWidth(size);
+        footprint.setBodyHeight(size);
+        Package pkg = new Package("SQUARE" + size);
+        pkg.setFootprint(footprint);
+        return pkg;
+    }
+
+    private static Location location(double x, double y, double z) {
+        return new Location(LengthUnit.Millimeters, x, y, z, 0);
+    }
+}
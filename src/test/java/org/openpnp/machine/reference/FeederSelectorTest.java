@@ -0,0 +1,155 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.machine.reference.FeederSelector.Strategy;
+import org.openpnp.machine.reference.MotionTimeModel.Axis;
+import org.openpnp.machine.reference.MotionTimeModel.AxisKinematics;
+import org.openpnp.machine.reference.driver.test.Fake;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+
+import com.google.common.io.Files;
+
+public class FeederSelectorTest {
+    private Part part = new Part("P");
+    private List<Feeder> feeders = new ArrayList<>();
+    private FeederSelector selector = new FeederSelector(createMachine(feeders));
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Configuration.initialize(new File(Files.createTempDir(), ".openpnp"));
+        Configuration.get().load();
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        Feeder far = createFeeder(part, 100);
+        Feeder near = createFeeder(part, 10);
+        createFeeder(new Part("Other"), 0);
+
+        assertSame(far, selector.select(part, Strategy.First, null));
+        assertSame(near, selector.select(part, Strategy.Nearest, location(0)));
+        assertSame(far, selector.select(part, Strategy.Nearest, location(90)));
+    }
+
+    /**
+     * Given the nozzle, Nearest is the feeder the nozzle can get to soonest. Y moves twice as fast
+     * as X here, so the feeder further away in Y is sooner.
+     */
+    @Test
+    public void testNearestByTime() throws Exception {
+        ReferenceHead head = (ReferenceHead) Configuration.get().getMachine().getDefaultHead();
+        MotionTimeModel model = new MotionTimeModel();
+        model.setKinematics(Axis.X, new AxisKinematics(6000, 0, 0));
+        model.setKinematics(Axis.Y, new AxisKinematics(12000, 0, 0));
+        head.setMotionTimeModel(model);
+        Nozzle nozzle = head.getDefaultNozzle();
+
+        Feeder alongX = createFeeder(part, 50);
+        Feeder alongY = createFeeder(part, new Location(LengthUnit.Millimeters, 0, 80, 0, 0));
+
+        assertSame(alongX, selector.select(part, Strategy.Nearest, location(0)));
+        assertSame(alongY, selector.select(part, Strategy.Nearest, nozzle, location(0)));
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        Feeder f1 = createFeeder(part, 0);
+        Feeder f2 = createFeeder(part, 10);
+        Feeder f3 = createFeeder(part, 20);
+
+        for (Feeder expected : new Feeder[] {f1, f2, f3, f1, f2}) {
+            Feeder feeder = selector.select(part, Strategy.RoundRobin, null);
+            assertSame(expected, feeder);
+            selector.fed(feeder);
+        }
+    }
+
+    /**
+     * Disabled feeders are skipped, and feeders that change part are found without the selector
+     * being told.
+     */
+    @Test
+    public void testChanges() throws Exception {
+        Feeder near = createFeeder(part, 10);
+        Feeder far = createFeeder(part, 100);
+        Feeder other = createFeeder(new Part("Other"), 0);
+        assertSame(near, selector.select(part, Strategy.Nearest, location(0)));
+
+        near.setEnabled(false);
+        assertSame(far, selector.select(part, Strategy.Nearest, location(0)));
+
+        other.setPart(part);
+        assertSame(other, selector.select(part, Strategy.Nearest, location(0)));
+
+        feeders.remove(other);
+        selector.invalidate();
+        near.setEnabled(true);
+        assertSame(near, selector.select(part, Strategy.Nearest, location(0)));
+    }
+
+    @Test(expected = Exception.class)
+    public void testNoFeeder() throws Exception {
+        createFeeder(part, 0).setEnabled(false);
+        selector.select(part, Strategy.Nearest, location(0));
+    }
+
+    /**
+     * Once disposed the selector no longer listens to the feeders.
+     */
+    @Test
+    public void testDispose() throws Exception {
+        ListenedFeeder feeder = (ListenedFeeder) createFeeder(part, 0);
+        selector.select(part, Strategy.First, null);
+        assertEquals(1, feeder.getPartListenerCount());
+        selector.invalidate();
+        selector.select(part, Strategy.First, null);
+        assertEquals(1, feeder.getPartListenerCount());
+        selector.dispose();
+        assertEquals(0, feeder.getPartListenerCount());
+    }
+
+    private Feeder createFeeder(Part part, double x) {
+        return createFeeder(part, location(x));
+    }
+
+    private Feeder createFeeder(Part part, Location location) {
+        ReferenceAutoFeeder feeder = new ListenedFeeder();
+        feeder.setPart(part);
+        feeder.setEnabled(true);
+        feeder.setLocation(location);
+        feeders.add(feeder);
+        return feeder;
+    }
+
+    private static class ListenedFeeder extends ReferenceAutoFeeder {
+        int getPartListenerCount() {
+            return propertyChangeSupport.getPropertyChangeListeners("part").length;
+        }
+    }
+
+    private static Location location(double x) {
+        return new Location(LengthUnit.Millimeters, x, 0, 0, 0);
+    }
+
+    private static Machine createMachine(List<Feeder> feeders) {
+        return Fake.of(Machine.class, "Machine")
+                .returns("getFeeders", feeders)
+                .returns("getSpeed", 1.0)
+                .create();
+    }
+}
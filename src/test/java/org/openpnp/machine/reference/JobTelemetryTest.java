@@ -0,0 +1,70 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.machine.reference.JobTelemetry.Histogram;
+import org.openpnp.machine.reference.JobTelemetry.Step;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
+import org.openpnp.model.Part;
+
+import com.google.gson.Gson;
+
+public class JobTelemetryTest {
+    private static final long MILLIS = 1000000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        AssignmentPnpJobPlannerTest.setUpClass();
+    }
+
+    @Test
+    public void testHistograms() throws Exception {
+        Part r1 = new Part("R1");
+        Part c1 = new Part("C1");
+        ReferenceAutoFeeder feeder = new ReferenceAutoFeeder();
+        feeder.setName("F1");
+
+        JobTelemetry telemetry = new JobTelemetry();
+        telemetry.start();
+        telemetry.recordFeed(feeder, r1, System.nanoTime() - 15 * MILLIS);
+        telemetry.record(Step.Pick, r1, System.nanoTime() - 150 * MILLIS);
+        telemetry.record(Step.Pick, c1, System.nanoTime() - 20000 * MILLIS);
+        telemetry.recordPart(Step.Align, r1, System.nanoTime() - 5 * MILLIS);
+        telemetry.placed();
+
+        Histogram pick = telemetry.getHistogram(Step.Pick);
+        assertEquals(2, pick.getCount());
+        assertTrue(pick.getMinMillis() >= 150 && pick.getMinMillis() < 200);
+        assertArrayEquals(new long[] {0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1}, pick.getBuckets());
+        assertEquals(1, telemetry.getPartHistograms(Step.Pick).get("C1").getCount());
+        assertEquals(1, telemetry.getFeederHistograms().get("F1").getBuckets()[1]);
+        // Per part only.
+        assertEquals(0, telemetry.getHistogram(Step.Align).getCount());
+        assertEquals(1, telemetry.getPartHistograms(Step.Align).get("R1").getCount());
+
+        telemetry.finish();
+        assertEquals(1, telemetry.getPlacedCount());
+        assertTrue(telemetry.getComponentsPerHour() > 0);
+
+        StringWriter csv = new StringWriter();
+        telemetry.writeCsv(csv);
+        String[] lines = csv.toString().split("\\r?\\n");
+        assertTrue(lines[0].startsWith("Kind,Step,Name,Count"));
+        assertTrue(csv.toString().contains("Feeder,Feed,F1,1,"));
+        assertTrue(csv.toString().contains("Part,Pick,C1,1,"));
+
+        StringWriter json = new StringWriter();
+        telemetry.writeJson(json);
+        Map<?, ?> summary = new Gson().fromJson(json.toString(), Map.class);
+        assertEquals(1.0, (Double) summary.get("placedCount"), 0);
+        Map<?, ?> steps = (Map<?, ?>) summary.get("steps");
+        assertEquals(2.0, (Double) ((Map<?, ?>) steps.get("Pick")).get("count"), 0);
+    }
+}
@@ -0,0 +1,57 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.openpnp.machine.reference.MotionTimeModel.Axis;
+import org.openpnp.machine.reference.MotionTimeModel.AxisKinematics;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+
+public class MotionTimeModelTest {
+    @Test
+    public void testAxis() {
+        // 100 mm/s, reached after 0.1 s and 5 mm.
+        AxisKinematics trapezoid = new AxisKinematics(6000, 1000, 0);
+        assertEquals(1.1, trapezoid.getMoveTime(100, 1), 1e-9);
+        // Half the feed rate, reached after 0.05 s and 1.25 mm.
+        assertEquals(2.05, trapezoid.getMoveTime(100, 0.5), 1e-9);
+        // Too short to reach the feed rate.
+        assertEquals(2 * Math.sqrt(0.001), trapezoid.getMoveTime(1, 1), 1e-9);
+        assertEquals(0, trapezoid.getMoveTime(0, 1), 0);
+
+        // Each ramp takes a further 0.01 s to jerk the acceleration up and down.
+        AxisKinematics sCurve = new AxisKinematics(6000, 1000, 100000);
+        assertEquals(1.11, sCurve.getMoveTime(100, 1), 1e-9);
+        // Too short to reach the acceleration: jerks up to a lower one and back down, both ways.
+        assertEquals(4 * Math.cbrt(0.1 / (2 * 100000)), sCurve.getMoveTime(0.1, 1), 1e-9);
+
+        AxisKinematics feedRateOnly = new AxisKinematics(6000, 0, 0);
+        assertEquals(1, feedRateOnly.getMoveTime(100, 1), 1e-9);
+    }
+
+    @Test
+    public void testLocations() {
+        MotionTimeModel model = new MotionTimeModel();
+        model.setKinematics(Axis.X, new AxisKinematics(6000, 0, 0));
+        model.setKinematics(Axis.Y, new AxisKinematics(12000, 0, 0));
+        model.setKinematics(Axis.Z, new AxisKinematics(600, 0, 0));
+        model.setKinematics(Axis.Rotation, new AxisKinematics(6000, 0, 0));
+
+        // X limits the diagonal: it moves 30 of the 50 mm at 100 mm/s.
+        assertEquals(0.3, model.getMoveTime(location(0, 0, 0, 0), location(30, 40, 0, 0), 1),
+                1e-9);
+        // The rotation moves alongside and takes longer.
+        assertEquals(0.9, model.getMoveTime(location(0, 0, 0, 0), location(30, 40, 0, 90), 1),
+                1e-9);
+        // Z is slow, and an axis that is NaN doesn't move.
+        assertEquals(1, model.getMoveTime(location(0, 0, 0, 0),
+                location(Double.NaN, Double.NaN, -10, Double.NaN), 1), 1e-9);
+        assertEquals(0.0127, model.getMoveTime(
+                new Location(LengthUnit.Inches, 0, 0, 0, 0), location(0, 2.54, 0, 0), 1), 1e-9);
+    }
+
+    private static Location location(double x, double y, double z, double rotation) {
+        return new Location(LengthUnit.Millimeters, x, y, z, rotation);
+    }
+}
@@ -0,0 +1,60 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.model.Package;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+
+public class NozzleTipCompatibilityTest {
+    @BeforeClass
+    public static void setUpClass() {
+        AssignmentPnpJobPlannerTest.setUpClass();
+    }
+
+    /**
+     * Answers follow changes to the tips' compatible packages and the parts' packages.
+     */
+    @Test
+    public void testConfigurationChanges() throws Exception {
+        Package small = new Package("Small");
+        Package large = new Package("Large");
+        Part part = new Part("P");
+        part.setPackage(small);
+        ReferenceNozzleTip tip1 = createNozzleTip(small);
+        ReferenceNozzleTip tip2 = createNozzleTip(large);
+        Nozzle nozzle = AssignmentPnpJobPlannerTest.createNozzle("N1", tip1, tip1, tip2);
+        Head head = AssignmentPnpJobPlannerTest.createHead(nozzle);
+        NozzleTipCompatibility compatibility = new NozzleTipCompatibility(head);
+
+        assertTrue(compatibility.canHandle(tip1, part));
+        assertFalse(compatibility.canHandle(tip2, part));
+        assertSame(tip1, compatibility.findNozzleTip(nozzle, part));
+
+        part.setPackage(large);
+        assertSame(tip2, compatibility.findNozzleTip(nozzle, part));
+
+        tip2.setCompatiblePackages(Collections.emptySet());
+        assertFalse(compatibility.canHandle(nozzle, part));
+
+        tip1.setAllowIncompatiblePackages(true);
+        assertSame(tip1, compatibility.findNozzleTip(part));
+
+        compatibility.dispose();
+    }
+
+    private static ReferenceNozzleTip createNozzleTip(Package... packages) {
+        ReferenceNozzleTip nozzleTip = new ReferenceNozzleTip();
+        nozzleTip.setCompatiblePackages(new HashSet<>(Arrays.asList(packages)));
+        return nozzleTip;
+    }
+}
@@ -0,0 +1,88 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Part;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
+
+public class PendingJobPlacementsTest {
+    @BeforeClass
+    public static void setUpClass() {
+        AssignmentPnpJobPlannerTest.setUpClass();
+    }
+
+    @Test
+    public void testPending() {
+        List<Part> parts = AssignmentPnpJobPlannerTest.createParts(2);
+        parts.get(0).setHeight(new Length(2, LengthUnit.Millimeters));
+        parts.get(1).setHeight(new Length(1, LengthUnit.Millimeters));
+        // R0 and R2 are the taller part.
+        List<JobPlacement> jobPlacements =
+                AssignmentPnpJobPlannerTest.createJobPlacements(parts, 4);
+        JobPlacement r0 = jobPlacements.get(0);
+        JobPlacement r1 = jobPlacements.get(1);
+        JobPlacement r2 = jobPlacements.get(2);
+        JobPlacement r3 = jobPlacements.get(3);
+        r3.status = Status.Complete;
+
+        PendingJobPlacements pending = new PendingJobPlacements(jobPlacements);
+        assertEquals(Arrays.asList(r1, r0, r2), pending.getJobPlacements());
+        assertEquals(Arrays.asList(r1, r0), pending.getJobPlacements(2));
+
+        pending.setStatus(r1, Status.Processing);
+        assertEquals(Arrays.asList(r0, r2), pending.getJobPlacements());
+
+        // Set directly rather than with setStatus().
+        r0.status = Status.Skipped;
+        assertEquals(Arrays.asList(r2), pending.getJobPlacements());
+
+        pending.setStatus(r1, Status.Pending);
+        assertEquals(Arrays.asList(r1, r2), pending.getJobPlacements());
+
+        pending.setStatus(r1, Status.Complete);
+        pending.setStatus(r2, Status.Complete);
+        assertTrue(pending.isEmpty());
+    }
+
+    /**
+     * Only the lowest placements of each part are given for planning, while the counts cover
+     * every pending placement.
+     */
+    @Test
+    public void testByPart() {
+        List<Part> parts = AssignmentPnpJobPlannerTest.createParts(2);
+        // R0, R2, R4 and R6 are P0, the others P1.
+        List<JobPlacement> jobPlacements =
+                AssignmentPnpJobPlannerTest.createJobPlacements(parts, 7);
+        PendingJobPlacements pending = new PendingJobPlacements(jobPlacements);
+        assertEquals(Arrays.asList(jobPlacements.get(0), jobPlacements.get(1),
+                jobPlacements.get(2), jobPlacements.get(3)), pending.getJobPlacementsByPart(2));
+        assertEquals(4, (int) pending.getPartCounts().get(parts.get(0)));
+        assertEquals(3, (int) pending.getPartCounts().get(parts.get(1)));
+
+        pending.setStatus(jobPlacements.get(0), Status.Processing);
+        // Set directly rather than with setStatus().
+        jobPlacements.get(1).status = Status.Skipped;
+        assertEquals(Arrays.asList(jobPlacements.get(2), jobPlacements.get(3),
+                jobPlacements.get(4), jobPlacements.get(5)), pending.getJobPlacementsByPart(2));
+        assertEquals(3, (int) pending.getPartCounts().get(parts.get(0)));
+        assertEquals(2, (int) pending.getPartCounts().get(parts.get(1)));
+
+        for (JobPlacement jobPlacement : jobPlacements) {
+            if (jobPlacement.placement.getPart() == parts.get(1)) {
+                pending.setStatus(jobPlacement, Status.Complete);
+            }
+        }
+        assertFalse(pending.getPartCounts().containsKey(parts.get(1)));
+    }
+}
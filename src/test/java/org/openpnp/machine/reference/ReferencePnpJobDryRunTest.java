@@ -0,0 +1,69 @@
+package org.openpnp.machine.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Placement;
+import org.openpnp.util.SimulationClock;
+
+import com.google.common.io.Files;
+
+public class ReferencePnpJobDryRunTest {
+    /**
+     * Estimates the pnp-test sample job, without enabling the machine, and checks that the job is
+     * left as it was.
+     */
+    @Test
+    public void testSampleJob() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        ReferencePnpJobProcessor jobProcessor =
+                (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        Job job = Configuration.get()
+                .loadJob(new File(new File("samples", "pnp-test"), "pnp-test.job.xml"));
+        // Other tests run the sample job and save it with its parts placed.
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            boardLocation.clearAllPlaced();
+            boardLocation.clearLocationFiducialOverrides();
+        }
+
+        ReferenceDriver driver = machine.getDriver();
+        double timeScale = SimulationClock.getTimeScale();
+        JobEstimate estimate = jobProcessor.estimate(job);
+
+        int placements = 0;
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                if (placement.getType() == Placement.Type.Place
+                        && placement.getSide() == boardLocation.getSide()) {
+                    placements++;
+                    assertFalse(boardLocation.getPlaced(placement.getId()));
+                }
+            }
+            assertEquals(null, boardLocation.getLocationFiducialOverrides());
+        }
+        assertEquals(placements, estimate.getCount());
+        assertEquals(placements,
+                estimate.getPartCounts().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(job.getBoardLocations().size(), estimate.getBoardSeconds().size());
+        assertTrue(estimate.getComponentsPerHour() > 0);
+
+        double boardSeconds =
+                estimate.getBoardSeconds().values().stream().mapToDouble(Double::doubleValue).sum();
+        assertTrue(boardSeconds > 0 && boardSeconds <= estimate.getTotalSeconds() + 1e-9);
+        assertFalse(machine.isEnabled());
+        assertSame(driver, machine.getDriver());
+        assertEquals(timeScale, SimulationClock.getTimeScale(), 0);
+    }
+}
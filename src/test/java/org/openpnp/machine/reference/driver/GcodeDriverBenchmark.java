@@ -0,0 +1,86 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.GcodeTemplate.Variables;
+
+/**
+ * Benchmarks for the GcodeDriver code that runs on every move. These are not run as part of the
+ * tests. Run them from the IDE, or with the test classpath:
+ * 
+ * java -cp target/test-classes:target/classes:... org.openpnp.machine.reference.driver.GcodeDriverBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GcodeDriverBenchmark {
+    private static final String moveToCommand =
+            "G1 {BacklashOffsetX:X%.4f} {BacklashOffsetY:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{BacklashFeedRate:%.0f} ; Backlash\n"
+                    + "G1 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{FeedRate:%.0f} ; Move\n"
+                    + "M400 ; Wait for moves to complete before returning";
+
+    private Command command = new Command(null, CommandType.MOVE_TO_COMMAND, moveToCommand);
+    private double x = 123.4567;
+    private double y = 89.0123;
+    private double z = -12.5;
+    private double rotation = 45;
+
+    /**
+     * moveTo() command rendering as it was done before templates: one regex scan per variable.
+     */
+    @Benchmark
+    public String moveToSubstituteVariable() {
+        String s = command.getCommand();
+        s = GcodeDriver.substituteVariable(s, "Id", "N1");
+        s = GcodeDriver.substituteVariable(s, "Name", "N1");
+        s = GcodeDriver.substituteVariable(s, "FeedRate", 5000.0);
+        s = GcodeDriver.substituteVariable(s, "BacklashFeedRate", 500.0);
+        s = GcodeDriver.substituteVariable(s, "X", x);
+        s = GcodeDriver.substituteVariable(s, "BacklashOffsetX", x - 1);
+        s = GcodeDriver.substituteVariable(s, "Y", y);
+        s = GcodeDriver.substituteVariable(s, "BacklashOffsetY", y - 1);
+        s = GcodeDriver.substituteVariable(s, "Z", z);
+        s = GcodeDriver.substituteVariable(s, "Rotation", rotation);
+        return s;
+    }
+
+    /**
+     * moveTo() command rendering with the compiled template cached on the Command.
+     */
+    @Benchmark
+    public String moveToTemplate() {
+        Variables variables = new Variables();
+        variables.set("Id", "N1");
+        variables.set("Name", "N1");
+        variables.set("FeedRate", 5000.0);
+        variables.set("BacklashFeedRate", 500.0);
+        variables.set("X", x);
+        variables.set("BacklashOffsetX", x - 1);
+        variables.set("Y", y);
+        variables.set("BacklashOffsetY", y - 1);
+        variables.set("Z", z);
+        variables.set("Rotation", rotation);
+        return command.getTemplate().render(variables);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(GcodeDriverBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.spi.HeadMountable;
+
+/**
+ * Benchmarks the command and axis lookups that moveTo() does for each nozzle, on a machine with 8
+ * nozzles and 3 sub-drivers. These are not run as part of the tests. See GcodeDriverBenchmark for
+ * how to run them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GcodeDriverLookupBenchmark {
+    private GcodeDriver driver = GcodeDriverLookupTest.createDriver(8);
+    private List<HeadMountable> nozzles = GcodeDriverLookupTest.createNozzles(8);
+
+    /**
+     * The lookups one moveTo() of every nozzle does, by scanning the lists as before.
+     */
+    @Benchmark
+    public void moveToLookupsScan(Blackhole bh) {
+        for (HeadMountable hm : nozzles) {
+            for (Axis.Type type : Axis.Type.values()) {
+                bh.consume(GcodeDriverLookupTest.scanAxis(driver, hm, type));
+                for (GcodeDriver subDriver : driver.subDrivers) {
+                    bh.consume(GcodeDriverLookupTest.scanAxis(subDriver, hm, type));
+                }
+            }
+            bh.consume(GcodeDriverLookupTest.scanCommand(driver, hm,
+                    CommandType.MOVE_TO_COMMAND, true));
+            bh.consume(GcodeDriverLookupTest.scanCommand(driver, hm,
+                    CommandType.MOVE_TO_COMPLETE_REGEX, true));
+            bh.consume(GcodeDriverLookupTest.scanCommand(driver, hm,
+                    CommandType.COMMAND_CONFIRM_REGEX, true));
+        }
+    }
+
+    /**
+     * The same lookups through the driver's index.
+     */
+    @Benchmark
+    public void moveToLookupsIndexed(Blackhole bh) {
+        for (HeadMountable hm : nozzles) {
+            for (Axis.Type type : Axis.Type.values()) {
+                bh.consume(driver.getAxis(hm, type));
+                for (GcodeDriver subDriver : driver.subDrivers) {
+                    bh.consume(subDriver.getAxis(hm, type));
+                }
+            }
+            bh.consume(driver.getCommand(hm, CommandType.MOVE_TO_COMMAND, true));
+            bh.consume(driver.getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX, true));
+            bh.consume(driver.getCommand(hm, CommandType.COMMAND_CONFIRM_REGEX, true));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(GcodeDriverLookupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
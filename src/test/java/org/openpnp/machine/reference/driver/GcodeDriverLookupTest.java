@@ -0,0 +1,154 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.test.Fake;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Nozzle;
+
+public class GcodeDriverLookupTest {
+    /**
+     * The indexed lookups must return exactly what scanning the lists in order did, including
+     * which entry wins when more than one matches.
+     */
+    @Test
+    public void testLookupMatchesScan() {
+        GcodeDriver driver = createDriver(8);
+        List<HeadMountable> hms = createNozzles(8);
+        hms.add(createNozzle("N-UNKNOWN"));
+        checkLookups(driver, hms);
+        for (GcodeDriver subDriver : driver.subDrivers) {
+            checkLookups(subDriver, hms);
+        }
+    }
+
+    /**
+     * Changing commands through setCommand() must be reflected in the lookups.
+     */
+    @Test
+    public void testSetCommandUpdatesLookup() {
+        GcodeDriver driver = createDriver(2);
+        HeadMountable n1 = createNozzle("N1");
+        Assert.assertEquals("G0 N1", driver.getCommand(n1, CommandType.MOVE_TO_COMMAND));
+        driver.setCommand(n1, CommandType.MOVE_TO_COMMAND, null);
+        Assert.assertEquals("G0 default", driver.getCommand(n1, CommandType.MOVE_TO_COMMAND));
+        driver.setCommand(n1, CommandType.MOVE_TO_COMMAND, "G1 N1");
+        Assert.assertEquals("G1 N1", driver.getCommand(n1, CommandType.MOVE_TO_COMMAND));
+        Assert.assertNull(driver.getCommand(n1, CommandType.PUMP_ON_COMMAND));
+        driver.setCommand(null, CommandType.PUMP_ON_COMMAND, "M10");
+        Assert.assertEquals("M10", driver.getCommand(n1, CommandType.PUMP_ON_COMMAND));
+    }
+
+    private static void checkLookups(GcodeDriver driver, List<HeadMountable> hms) {
+        for (HeadMountable hm : hms) {
+            for (CommandType type : CommandType.values()) {
+                Assert.assertSame(scanCommand(driver, hm, type, true),
+                        driver.getCommand(hm, type, true));
+                Assert.assertSame(scanCommand(driver, hm, type, false),
+                        driver.getCommand(hm, type, false));
+            }
+            for (Axis.Type type : Axis.Type.values()) {
+                Assert.assertSame(scanAxis(driver, hm, type), driver.getAxis(hm, type));
+            }
+        }
+    }
+
+    /**
+     * Creates a driver with per nozzle commands for the given number of nozzles and three
+     * sub-drivers, each with its own Z and rotation axes for some of the nozzles.
+     */
+    static GcodeDriver createDriver(int nozzleCount) {
+        GcodeDriver driver = new GcodeDriver();
+        driver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMMAND, "G0 default"));
+        driver.commands.add(new Command("*", CommandType.PICK_COMMAND, "M800"));
+        driver.commands.add(new Command(null, CommandType.PLACE_COMMAND, "M801"));
+        for (int i = 1; i <= nozzleCount; i++) {
+            String id = "N" + i;
+            driver.commands.add(new Command(id, CommandType.MOVE_TO_COMMAND, "G0 " + id));
+            driver.commands.add(new Command(id, CommandType.MOVE_TO_COMPLETE_REGEX, "^ok.*"));
+            driver.commands.add(new Command(id, CommandType.PICK_COMMAND, "M10 " + id));
+            driver.commands.add(new Command(id, CommandType.PLACE_COMMAND, "M11 " + id));
+            driver.commands.add(new Command(id, CommandType.ACTUATE_BOOLEAN_COMMAND, "M12 " + id));
+        }
+        driver.axes.add(new Axis("x", Axis.Type.X, 0, "*"));
+        driver.axes.add(new Axis("y", Axis.Type.Y, 0, "*"));
+        driver.axes.add(new Axis("z1", Axis.Type.Z, 0, "N1", "N2"));
+        driver.axes.add(new Axis("z", Axis.Type.Z, 0, "*"));
+        driver.axes.add(new Axis("z2", Axis.Type.Z, 0, "N3"));
+        driver.axes.add(new Axis("rotation", Axis.Type.Rotation, 0, "*"));
+        for (int d = 0; d < 3; d++) {
+            GcodeDriver subDriver = new GcodeDriver();
+            subDriver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+            for (int i = 1; i <= nozzleCount; i++) {
+                if (i % 3 == d) {
+                    String id = "N" + i;
+                    subDriver.commands
+                            .add(new Command(id, CommandType.MOVE_TO_COMMAND, "G0 sub " + id));
+                    subDriver.axes.add(new Axis("z" + i, Axis.Type.Z, 0, id));
+                    subDriver.axes.add(new Axis("c" + i, Axis.Type.Rotation, 0, id));
+                }
+            }
+            driver.subDrivers.add(subDriver);
+        }
+        driver.invalidateLookup();
+        return driver;
+    }
+
+    static List<HeadMountable> createNozzles(int count) {
+        List<HeadMountable> hms = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            hms.add(createNozzle("N" + i));
+        }
+        return hms;
+    }
+
+    /**
+     * Creates a Nozzle that only answers getId(), which is all the lookups use.
+     */
+    static HeadMountable createNozzle(String id) {
+        return Fake.of(Nozzle.class, id).returns("getId", id).create();
+    }
+
+    /**
+     * GcodeDriver.getCommand() as it was before the lookup was indexed.
+     */
+    static Command scanCommand(GcodeDriver driver, HeadMountable hm, CommandType type,
+            boolean checkDefaults) {
+        if (type.headMountable && hm != null) {
+            for (Command c : driver.commands) {
+                if (hm.getId().equals(c.headMountableId) && type == c.type) {
+                    return c;
+                }
+            }
+            if (!checkDefaults) {
+                return null;
+            }
+        }
+        for (Command c : driver.commands) {
+            if ((c.headMountableId == null || c.headMountableId.equals("*")) && type == c.type) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * GcodeDriver.getAxis() as it was before the lookup was indexed.
+     */
+    static Axis scanAxis(GcodeDriver driver, HeadMountable hm, Axis.Type type) {
+        for (Axis axis : driver.axes) {
+            if (axis.getType() == type && (axis.getHeadMountableIds().contains("*")
+                    || axis.getHeadMountableIds().contains(hm.getId()))) {
+                return axis;
+            }
+        }
+        return null;
+    }
+}
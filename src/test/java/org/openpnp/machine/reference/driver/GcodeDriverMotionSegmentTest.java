@@ -0,0 +1,129 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.MotionSegment;
+import org.openpnp.machine.reference.ReferenceHeadMountable;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.test.Fake;
+import org.openpnp.machine.reference.driver.test.LoopbackCommunications;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+
+public class GcodeDriverMotionSegmentTest {
+    private LoopbackCommunications communications;
+    private GcodeDriver driver;
+    private ReferenceHeadMountable nozzle = createNozzle("N1");
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() throws Exception {
+        communications = new LoopbackCommunications();
+        driver = new GcodeDriver() {
+            @Override
+            protected ReferenceDriverCommunications getCommunications() {
+                return communications;
+            }
+        };
+        driver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+        driver.commands.add(new Command(null, CommandType.COMMAND_ERROR_REGEX, "^error.*"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMMAND,
+                "G0{X: X%.1f}{Y: Y%.1f}{Z: Z%.1f}"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMPLETE_REGEX, "^done.*"));
+        driver.axes.add(new Axis("x", Axis.Type.X, 0, "*"));
+        driver.axes.add(new Axis("y", Axis.Type.Y, 0, "*"));
+        driver.axes.add(new Axis("z", Axis.Type.Z, 0, "*"));
+        driver.invalidateLookup();
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(1000);
+        driver.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        driver.disconnect();
+    }
+
+    /**
+     * All of the moves must be sent before the first one completes, and the call must not return
+     * until every one of them has reported its completion.
+     */
+    @Test
+    public void testSentBackToBack() throws Exception {
+        Future<?> future = executor.submit(() -> {
+            driver.moveToSegments(createSegments());
+            return null;
+        });
+        waitForWritten(3);
+        assertEquals(Arrays.asList("G0 Z5.0", "G0 X10.0 Y20.0", "G0 Z-2.0"),
+                communications.getWritten());
+
+        // A completion that arrives late for an earlier move must not be taken for the last one.
+        communications.respond("done");
+        communications.respond("done");
+        Thread.sleep(300);
+        assertFalse(future.isDone());
+
+        communications.respond("done");
+        future.get();
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Future<?> future = executor.submit(() -> {
+            driver.moveToSegments(createSegments());
+            return null;
+        });
+        waitForWritten(3);
+        communications.respond("done");
+        try {
+            future.get();
+            fail("Expected the move to time out.");
+        }
+        catch (Exception e) {
+            assertEquals("Timed out waiting for move to complete.", e.getCause().getMessage());
+        }
+    }
+
+    private List<MotionSegment> createSegments() {
+        return Arrays.asList(
+                new MotionSegment(nozzle, new Location(LengthUnit.Millimeters, Double.NaN,
+                        Double.NaN, 5, Double.NaN), 1),
+                new MotionSegment(nozzle, new Location(LengthUnit.Millimeters, 10, 20, 5,
+                        Double.NaN), 1),
+                new MotionSegment(nozzle, new Location(LengthUnit.Millimeters, 10, 20, -2,
+                        Double.NaN), 1));
+    }
+
+    private void waitForWritten(int count) throws Exception {
+        long t = System.currentTimeMillis();
+        while (communications.getWritten().size() < count) {
+            if (System.currentTimeMillis() - t > 1000) {
+                fail("Expected " + count + " lines to be written.");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static ReferenceHeadMountable createNozzle(String id) {
+        return Fake.of(ReferenceHeadMountable.class, id)
+                .returns("getId", id)
+                .returns("getName", id)
+                .returns("getHeadOffsets", new Location(LengthUnit.Millimeters))
+                .create();
+    }
+}
@@ -0,0 +1,248 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferenceNozzleTip;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.test.LoopbackCommunications;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+
+import com.google.common.io.Files;
+
+public class GcodeDriverStreamingTest {
+    private LoopbackCommunications communications;
+    private GcodeDriver driver;
+
+    @Before
+    public void setUp() throws Exception {
+        communications = new LoopbackCommunications();
+        driver = new GcodeDriver() {
+            @Override
+            protected ReferenceDriverCommunications getCommunications() {
+                return communications;
+            }
+        };
+        driver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+        driver.commands.add(new Command(null, CommandType.COMMAND_ERROR_REGEX, "^error.*"));
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(2000);
+        driver.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        driver.disconnect();
+    }
+
+    /**
+     * Without streaming every line waits for its confirmation.
+     */
+    @Test
+    public void testUnstreamed() throws Exception {
+        List<String> responses = driver.sendGcode("G1 X1\nG1 X2\nG1 X3");
+        assertEquals(3, communications.getWritten().size());
+        assertEquals(3, responses.size());
+    }
+
+    /**
+     * With a window of two lines the third line must wait until the first is confirmed, and
+     * waitForStreamedCommands() must collect the remaining confirmations.
+     */
+    @Test
+    public void testStreamingWindow() throws Exception {
+        driver.setStreamingEnabled(true);
+        driver.setStreamingMaxLines(2);
+        communications.setAutoConfirm(false);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<String>> future =
+                    executor.submit(() -> driver.sendGcode("G1 X1\nG1 X2\nG1 X3"));
+            waitForWritten(2);
+            Thread.sleep(200);
+            assertEquals(2, communications.getWritten().size());
+
+            communications.respond("ok");
+            waitForWritten(3);
+            future.get();
+
+            communications.respond("ok");
+            communications.respond("ok");
+            driver.waitForStreamedCommands(2000);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * grbl style character counting: "G1 X1\n" is six characters, so only two lines fit in a
+     * window of 12.
+     */
+    @Test
+    public void testStreamingMaxBytes() throws Exception {
+        driver.setStreamingEnabled(true);
+        driver.setStreamingMaxLines(10);
+        driver.setStreamingMaxBytes(12);
+        communications.setAutoConfirm(false);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<String>> future =
+                    executor.submit(() -> driver.sendGcode("G1 X1\nG1 X2\nG1 X3"));
+            waitForWritten(2);
+            Thread.sleep(200);
+            assertEquals(2, communications.getWritten().size());
+
+            communications.respond("ok");
+            future.get();
+            communications.respond("ok");
+            communications.respond("ok");
+            driver.waitForStreamedCommands(2000);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * An error in response to a streamed line is raised at the next point that waits.
+     */
+    @Test(expected = Exception.class)
+    public void testStreamingError() throws Exception {
+        driver.setStreamingEnabled(true);
+        communications.setAutoConfirm(false);
+        driver.sendGcode("G1 X1\nG1 X2");
+        communications.respond("ok");
+        communications.respond("error: bad");
+        driver.waitForStreamedCommands(2000);
+    }
+
+    /**
+     * When streaming, moves go out back to back without waiting for their confirmations, which
+     * are waited for by waitForMotionComplete().
+     */
+    @Test
+    public void testStreamedMoves() throws Exception {
+        driver.axes.add(new Axis("x", Axis.Type.X, 0, "*"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMMAND, "G0 {X:X%.1f}"));
+        driver.invalidateLookup();
+        driver.setStreamingEnabled(true);
+        communications.setAutoConfirm(false);
+
+        Configuration.initialize(Files.createTempDir());
+        ReferenceNozzle nozzle = new ReferenceNozzle();
+        driver.moveTo(nozzle, new Location(LengthUnit.Millimeters, 1, 0, 0, 0), 1);
+        driver.moveTo(nozzle, new Location(LengthUnit.Millimeters, 2, 0, 0, 0), 1);
+        assertEquals(Arrays.asList("G0 X1.0", "G0 X2.0"), communications.getWritten());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> {
+                driver.waitForMotionComplete();
+                return null;
+            });
+            communications.respond("ok");
+            Thread.sleep(200);
+            assertFalse(future.isDone());
+            communications.respond("ok");
+            future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A pick is a sync point: it is only sent once the streamed move before it is complete, and
+     * only returns once it is confirmed, so that the pick dwell follows it.
+     */
+    @Test
+    public void testPickWaitsForStreamedMoves() throws Exception {
+        driver.axes.add(new Axis("x", Axis.Type.X, 0, "*"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMMAND, "G0 {X:X%.1f}"));
+        driver.commands.add(new Command(null, CommandType.MOVE_TO_COMPLETE_REGEX, "^done.*"));
+        driver.commands.add(new Command(null, CommandType.PICK_COMMAND, "M808"));
+        driver.invalidateLookup();
+        driver.setStreamingEnabled(true);
+        communications.setAutoConfirm(false);
+
+        Configuration.initialize(Files.createTempDir());
+        ReferenceNozzleTip tip = new ReferenceNozzleTip();
+        ReferenceNozzle nozzle = new ReferenceNozzle() {
+            @Override
+            public ReferenceNozzleTip getNozzleTip() {
+                return tip;
+            }
+        };
+        driver.moveTo(nozzle, new Location(LengthUnit.Millimeters, 1, 0, 0, 0), 1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> {
+                driver.pick(nozzle);
+                return null;
+            });
+            communications.respond("ok");
+            Thread.sleep(200);
+            assertEquals(Arrays.asList("G0 X1.0"), communications.getWritten());
+
+            communications.respond("done");
+            waitForWritten(2);
+            assertEquals("M808", communications.getWritten().get(1));
+            Thread.sleep(200);
+            assertFalse(future.isDone());
+
+            communications.respond("ok");
+            future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A line that matches both the position report and the confirm regexes is a position report,
+     * as it was before the regexes were compiled.
+     */
+    @Test
+    public void testPositionReportBeforeConfirm() throws Exception {
+        Configuration.initialize(Files.createTempDir());
+        Configuration.get().load();
+        Axis axis = new Axis("x", Axis.Type.X, 0, "*");
+        driver.axes.add(axis);
+        driver.commands.add(new Command(null, CommandType.POSITION_REPORT_REGEX,
+                "^ok C: X:(?<x>-?\\d+\\.\\d+).*"));
+        driver.invalidateLookup();
+
+        assertEquals(GcodeDriver.ResponseType.PositionReport,
+                driver.classifyResponse("ok C: X:12.5000 Y:0.0000"));
+        assertEquals(12.5, axis.getCoordinate(), 0);
+        assertEquals(GcodeDriver.ResponseType.Confirm, driver.classifyResponse("ok"));
+    }
+
+    private void waitForWritten(int count) throws Exception {
+        long t = System.currentTimeMillis();
+        while (communications.getWritten().size() < count) {
+            if (System.currentTimeMillis() - t > 2000) {
+                throw new Exception("Timed out waiting for " + count + " lines.");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.Command;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.test.LoopbackCommunications;
+
+public class GcodeDriverSubDriverTest {
+    private GcodeDriver driver;
+    private List<LoopbackCommunications> subCommunications = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        driver = createDriver("Main", new LoopbackCommunications());
+        for (int i = 1; i <= 2; i++) {
+            LoopbackCommunications communications = new LoopbackCommunications();
+            subCommunications.add(communications);
+            driver.subDrivers.add(createDriver("Sub " + i, communications));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        driver.disconnect();
+        for (GcodeDriver subDriver : driver.subDrivers) {
+            subDriver.disconnect();
+        }
+    }
+
+    /**
+     * Both sub-drivers must have sent their command before either of them is confirmed.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        for (LoopbackCommunications communications : subCommunications) {
+            communications.setAutoConfirm(false);
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> enable = executor.submit(() -> {
+            driver.setEnabled(true);
+            return null;
+        });
+        long t = System.currentTimeMillis();
+        while (subCommunications.get(0).getWritten().isEmpty()
+                || subCommunications.get(1).getWritten().isEmpty()) {
+            if (System.currentTimeMillis() - t > 1000) {
+                fail("Sub-drivers were not called concurrently.");
+            }
+            Thread.sleep(1);
+        }
+        for (LoopbackCommunications communications : subCommunications) {
+            communications.respond("ok");
+        }
+        enable.get();
+        executor.shutdown();
+        for (LoopbackCommunications communications : subCommunications) {
+            assertEquals("M17", communications.getWritten().get(0));
+        }
+    }
+
+    /**
+     * An error from each sub-driver must be reported, naming the driver it came from.
+     */
+    @Test
+    public void testErrorsAggregated() throws Exception {
+        for (LoopbackCommunications communications : subCommunications) {
+            communications.setConfirmResponse("error:9");
+        }
+        try {
+            driver.setEnabled(true);
+            fail("Expected the sub-driver errors to be thrown.");
+        }
+        catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Sub 1: "));
+            assertTrue(e.getMessage(), e.getMessage().contains("Sub 2: "));
+            assertTrue(e.getMessage(), !e.getMessage().contains("Main: "));
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    private static GcodeDriver createDriver(String name, LoopbackCommunications communications) {
+        GcodeDriver driver = new GcodeDriver() {
+            @Override
+            protected ReferenceDriverCommunications getCommunications() {
+                return communications;
+            }
+        };
+        driver.setName(name);
+        driver.commands.add(new Command(null, CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+        driver.commands.add(new Command(null, CommandType.COMMAND_ERROR_REGEX, "^error.*"));
+        driver.commands.add(new Command(null, CommandType.ENABLE_COMMAND, "M17"));
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(2000);
+        return driver;
+    }
+}
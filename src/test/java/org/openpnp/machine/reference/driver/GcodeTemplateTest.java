@@ -0,0 +1,84 @@
+package org.openpnp.machine.reference.driver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.GcodeTemplate.Variables;
+
+public class GcodeTemplateTest {
+    private static final String[] templates = new String[] {
+            "G0 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{FeedRate:%.0f} ; Send standard Gcode move",
+            "G1 {BacklashOffsetX:X%.4f} {BacklashOffsetY:Y%.4f} F{BacklashFeedRate:%.0f}\nM400",
+            "M800 {Id} {Name} {Unknown:%d} {X} {X:%.2f} {Y:%f}",
+            "{X:%.4f}{Y:%.4f}",
+            "T{Index:%d} {Index:%02d} {Index}",
+            "{Y:%8.3f} {X:%+.2f} {Z:%e}",
+            "no variables at all",
+            "",
+    };
+
+    /**
+     * Rendering a template must give exactly what a chain of substituteVariable() calls gives,
+     * including the formatting of doubles, unset variables and null values.
+     */
+    @Test
+    public void testMatchesSubstituteVariable() {
+        Random random = new Random(1);
+        for (String text : templates) {
+            GcodeTemplate template = new GcodeTemplate(text);
+            for (int i = 0; i < 10000; i++) {
+                Object x = randomDouble(random);
+                Object y = random.nextInt(10) == 0 ? null : randomDouble(random);
+                Object z = randomDouble(random);
+                int index = random.nextInt(200) - 100;
+                Object feedRate = randomDouble(random);
+
+                Variables variables = new Variables().set("X", x).set("Y", y).set("Z", z)
+                        .set("Id", "N1").set("Name", "Nozzle 1").set("Index", index)
+                        .set("FeedRate", feedRate);
+                String expected = text;
+                expected = GcodeDriver.substituteVariable(expected, "X", x);
+                expected = GcodeDriver.substituteVariable(expected, "Y", y);
+                expected = GcodeDriver.substituteVariable(expected, "Z", z);
+                expected = GcodeDriver.substituteVariable(expected, "Id", "N1");
+                expected = GcodeDriver.substituteVariable(expected, "Name", "Nozzle 1");
+                expected = GcodeDriver.substituteVariable(expected, "Index", index);
+                expected = GcodeDriver.substituteVariable(expected, "FeedRate", feedRate);
+                assertEquals(expected, template.render(variables));
+            }
+        }
+    }
+
+    /**
+     * Values are inserted literally, unlike with substituteVariable() which treats $ and \ in
+     * values as replacement syntax.
+     */
+    @Test
+    public void testVariablesOnly() {
+        GcodeTemplate template = new GcodeTemplate("M800 {Id} {Name} {Unknown:%d}");
+        assertEquals("M800 N1 N1 $1 \\ {Unknown:%d}",
+                template.render(new Variables().set("Id", "N1").set("Name", "N1 $1 \\")));
+        assertEquals("M800  N2 {Unknown:%d}",
+                template.render(new Variables().set("Id", null).set("Name", "N2")));
+    }
+
+    private static Double randomDouble(Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return -0.0;
+            case 1:
+                // Values that sit on a rounding boundary at various precisions
+                return (random.nextInt(20000) - 10000) / 2000.0 + 0.00005;
+            case 2:
+                return (double) (random.nextInt(2000) - 1000);
+            case 3:
+                return -random.nextDouble() / 100000;
+            case 4:
+                return random.nextDouble() * 1e12;
+            default:
+                return (random.nextDouble() - 0.5) * 1000;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.driver.test.LoopbackInputStream;
+
+/**
+ * Measures how many lines per second the communications can frame from a stream of position
+ * reports and confirmations, reading byte by byte as before versus in bulk with LineReader.
+ * These are not run as part of the tests. See GcodeDriverBenchmark for how to run them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReaderBenchmark {
+    private static final int linesPerInvocation = 1000;
+
+    private static final String data = "<Run|MPos:123.456,78.901,-12.500|FS:5000,0|WCO:0.000,0.000,0.000>\r\n"
+            + "ok\r\n" + "X:123.4560 Y:78.9010 Z:-12.5000 E:45.0000 Count X:9876 Y:6312 Z:-1000\n"
+            + "ok\n";
+
+    /**
+     * How many bytes have arrived at the port between reads.
+     */
+    @Param({"16", "256"})
+    private int chunkSize;
+
+    private InputStream input;
+    private LineReader lineReader;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        input = new LoopbackInputStream(data.getBytes(StandardCharsets.ISO_8859_1), chunkSize);
+        lineReader = new LineReader(input::read);
+    }
+
+    /**
+     * readLine() as it was in SerialPortCommunications and TcpCommunications.
+     */
+    @Benchmark
+    @OperationsPerInvocation(linesPerInvocation)
+    public void byteAtATime(Blackhole bh) throws IOException {
+        for (int i = 0; i < linesPerInvocation; i++) {
+            StringBuffer line = new StringBuffer();
+            while (true) {
+                int ch = input.read();
+                if (ch == '\n' || ch == '\r') {
+                    if (line.length() > 0) {
+                        bh.consume(line.toString());
+                        break;
+                    }
+                }
+                else {
+                    line.append((char) ch);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(linesPerInvocation)
+    public void lineReader(Blackhole bh) throws IOException {
+        for (int i = 0; i < linesPerInvocation; i++) {
+            bh.consume(lineReader.readLine());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(LineReaderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
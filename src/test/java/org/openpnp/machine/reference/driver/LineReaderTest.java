@@ -0,0 +1,42 @@
+package org.openpnp.machine.reference.driver;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.test.LoopbackInputStream;
+
+public class LineReaderTest {
+    private static final String data =
+            "ok\r\n<Idle|MPos:1.000,2.000,3.000|FS:0,0>\r\n\r\nerror:20\nok T:20.0 /0.0\rlast\n";
+
+    private static final String[] lines = new String[] {"ok",
+            "<Idle|MPos:1.000,2.000,3.000|FS:0,0>", "error:20", "ok T:20.0 /0.0", "last"};
+
+    /**
+     * Lines must come out the same no matter how the bytes are split up between reads, including
+     * splits between CR and LF and lines longer than the buffer.
+     */
+    @Test
+    public void testChunking() throws Exception {
+        byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+            for (int bufferSize : new int[] {4, 16, 4096}) {
+                LoopbackInputStream input = new LoopbackInputStream(bytes, chunkSize);
+                LineReader reader = new LineReader(input::read, bufferSize);
+                for (int i = 0; i < 3; i++) {
+                    for (String line : lines) {
+                        Assert.assertEquals(chunkSize + "/" + bufferSize, line,
+                                reader.readLine());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception {
+        LineReader reader = new LineReader((buffer, offset, length) -> -1);
+        Assert.assertNull(reader.readLine());
+    }
+}
@@ -0,0 +1,84 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MotionQueueTest {
+    @Test
+    public void testOrder() throws Exception {
+        MotionQueue queue = new MotionQueue("Test");
+        List<Integer> done = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 10; i++) {
+            int move = i;
+            queue.submit(() -> {
+                Thread.sleep(move % 3);
+                done.add(move);
+            });
+        }
+        queue.await();
+        Assert.assertEquals(10, done.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, (int) done.get(i));
+        }
+    }
+
+    /**
+     * Moves queued after a failed one must not run, and the failure must be thrown by the next
+     * await() only.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        MotionQueue queue = new MotionQueue("Test");
+        List<Integer> done = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> first = queue.submit(() -> done.add(1));
+        CompletableFuture<Void> failed = queue.submit(() -> {
+            throw new Exception("Limit switch hit");
+        });
+        CompletableFuture<Void> skipped = queue.submit(() -> done.add(3));
+        try {
+            queue.await();
+            Assert.fail("Expected the failure to be thrown.");
+        }
+        catch (Exception e) {
+            Assert.assertEquals("Limit switch hit", e.getMessage());
+        }
+        Assert.assertFalse(first.isCompletedExceptionally());
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertTrue(skipped.isCompletedExceptionally());
+        Assert.assertEquals(Collections.singletonList(1), done);
+
+        // The failure has been reported, so the queue runs moves again.
+        queue.submit(() -> done.add(4));
+        queue.await();
+        Assert.assertEquals(4, (int) done.get(1));
+    }
+
+    /**
+     * Shutting down must let the moves already queued run and then stop the thread.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        MotionQueue queue = new MotionQueue("Test");
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        queue.submit(() -> {
+            Thread.sleep(50);
+            threads.add(Thread.currentThread());
+        });
+        queue.shutdown();
+        queue.await();
+        Assert.assertEquals(1, threads.size());
+        threads.get(0).join(1000);
+        Assert.assertFalse(threads.get(0).isAlive());
+
+        // A move submitted after shutting down still runs.
+        queue.submit(() -> threads.add(Thread.currentThread()));
+        queue.await();
+        Assert.assertEquals(2, threads.size());
+        queue.shutdown();
+    }
+}
@@ -0,0 +1,121 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NioTcpCommunicationsTest {
+    /**
+     * Two connections, as for a driver and its sub-driver, served by the shared selector thread.
+     * Every line sent is answered by a stand-in controller and the answers must come back whole
+     * and in order even though several lines are written before any are answered.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread controller = new Thread(() -> {
+                for (int i = 0; i < 2; i++) {
+                    try {
+                        Socket socket = server.accept();
+                        Thread connection = new Thread(() -> answer(socket));
+                        connection.setDaemon(true);
+                        connection.start();
+                    }
+                    catch (Exception e) {
+                        return;
+                    }
+                }
+            });
+            controller.setDaemon(true);
+            controller.start();
+
+            NioTcpCommunications[] comms = new NioTcpCommunications[2];
+            for (int i = 0; i < comms.length; i++) {
+                TcpCommunications settings = new TcpCommunications();
+                settings.setIpAddress("127.0.0.1");
+                settings.setPort(server.getLocalPort());
+                comms[i] = new NioTcpCommunications(settings);
+                comms[i].connect();
+            }
+            for (int i = 0; i < 100; i++) {
+                for (NioTcpCommunications c : comms) {
+                    c.writeLine("G1 X" + i);
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                for (NioTcpCommunications c : comms) {
+                    Assert.assertEquals("ok G1 X" + i, c.readLine());
+                }
+            }
+            for (NioTcpCommunications c : comms) {
+                c.disconnect();
+            }
+        }
+    }
+
+    /**
+     * A GcodeDriver on "tcp-nio" has its responses handed over by the selector thread instead of
+     * starting a reader thread.
+     */
+    @Test
+    public void testGcodeDriver() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread controller = new Thread(() -> {
+                try {
+                    answer(server.accept());
+                }
+                catch (Exception e) {
+                    // The test has finished with the server.
+                }
+            });
+            controller.setDaemon(true);
+            controller.start();
+
+            GcodeDriver driver = new GcodeDriver();
+            driver.commands.add(new GcodeDriver.Command(null,
+                    GcodeDriver.CommandType.COMMAND_CONFIRM_REGEX, "^ok.*"));
+            driver.setCommunicationsType("tcp-nio");
+            driver.setIpAddress("127.0.0.1");
+            driver.setPort(server.getLocalPort());
+            driver.setConnectWaitTimeMilliseconds(0);
+            driver.connect();
+            try {
+                NioTcpCommunications communications =
+                        (NioTcpCommunications) driver.getCommunications();
+                Assert.assertNotNull(communications.getLineListener());
+                Assert.assertEquals(Collections.singletonList("ok G1 X1"),
+                        driver.sendCommand("G1 X1"));
+            }
+            finally {
+                driver.disconnect();
+            }
+        }
+    }
+
+    private static void answer(Socket socket) {
+        try {
+            BufferedReader input = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            OutputStream output = socket.getOutputStream();
+            String line;
+            while ((line = input.readLine()) != null) {
+                // Split each answer across two writes to exercise the framing.
+                output.write(("ok " + line).getBytes(StandardCharsets.ISO_8859_1));
+                output.flush();
+                output.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                output.flush();
+            }
+            socket.close();
+        }
+        catch (Exception e) {
+            // The test has finished with the connection.
+        }
+    }
+}
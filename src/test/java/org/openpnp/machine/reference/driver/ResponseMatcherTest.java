@@ -0,0 +1,29 @@
+package org.openpnp.machine.reference.driver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseMatcherTest {
+    private static final String[] regexes = new String[] {"^ok.*", "^ok$", "ok", "^error.*",
+            "^!!.*", "ok.*", "^ok\\$", "<Idle\\|MPos:(?<x>-?\\d+\\.\\d+),.*", "^\\.*", "^$",
+            "^(ok|done).*", "^X:.*"};
+
+    private static final String[] lines = new String[] {"ok", "ok ", "ok T:20.0", "OK", "error",
+            "error:2", "!! bad", "ok$", "", "done", "X:1.00 Y:2.00", "<Idle|MPos:1.000,2.000>",
+            "ok\nmore", "...", " ok"};
+
+    /**
+     * ResponseMatcher must agree with String.matches() for every regex, whether or not it takes
+     * the literal fast path.
+     */
+    @Test
+    public void testMatchesAgreesWithString() {
+        for (String regex : regexes) {
+            ResponseMatcher matcher = new ResponseMatcher(regex);
+            for (String line : lines) {
+                Assert.assertEquals(regex + " / " + line, line.matches(regex),
+                        matcher.matches(line));
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.openpnp.machine.reference.driver.test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds a stand-in for an interface that answers only the methods a test names. Any other call
+ * throws UnsupportedOperationException, so a test that starts to depend on more of the interface
+ * fails rather than getting a made up value. Unless answered otherwise, toString() returns the
+ * name given, and equals() and hashCode() go by identity.
+ */
+public class Fake<T> {
+    public interface Answer {
+        Object answer(Object[] args) throws Throwable;
+    }
+
+    private final Class<T> type;
+    private final Map<String, Answer> answers = new HashMap<>();
+
+    private Fake(Class<T> type, String name) {
+        this.type = type;
+        returns("toString", name);
+    }
+
+    public static <T> Fake<T> of(Class<T> type, String name) {
+        return new Fake<>(type, name);
+    }
+
+    public Fake<T> returns(String method, Object value) {
+        return answers(method, args -> value);
+    }
+
+    public Fake<T> answers(String method, Answer answer) {
+        answers.put(method, answer);
+        return this;
+    }
+
+    public T create() {
+        Map<String, Answer> answers = new HashMap<>(this.answers);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    Answer answer = answers.get(method.getName());
+                    if (answer != null) {
+                        return answer.answer(args);
+                    }
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+}
@@ -0,0 +1,76 @@
+package org.openpnp.machine.reference.driver.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openpnp.machine.reference.driver.ReferenceDriverCommunications;
+
+/**
+ * A stand-in for a controller connection. Every line written is recorded and, if auto confirm is
+ * on, answered with the confirm response. Tests can queue up additional responses with
+ * respond().
+ */
+public class LoopbackCommunications implements ReferenceDriverCommunications {
+    private LinkedBlockingQueue<String> responses = new LinkedBlockingQueue<>();
+    private List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private boolean autoConfirm = true;
+    private String confirmResponse = "ok";
+
+    @Override
+    public void connect() throws Exception {
+    }
+
+    @Override
+    public void disconnect() throws Exception {
+    }
+
+    @Override
+    public String getConnectionName() {
+        return "loopback://";
+    }
+
+    @Override
+    public String readLine() throws TimeoutException, IOException {
+        try {
+            String line = responses.poll(100, TimeUnit.MILLISECONDS);
+            if (line == null) {
+                throw new TimeoutException();
+            }
+            return line;
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void writeLine(String data) throws IOException {
+        written.add(data);
+        if (autoConfirm) {
+            responses.offer(confirmResponse);
+        }
+    }
+
+    public void respond(String line) {
+        responses.offer(line);
+    }
+
+    public List<String> getWritten() {
+        synchronized (written) {
+            return new ArrayList<>(written);
+        }
+    }
+
+    public void setAutoConfirm(boolean autoConfirm) {
+        this.autoConfirm = autoConfirm;
+    }
+
+    public void setConfirmResponse(String confirmResponse) {
+        this.confirmResponse = confirmResponse;
+    }
+}
@@ -0,0 +1,34 @@
+package org.openpnp.machine.reference.driver.test;
+
+import java.io.InputStream;
+
+/**
+ * A stand-in for the receive side of a controller port. It replays the given bytes forever and
+ * hands out at most chunkSize bytes per bulk read, as a port would when that many bytes have
+ * arrived since the last read.
+ */
+public class LoopbackInputStream extends InputStream {
+    private final byte[] data;
+    private final int chunkSize;
+    private int position;
+
+    public LoopbackInputStream(byte[] data, int chunkSize) {
+        this.data = data;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int read() {
+        int b = data[position] & 0xff;
+        position = (position + 1) % data.length;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        int count = Math.min(Math.min(length, chunkSize), data.length - position);
+        System.arraycopy(data, position, buffer, offset, count);
+        position = (position + count) % data.length;
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+package org.openpnp.machine.reference.feeder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceActuator;
+import org.openpnp.machine.reference.feeder.ReferenceSlotAutoFeeder.Bank;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.SimulationClock;
+
+import com.google.common.io.Files;
+
+public class ReferenceAutoFeederTest {
+    private CountingActuator actuator;
+    private Nozzle nozzle;
+
+    @Before
+    public void setUp() throws Exception {
+        Configuration.initialize(new File(Files.createTempDir(), ".openpnp"));
+        Configuration.get().load();
+        Machine machine = Configuration.get().getMachine();
+        actuator = new CountingActuator();
+        actuator.setName("Feed");
+        machine.addActuator(actuator);
+        nozzle = machine.getDefaultHead().getDefaultNozzle();
+        // The waits asserted on are machine times, so the test doesn't have to take them.
+        SimulationClock.setTimeScale(0);
+    }
+
+    @After
+    public void tearDown() {
+        SimulationClock.setTimeScale(1.0);
+    }
+
+    /**
+     * Preparing fires the actuator once, and the feed that follows doesn't fire it again but only
+     * waits for what is left of the feed time.
+     */
+    @Test
+    public void testPrepareFeed() throws Exception {
+        ReferenceAutoFeeder feeder = createFeeder(new ReferenceAutoFeeder());
+        feeder.prepareFeed(nozzle);
+        feeder.prepareFeed(nozzle);
+        assertEquals(1, actuator.count);
+
+        SimulationClock.sleep(600);
+        SimulationClock.Stopwatch stopwatch = new SimulationClock.Stopwatch();
+        feeder.feed(nozzle);
+        assertEquals(1, actuator.count);
+        assertTrue(stopwatch.getMachineSeconds() > 0.3 && stopwatch.getMachineSeconds() <= 0.4);
+    }
+
+    /**
+     * Without preFeed nothing is prepared, and each feed fires and waits the whole feed time.
+     */
+    @Test
+    public void testWithoutPreFeed() throws Exception {
+        ReferenceAutoFeeder feeder = createFeeder(new ReferenceAutoFeeder());
+        feeder.setPreFeed(false);
+        feeder.prepareFeed(nozzle);
+        assertEquals(0, actuator.count);
+
+        SimulationClock.Stopwatch stopwatch = new SimulationClock.Stopwatch();
+        feeder.feed(nozzle);
+        assertEquals(1, actuator.count);
+        assertTrue(stopwatch.getMachineSeconds() > 0.9 && stopwatch.getMachineSeconds() <= 1);
+    }
+
+    /**
+     * The prepared part is used up by the first feed, so a retry after a failed pick feeds
+     * another.
+     */
+    @Test
+    public void testRetry() throws Exception {
+        ReferenceAutoFeeder feeder = createFeeder(new ReferenceAutoFeeder());
+        feeder.prepareFeed(nozzle);
+        feeder.feed(nozzle);
+        assertEquals(1, actuator.count);
+
+        feeder.feed(nozzle);
+        assertEquals(2, actuator.count);
+    }
+
+    /**
+     * A slot that changes bank holds another feeder, which has nothing prepared.
+     */
+    @Test
+    public void testSlotBankChange() throws Exception {
+        ReferenceSlotAutoFeeder slot = createFeeder(new ReferenceSlotAutoFeeder());
+        Bank bank = slot.getBank();
+        ReferenceSlotAutoFeeder.Feeder feeder = new ReferenceSlotAutoFeeder.Feeder();
+        bank.getFeeders().add(feeder);
+        slot.setFeeder(feeder);
+
+        Bank otherBank = new Bank();
+        ReferenceSlotAutoFeeder.getBanks().add(otherBank);
+        ReferenceSlotAutoFeeder.Feeder otherFeeder = new ReferenceSlotAutoFeeder.Feeder();
+        otherBank.getFeeders().add(otherFeeder);
+        otherBank.setFeeder(slot, otherFeeder);
+
+        slot.prepareFeed(nozzle);
+        assertEquals(1, actuator.count);
+        slot.setBank(otherBank);
+        slot.feed(nozzle);
+        assertEquals(2, actuator.count);
+    }
+
+    private <T extends ReferenceAutoFeeder> T createFeeder(T feeder) {
+        feeder.setActuatorName("Feed");
+        feeder.setPreFeed(true);
+        feeder.setFeedTimeMilliseconds(1000);
+        return feeder;
+    }
+
+    private static class CountingActuator extends ReferenceActuator {
+        int count;
+
+        @Override
+        public void actuate(boolean on) throws Exception {
+            count++;
+        }
+
+        @Override
+        public void actuate(double value) throws Exception {
+            count++;
+        }
+    }
+}